@@ -0,0 +1,156 @@
+package org.matsim.modules;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.drt.optimizer.insertion.IncrementalStopDurationEstimator;
+import org.matsim.contrib.drt.passenger.AcceptedDrtRequest;
+import org.matsim.contrib.drt.passenger.DrtRequest;
+import org.matsim.contrib.drt.schedule.DefaultDrtStopTask;
+import org.matsim.contrib.drt.schedule.DrtStopTask;
+import org.matsim.contrib.drt.schedule.StopDurationEstimator;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+import org.matsim.contrib.dvrp.optimizer.Request;
+import org.matsim.core.network.NetworkUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic loop over the stop duration estimators in the order of the insertion generator: for one request, every
+ * vehicle and every pair of pickup and dropoff insertion points along the planned stops of the vehicle, both at an
+ * existing stop and at a new stop. The stops are DefaultDrtStopTasks with accepted requests added, so the passengers
+ * are counted through the same accessors as in the simulation. The vehicle is not used by the estimators and is
+ * null. The LEGACY variant is the lambda and record of the former LinearDrtStopDurationModule.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StopDurationModelBenchmark {
+    @Param({"LEGACY", "LINEAR", "FIXED_PLUS_PER_PASSENGER", "CAPPED_BATCH"})
+    public String model;
+
+    @Param({"200"})
+    public int vehicles;
+
+    @Param({"12"})
+    public int stopsPerVehicle;
+
+    private StopDurationEstimator stopDurationEstimator;
+    private IncrementalStopDurationEstimator incrementalEstimator;
+    private DrtStopTask[][] schedules;
+    private DrtRequest request;
+    private List<List<AcceptedDrtRequest>> passengerLists;
+
+    @Setup
+    public void setup() {
+        switch (model) {
+            case "LEGACY" -> {
+                double stopDuration = 60;
+                stopDurationEstimator = (vehicle, dropoffRequests, pickupRequests) ->
+                        stopDuration * (dropoffRequests.size() + pickupRequests.size());
+                incrementalEstimator = new LegacyEstimator(stopDuration);
+            }
+            default -> {
+                DrtStopDurationConfigGroup config = new DrtStopDurationConfigGroup();
+                config.model = DrtStopDurationConfigGroup.Model.valueOf(model);
+                config.fixedDuration = 30;
+                config.maxDuration = 300;
+                StopDurationModel stopDurationModel = config.createModel(60);
+                stopDurationEstimator = stopDurationModel;
+                incrementalEstimator = stopDurationModel;
+            }
+        }
+
+        Network network = NetworkUtils.createNetwork();
+        Node from = NetworkUtils.createAndAddNode(network, Id.createNodeId("from"), new Coord(0, 0));
+        Node to = NetworkUtils.createAndAddNode(network, Id.createNodeId("to"), new Coord(100, 0));
+        Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId("link"), from, to, 100, 10, 600, 1);
+
+        Random random = new Random(4711);
+        schedules = new DrtStopTask[vehicles][stopsPerVehicle];
+        int requestCount = 0;
+        for (int v = 0; v < vehicles; v++) {
+            for (int s = 0; s < stopsPerVehicle; s++) {
+                DefaultDrtStopTask stopTask = new DefaultDrtStopTask(s * 300, s * 300 + 60, link);
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    stopTask.addPickupRequest(AcceptedDrtRequest.createFromOriginalRequest(createRequest(requestCount++, link)));
+                }
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    stopTask.addDropoffRequest(AcceptedDrtRequest.createFromOriginalRequest(createRequest(requestCount++, link)));
+                }
+                schedules[v][s] = stopTask;
+            }
+        }
+        request = createRequest(requestCount, link);
+
+        passengerLists = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            List<AcceptedDrtRequest> passengers = new ArrayList<>();
+            for (int p = 0; p < i; p++) {
+                passengers.add(AcceptedDrtRequest.createFromOriginalRequest(createRequest(requestCount++, link)));
+            }
+            passengerLists.add(passengers);
+        }
+    }
+
+    @Benchmark
+    public void insertionSearch(Blackhole blackhole) {
+        for (DrtStopTask[] schedule : schedules) {
+            for (int i = 0; i < schedule.length; i++) {
+                double pickupDuration = incrementalEstimator.calcForPickup(null, schedule[i], request);
+                double newStopPickupDuration = incrementalEstimator.calcForPickup(null, null, request);
+                for (int j = i; j < schedule.length; j++) {
+                    double dropoffDuration = incrementalEstimator.calcForDropoff(null, schedule[j], request);
+                    double newStopDropoffDuration = incrementalEstimator.calcForDropoff(null, null, request);
+                    blackhole.consume(pickupDuration + dropoffDuration);
+                    blackhole.consume(newStopPickupDuration + newStopDropoffDuration);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void stopDuration(Blackhole blackhole) {
+        int size = passengerLists.size();
+        for (int i = 0; i < vehicles * stopsPerVehicle; i++) {
+            blackhole.consume(stopDurationEstimator.calcDuration(null, passengerLists.get(i % size),
+                    passengerLists.get((i / size) % size)));
+        }
+    }
+
+    private static DrtRequest createRequest(int index, Link link) {
+        return DrtRequest.newBuilder()
+                .id(Id.create("request_" + index, Request.class))
+                .passengerId(Id.createPersonId("person_" + index))
+                .mode("drt")
+                .fromLink(link)
+                .toLink(link)
+                .submissionTime(0)
+                .earliestStartTime(0)
+                .latestStartTime(900)
+                .latestArrivalTime(3600)
+                .build();
+    }
+
+    private record LegacyEstimator(double fixedStopDuration) implements IncrementalStopDurationEstimator {
+        @Override
+        public double calcForPickup(DvrpVehicle vehicle, DrtStopTask stopTask, DrtRequest pickupRequest) {
+            return fixedStopDuration;
+        }
+
+        @Override
+        public double calcForDropoff(DvrpVehicle vehicle, DrtStopTask stopTask, DrtRequest dropoffRequest) {
+            return fixedStopDuration;
+        }
+    }
+}
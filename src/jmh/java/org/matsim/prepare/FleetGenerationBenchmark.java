@@ -0,0 +1,59 @@
+package org.matsim.prepare;
+
+import org.matsim.utils.BenchmarkScenarios;
+import org.openjdk.jmh.annotations.*;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Generation of the Oranienburg fleets with {@link CreateFleetVehicles} (5 to 50 vehicles), with random start links
+ * and with the depots file, sequentially and with --parallel. The measured time includes reading the network and writing the fleet files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FleetGenerationBenchmark {
+    @Param({"false", "true"})
+    public boolean depots;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private Path outputFolder;
+
+    @Setup
+    public void setup() throws IOException {
+        outputFolder = Files.createTempDirectory("fleets");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(outputFolder)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public int createFleets() {
+        return new CommandLine(new CreateFleetVehicles()).execute(
+                "--network", BenchmarkScenarios.ORANIENBURG_NETWORK.toString(),
+                "--fleet-size-from", "5",
+                "--fleet-size-to", "50",
+                "--fleet-size-interval", "5",
+                "--capacity", "8",
+                "--output-folder", outputFolder.toString(),
+                "--depots", depots ? BenchmarkScenarios.ORANIENBURG_DEPOTS.toString() : "",
+                "--parallel=" + parallel);
+    }
+}
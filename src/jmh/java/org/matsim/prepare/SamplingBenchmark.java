@@ -0,0 +1,70 @@
+package org.matsim.prepare;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.utils.BenchmarkScenarios;
+import org.matsim.utils.Tools;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Down-sampling of the Oranienburg plans (replicated to the given number of copies): the shuffle based sampling of
+ * {@link RandomSampling} and the stable random ranks of its single pass mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SamplingBenchmark {
+    @Param({"100"})
+    public int copies;
+
+    @Param({"0.1"})
+    public double sample;
+
+    private final List<Person> persons = new ArrayList<>();
+    private Population population;
+
+    @Setup(Level.Trial)
+    public void readPlans() {
+        Population plans = PopulationUtils.readPopulation(BenchmarkScenarios.ORANIENBURG_PLANS.toString());
+        for (int copy = 0; copy < copies; copy++) {
+            for (Person person : plans.getPersons().values()) {
+                Person personCopy = plans.getFactory().createPerson(Id.createPersonId(person.getId() + "_" + copy));
+                personCopy.addPlan(person.getSelectedPlan());
+                persons.add(personCopy);
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createPopulation() {
+        population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+        persons.forEach(population::addPerson);
+    }
+
+    @Benchmark
+    public Population shuffleSampling() {
+        RandomSampling.sampleDownPopulation(population, sample, 4711);
+        return population;
+    }
+
+    @Benchmark
+    public int stableRandomRanks() {
+        int selected = 0;
+        for (Person person : population.getPersons().values()) {
+            if (Tools.stableRandom(4711, person.getId().toString()) < sample) {
+                selected++;
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,43 @@
+package org.matsim.utils;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.network.NetworkUtils;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Input data of the benchmarks: the small scenarios bundled in the repository. The benchmarks are run from the
+ * project directory (see the jmh profile in the pom).
+ */
+public final class BenchmarkScenarios {
+    public static final Path KELHEIM_NETWORK = Path.of("scenarios/kelheim-kexi/kelheim-drt.network.xml.gz");
+    public static final Path KELHEIM_SERVICE_AREA = Path.of("scenarios/kelheim-kexi/additional-data/shp/drt-service-area.shp");
+    public static final Path ORANIENBURG_NETWORK = Path.of("scenarios/oranienburg/oranienburg.network.xml.gz");
+    public static final Path ORANIENBURG_PLANS = Path.of("scenarios/oranienburg/oranienburg-drt.plans.xml.gz");
+    public static final Path ORANIENBURG_DEPOTS = Path.of("scenarios/oranienburg/drt-vehicles/depots.csv");
+
+    public enum Scenario {KELHEIM, ORANIENBURG}
+
+    private BenchmarkScenarios() {
+    }
+
+    public static Network readNetwork(Scenario scenario) {
+        return NetworkUtils.readNetwork((scenario == Scenario.KELHEIM ? KELHEIM_NETWORK : ORANIENBURG_NETWORK).toString());
+    }
+
+    /**
+     * @return uniformly distributed coordinates within the bounding box of the network
+     */
+    public static Coord[] createRandomCoords(Network network, int count, long seed) {
+        double[] boundingBox = NetworkUtils.getBoundingBox(network.getNodes().values());
+        Random random = new Random(seed);
+        Coord[] coords = new Coord[count];
+        for (int i = 0; i < count; i++) {
+            coords[i] = new Coord(boundingBox[0] + random.nextDouble() * (boundingBox[2] - boundingBox[0]),
+                    boundingBox[1] + random.nextDouble() * (boundingBox[3] - boundingBox[1]));
+        }
+        return coords;
+    }
+}
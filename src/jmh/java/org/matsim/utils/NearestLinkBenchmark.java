@@ -0,0 +1,64 @@
+package org.matsim.utils;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.network.NetworkUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest link lookup of random locations: {@link LinkSpatialIndex} (used by the plan generators) compared to
+ * {@link NetworkUtils#getNearestLink}. The index is built once per trial, as in the generators.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NearestLinkBenchmark {
+    @Param({"KELHEIM", "ORANIENBURG"})
+    public BenchmarkScenarios.Scenario scenario;
+
+    private static final int LOOKUPS = 1000;
+
+    private Network network;
+    private List<Link> carLinks;
+    private LinkSpatialIndex index;
+    private Coord[] coords;
+
+    @Setup
+    public void setup() {
+        network = BenchmarkScenarios.readNetwork(scenario);
+        carLinks = network.getLinks().values().stream()
+                .filter(link -> link.getAllowedModes().contains(TransportMode.car))
+                .map(link -> (Link) link)
+                .toList();
+        index = new LinkSpatialIndex(carLinks);
+        coords = BenchmarkScenarios.createRandomCoords(network, LOOKUPS, 4711);
+    }
+
+    @Benchmark
+    public void linkSpatialIndex(Blackhole blackhole) {
+        for (Coord coord : coords) {
+            blackhole.consume(index.getNearestLink(coord));
+        }
+    }
+
+    @Benchmark
+    public void networkUtils(Blackhole blackhole) {
+        for (Coord coord : coords) {
+            blackhole.consume(NetworkUtils.getNearestLink(network, coord));
+        }
+    }
+
+    @Benchmark
+    public LinkSpatialIndex buildIndex() {
+        return new LinkSpatialIndex(carLinks);
+    }
+}
@@ -0,0 +1,68 @@
+package org.matsim.utils;
+
+import org.locationtech.jts.geom.Geometry;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.application.options.ShpOptions;
+import org.matsim.core.utils.geometry.geotools.MGC;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point-in-polygon filtering with the Kelheim service area: the prepared geometry of {@link ServiceArea} compared
+ * to the plain {@code within} test, and the (cached) filtering of all network links.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceAreaBenchmark {
+    private static final int POINTS = 1000;
+
+    private Network network;
+    private Geometry geometry;
+    private ServiceArea serviceArea;
+    private Coord[] coords;
+
+    @Setup
+    public void setup() {
+        network = BenchmarkScenarios.readNetwork(BenchmarkScenarios.Scenario.KELHEIM);
+        geometry = new ShpOptions(BenchmarkScenarios.KELHEIM_SERVICE_AREA, null, null).getGeometry();
+        serviceArea = new ServiceArea(geometry);
+        coords = BenchmarkScenarios.createRandomCoords(network, POINTS, 4711);
+    }
+
+    @Benchmark
+    public void preparedGeometry(Blackhole blackhole) {
+        for (Coord coord : coords) {
+            blackhole.consume(serviceArea.contains(coord));
+        }
+    }
+
+    @Benchmark
+    public void plainGeometry(Blackhole blackhole) {
+        for (Coord coord : coords) {
+            blackhole.consume(MGC.coord2Point(coord).within(geometry));
+        }
+    }
+
+    /**
+     * Filtering of all links with a new service area, i.e. without cached node results.
+     */
+    @Benchmark
+    public int filterLinks() {
+        ServiceArea area = new ServiceArea(geometry);
+        int inside = 0;
+        for (Link link : network.getLinks().values()) {
+            if (area.contains(link)) {
+                inside++;
+            }
+        }
+        return inside;
+    }
+}
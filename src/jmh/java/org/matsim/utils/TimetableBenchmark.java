@@ -0,0 +1,82 @@
+package org.matsim.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapping of trip times to the train timetable ({@link TimetableIndex}), as in ExtractTripsFromOutputTrips for the
+ * Oranienburg station. The timetable is generated: a few routes with a departure and an arrival every 10 to 60
+ * minutes over the day.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimetableBenchmark {
+    private static final String[] ROUTES = {"RE5", "RB12", "RB20", "S1"};
+    private static final int LOOKUPS = 1000;
+
+    @Param({"RE5", "all"})
+    public String routeGroups;
+
+    private Path timetableFile;
+    private TimetableIndex timetable;
+    private double[] times;
+    private double[] randomNumbers;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(4711);
+        timetableFile = Files.createTempFile("timetable", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(timetableFile)) {
+            writer.write("station,route,time,type\n");
+            for (String route : ROUTES) {
+                int headway = 600 * (1 + random.nextInt(6));
+                for (int time = random.nextInt(headway); time < 86400; time += headway) {
+                    writer.write("Oranienburg," + route + "," + time + ",departure\n");
+                    writer.write("Oranienburg," + route + "," + (time - 120) + ",arrival\n");
+                }
+            }
+        }
+        timetable = readTimetable();
+
+        times = new double[LOOKUPS];
+        randomNumbers = new double[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            times[i] = random.nextInt(86400);
+            randomNumbers[i] = random.nextDouble();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(timetableFile);
+    }
+
+    @Benchmark
+    public void nearestTime(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            TimetableIndex.Type type = i % 2 == 0 ? TimetableIndex.Type.DEPARTURE : TimetableIndex.Type.ARRIVAL;
+            blackhole.consume(timetable.getNearestTime(times[i], randomNumbers[i], type));
+        }
+    }
+
+    @Benchmark
+    public TimetableIndex read() throws IOException {
+        return readTimetable();
+    }
+
+    private TimetableIndex readTimetable() throws IOException {
+        return TimetableIndex.read(timetableFile, List.of(routeGroups.split(",")));
+    }
+}
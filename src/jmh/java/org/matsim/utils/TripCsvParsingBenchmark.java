@@ -0,0 +1,104 @@
+package org.matsim.utils;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.core.utils.misc.Time;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of an output trips csv file, as in ExtractTripsFromOutputTrips: columns resolved once and times parsed with
+ * {@link Tools#parseTimeOfDay}, compared to access by column name and {@link Time#parseTime}. The trips file is
+ * generated with random locations in the Oranienburg network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TripCsvParsingBenchmark {
+    private static final String[] MODES = {TransportMode.car, TransportMode.pt, TransportMode.walk, TransportMode.bike};
+
+    @Param({"100000"})
+    public int trips;
+
+    private Path tripsFile;
+
+    @Setup
+    public void setup() throws IOException {
+        Coord[] coords = BenchmarkScenarios.createRandomCoords(BenchmarkScenarios.readNetwork(BenchmarkScenarios.Scenario.ORANIENBURG), 2 * trips, 4711);
+        Random random = new Random(4711);
+        tripsFile = Files.createTempFile("output_trips", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(tripsFile)) {
+            writer.write("person;trip_number;trip_id;dep_time;trav_time;wait_time;traveled_distance;euclidean_distance;" +
+                    "main_mode;longest_distance_mode;modes;start_activity_type;end_activity_type;start_facility_id;" +
+                    "start_link;start_x;start_y;end_facility_id;end_link;end_x;end_y\n");
+            for (int i = 0; i < trips; i++) {
+                String mode = MODES[random.nextInt(MODES.length)];
+                Coord from = coords[2 * i];
+                Coord to = coords[2 * i + 1];
+                writer.write(String.join(";", "person_" + i, "1", "person_" + i + "_1",
+                        Time.writeTime(random.nextInt(86400)), Time.writeTime(random.nextInt(3600)), "00:00:00",
+                        "1000", "800", mode, mode, mode, "home", "work", "", "link_" + i,
+                        Double.toString(from.getX()), Double.toString(from.getY()), "", "link_" + i,
+                        Double.toString(to.getX()), Double.toString(to.getY())));
+                writer.write('\n');
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(tripsFile);
+    }
+
+    @Benchmark
+    public double indexedColumns() throws IOException {
+        double sum = 0;
+        try (CSVParser parser = new CSVParser(Files.newBufferedReader(tripsFile),
+                CSVFormat.DEFAULT.withDelimiter(';').withFirstRecordAsHeader())) {
+            int modeColumn = Tools.getColumnIndex(parser, "main_mode");
+            int startXColumn = Tools.getColumnIndex(parser, "start_x");
+            int startYColumn = Tools.getColumnIndex(parser, "start_y");
+            int endXColumn = Tools.getColumnIndex(parser, "end_x");
+            int endYColumn = Tools.getColumnIndex(parser, "end_y");
+            int departureTimeColumn = Tools.getColumnIndex(parser, "dep_time");
+            int travelTimeColumn = Tools.getColumnIndex(parser, "trav_time");
+            for (CSVRecord record : parser) {
+                if (record.get(modeColumn).equals(TransportMode.pt)) {
+                    sum += Double.parseDouble(record.get(startXColumn)) + Double.parseDouble(record.get(startYColumn))
+                            + Double.parseDouble(record.get(endXColumn)) + Double.parseDouble(record.get(endYColumn))
+                            + Tools.parseTimeOfDay(record.get(departureTimeColumn))
+                            + Tools.parseTimeOfDay(record.get(travelTimeColumn));
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double namedColumns() throws IOException {
+        double sum = 0;
+        try (CSVParser parser = new CSVParser(Files.newBufferedReader(tripsFile),
+                CSVFormat.DEFAULT.withDelimiter(';').withFirstRecordAsHeader())) {
+            for (CSVRecord record : parser) {
+                if (record.get("main_mode").equals(TransportMode.pt)) {
+                    sum += Double.parseDouble(record.get("start_x")) + Double.parseDouble(record.get("start_y"))
+                            + Double.parseDouble(record.get("end_x")) + Double.parseDouble(record.get("end_y"))
+                            + Time.parseTime(record.get("dep_time")) + Time.parseTime(record.get("trav_time"));
+                }
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,57 @@
+package org.matsim.modules;
+
+import com.google.inject.Singleton;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.dvrp.run.AbstractDvrpModeModule;
+import org.matsim.contrib.dvrp.run.DvrpConfigGroup;
+import org.matsim.contrib.zone.skims.DvrpTravelTimeMatrixParams;
+import org.matsim.contrib.zone.skims.TravelTimeMatrix;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.utils.CachedTravelTimeMatrix;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Replaces the DVRP travel time matrix of a mode by the {@link CachedTravelTimeMatrix}, which is only computed once
+ * per network and matrix parameters and then loaded from the cache directory. The cache is opt-in: the runners only
+ * install this module if a cache directory is given.
+ */
+public class CachedTravelTimeMatrixModule extends AbstractDvrpModeModule {
+    private final Path cacheDirectory;
+
+    public CachedTravelTimeMatrixModule(String mode, Path cacheDirectory) {
+        super(mode);
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    @Override
+    public void install() {
+        DvrpTravelTimeMatrixParams params = getMatrixParams(getConfig());
+        double qSimTimeStepSize = getConfig().qsim().getTimeStepSize();
+        int threads = getConfig().global().getNumberOfThreads();
+
+        bindModal(TravelTimeMatrix.class).toProvider(modalProvider(getter -> {
+            try {
+                return CachedTravelTimeMatrix.loadOrCreate(cacheDirectory, getter.getModal(Network.class), params,
+                        qSimTimeStepSize, threads);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        })).in(Singleton.class);
+    }
+
+    /**
+     * @return the travelTimeMatrix parameter set of the dvrp config group, or the DVRP default parameters if the
+     * config has none (as DVRP does)
+     */
+    public static DvrpTravelTimeMatrixParams getMatrixParams(Config config) {
+        DvrpConfigGroup dvrpConfig = ConfigUtils.addOrGetModule(config, DvrpConfigGroup.class);
+        Collection<? extends ConfigGroup> matrixParams = dvrpConfig.getParameterSets(DvrpTravelTimeMatrixParams.SET_NAME);
+        return matrixParams.isEmpty() ? new DvrpTravelTimeMatrixParams() : (DvrpTravelTimeMatrixParams) matrixParams.iterator().next();
+    }
+}
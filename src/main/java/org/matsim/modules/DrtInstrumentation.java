@@ -0,0 +1,194 @@
+package org.matsim.modules;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.matsim.api.core.v01.Id;
+import org.matsim.contrib.dvrp.optimizer.Request;
+import org.matsim.contrib.dvrp.passenger.*;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
+import org.matsim.utils.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograms of the dispatch hot paths, reset at the start of each iteration and written at its end, see
+ * {@link DrtInstrumentationModule}. Per DRT mode:
+ * <ul>
+ * <li>decision_latency: simulated time from the submission of a request until it is scheduled or rejected [s]</li>
+ * <li>insertion_time: wall time of the request inserter call (vehicle entries, insertion search, scheduling) that
+ * inserted the request, recorded once per request [us]. The requests of one time step are inserted together, so
+ * each of them waits for the whole batch.</li>
+ * <li>insertions_evaluated: insertions whose cost has been calculated per batch, i.e. per call of the request
+ * inserter with at least one request</li>
+ * <li>rebalancing_time: wall time of each rebalancing (MinCostFlowRebalancingStrategy) [us]</li>
+ * </ul>
+ * and for the whole QSim: mobsim_step_time, wall time of each time step including all the engines and
+ * listeners [us].
+ */
+public class DrtInstrumentation implements IterationStartsListener, IterationEndsListener,
+        MobsimInitializedListener, MobsimAfterSimStepListener {
+    public static final String FILE_NAME = "drt_instrumentation.csv";
+    static final String ALL_MODES = "all";
+
+    private final Map<String, ModeHistograms> modes = new LinkedHashMap<>();
+    private final LatencyHistogram mobsimStepTime = new LatencyHistogram();
+    private final List<List<Object>> rows = new ArrayList<>(); // all iterations so far
+    private long lastStepEnd;
+
+    public DrtInstrumentation(Collection<String> drtModes) {
+        drtModes.forEach(mode -> modes.put(mode, new ModeHistograms(mode)));
+    }
+
+    ModeHistograms getHistograms(String mode) {
+        return modes.get(mode);
+    }
+
+    Collection<ModeHistograms> getAllHistograms() {
+        return modes.values();
+    }
+
+    @Override
+    public void notifyIterationStarts(IterationStartsEvent event) {
+        modes.values().forEach(ModeHistograms::reset);
+        mobsimStepTime.reset();
+    }
+
+    @Override
+    public void notifyMobsimInitialized(MobsimInitializedEvent event) {
+        lastStepEnd = System.nanoTime();
+    }
+
+    @Override
+    public void notifyMobsimAfterSimStep(MobsimAfterSimStepEvent event) {
+        long now = System.nanoTime();
+        mobsimStepTime.record((now - lastStepEnd) / 1000);
+        lastStepEnd = now;
+    }
+
+    @Override
+    public void notifyIterationEnds(IterationEndsEvent event) {
+        int iteration = event.getIteration();
+        List<List<Object>> iterationRows = new ArrayList<>();
+        for (ModeHistograms histograms : modes.values()) {
+            iterationRows.add(createRow(iteration, histograms.mode, "decision_latency", "s", histograms.decisionLatency));
+            iterationRows.add(createRow(iteration, histograms.mode, "insertion_time", "us", histograms.insertionTime));
+            iterationRows.add(createRow(iteration, histograms.mode, "insertions_evaluated", "insertions/batch", histograms.insertionsEvaluated));
+            iterationRows.add(createRow(iteration, histograms.mode, "rebalancing_time", "us", histograms.rebalancingTime));
+        }
+        iterationRows.add(createRow(iteration, ALL_MODES, "mobsim_step_time", "us", mobsimStepTime));
+        rows.addAll(iterationRows);
+
+        OutputDirectoryHierarchy controlerIO = event.getServices().getControlerIO();
+        write(Path.of(controlerIO.getIterationFilename(iteration, FILE_NAME)), iterationRows);
+        write(Path.of(controlerIO.getOutputFilename(FILE_NAME)), rows);
+    }
+
+    private static List<Object> createRow(int iteration, String mode, String metric, String unit, LatencyHistogram histogram) {
+        return List.of(iteration, mode, metric, unit, histogram.getCount(), histogram.getMean(),
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getMax());
+    }
+
+    private static void write(Path file, List<List<Object>> rows) {
+        try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(file), CSVFormat.DEFAULT.withDelimiter(';'))) {
+            printer.printRecord("iteration", "mode", "metric", "unit", "count", "mean", "p50", "p90", "p99", "max");
+            for (List<Object> row : rows) {
+                printer.printRecord(row);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The histograms of one DRT mode. The request inserter, the rebalancing and the passenger request events (in
+     * simulated time) are handled on the QSim thread. The cost calculation may be called from the threads of the
+     * insertion search, and is therefore only counted (in a {@link LongAdder}) and added to the histogram when the
+     * insertion is recorded.
+     */
+    static class ModeHistograms implements TimedRequestInserter.Recorder, PassengerRequestSubmittedEventHandler,
+            PassengerRequestScheduledEventHandler, PassengerRequestRejectedEventHandler {
+        final String mode;
+        final LatencyHistogram decisionLatency = new LatencyHistogram();
+        final LatencyHistogram insertionTime = new LatencyHistogram();
+        final LatencyHistogram insertionsEvaluated = new LatencyHistogram();
+        final LatencyHistogram rebalancingTime = new LatencyHistogram();
+        final LongAdder costCalculations = new LongAdder();
+        private long recordedCostCalculations = 0;
+        private final Map<Id<Request>, Double> submissionTimes = new HashMap<>();
+
+        ModeHistograms(String mode) {
+            this.mode = mode;
+        }
+
+        void reset() {
+            decisionLatency.reset();
+            insertionTime.reset();
+            insertionsEvaluated.reset();
+            rebalancingTime.reset();
+            costCalculations.reset();
+            recordedCostCalculations = 0;
+        }
+
+        /**
+         * Each request of the batch waits until the whole batch is inserted, so the wall time of the batch is recorded
+         * for each of its requests. The cost calculations are only made during the insertion, so the ones since the
+         * last insertion belong to this batch.
+         */
+        @Override
+        public void recordInsertion(int requests, long insertionTime) {
+            long calculations = costCalculations.sum();
+            if (requests > 0) {
+                this.insertionTime.record(insertionTime / 1000, requests);
+                insertionsEvaluated.record(calculations - recordedCostCalculations);
+            }
+            recordedCostCalculations = calculations;
+        }
+
+        @Override
+        public void handleEvent(PassengerRequestSubmittedEvent event) {
+            if (event.getMode().equals(mode)) {
+                submissionTimes.put(event.getRequestId(), event.getTime());
+            }
+        }
+
+        @Override
+        public void handleEvent(PassengerRequestScheduledEvent event) {
+            if (event.getMode().equals(mode)) {
+                recordDecision(event.getRequestId(), event.getTime());
+            }
+        }
+
+        @Override
+        public void handleEvent(PassengerRequestRejectedEvent event) {
+            if (event.getMode().equals(mode)) {
+                recordDecision(event.getRequestId(), event.getTime());
+            }
+        }
+
+        private void recordDecision(Id<Request> requestId, double time) {
+            Double submissionTime = submissionTimes.remove(requestId);
+            if (submissionTime != null) {
+                decisionLatency.record(Math.round(time - submissionTime));
+            }
+        }
+
+        @Override
+        public void reset(int iteration) {
+            submissionTimes.clear();
+        }
+    }
+}
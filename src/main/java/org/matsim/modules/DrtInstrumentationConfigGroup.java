@@ -0,0 +1,19 @@
+package org.matsim.modules;
+
+import org.matsim.core.config.ReflectiveConfigGroup;
+
+/**
+ * Switches on the {@link DrtInstrumentationModule}.
+ */
+public class DrtInstrumentationConfigGroup extends ReflectiveConfigGroup {
+    public static final String GROUP_NAME = "drtInstrumentation";
+
+    @Parameter
+    @Comment("Record histograms of the dispatch hot paths (decision latency, insertion time per request, " +
+            "evaluated insertions per batch, rebalancing time, mobsim step time) and write them to drt_instrumentation.csv")
+    public boolean enabled = false;
+
+    public DrtInstrumentationConfigGroup() {
+        super(GROUP_NAME);
+    }
+}
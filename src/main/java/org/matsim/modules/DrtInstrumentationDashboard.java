@@ -0,0 +1,40 @@
+package org.matsim.modules;
+
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.simwrapper.Dashboard;
+import org.matsim.simwrapper.DashboardProvider;
+import org.matsim.simwrapper.Header;
+import org.matsim.simwrapper.Layout;
+import org.matsim.simwrapper.SimWrapper;
+import org.matsim.simwrapper.viz.Table;
+
+import java.util.List;
+
+/**
+ * SimWrapper dashboard with the histograms of the {@link DrtInstrumentationModule}. Registered as
+ * {@link DashboardProvider} (META-INF/services), and only added if the instrumentation is enabled.
+ */
+public class DrtInstrumentationDashboard implements Dashboard {
+
+    @Override
+    public void configure(Header header, Layout layout) {
+        header.title = "DRT Instrumentation";
+        header.description = "Histograms of the dispatch hot paths per iteration: decision latency [s], " +
+                "insertion time of the batch per request [us], insertions evaluated per batch, rebalancing time [us] " +
+                "and mobsim step time [us]";
+
+        layout.row("histograms").el(Table.class, (viz, data) -> {
+            viz.title = "Histograms per iteration";
+            viz.dataset = data.output("*" + DrtInstrumentation.FILE_NAME);
+        });
+    }
+
+    public static class Provider implements DashboardProvider {
+        @Override
+        public List<Dashboard> getDashboards(Config config, SimWrapper simWrapper) {
+            DrtInstrumentationConfigGroup instrumentationConfig = ConfigUtils.addOrGetModule(config, DrtInstrumentationConfigGroup.class);
+            return instrumentationConfig.enabled ? List.of(new DrtInstrumentationDashboard()) : List.of();
+        }
+    }
+}
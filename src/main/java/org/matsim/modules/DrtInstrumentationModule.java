@@ -0,0 +1,92 @@
+package org.matsim.modules;
+
+import org.matsim.contrib.drt.analysis.zonal.DrtZonalSystem;
+import org.matsim.contrib.drt.optimizer.insertion.*;
+import org.matsim.contrib.drt.optimizer.rebalancing.RebalancingParams;
+import org.matsim.contrib.drt.optimizer.rebalancing.RebalancingStrategy;
+import org.matsim.contrib.drt.optimizer.rebalancing.mincostflow.MinCostFlowRebalancingStrategy;
+import org.matsim.contrib.drt.optimizer.rebalancing.mincostflow.MinCostFlowRebalancingStrategyParams;
+import org.matsim.contrib.drt.optimizer.rebalancing.mincostflow.ZonalRelocationCalculator;
+import org.matsim.contrib.drt.optimizer.rebalancing.targetcalculator.RebalancingTargetCalculator;
+import org.matsim.contrib.drt.passenger.DrtRequest;
+import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.contrib.drt.run.MultiModeDrtConfigGroup;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+import org.matsim.contrib.dvrp.fleet.Fleet;
+import org.matsim.contrib.dvrp.run.AbstractDvrpModeQSimModule;
+import org.matsim.core.controler.AbstractModule;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Optional instrumentation of the dispatch hot paths of all DRT modes (see {@link DrtInstrumentation} for the
+ * recorded histograms). The request inserter, the cost calculation strategy and the min cost flow rebalancing
+ * strategy are replaced by decorators around the same implementations as bound by the DRT contrib. The histograms
+ * are written per iteration to drt_instrumentation.csv, which is also shown in a SimWrapper dashboard.
+ */
+public class DrtInstrumentationModule extends AbstractModule {
+    private final MultiModeDrtConfigGroup multiModeDrtConfig;
+
+    public DrtInstrumentationModule(MultiModeDrtConfigGroup multiModeDrtConfig) {
+        this.multiModeDrtConfig = multiModeDrtConfig;
+    }
+
+    @Override
+    public void install() {
+        DrtInstrumentation instrumentation = new DrtInstrumentation(
+                multiModeDrtConfig.getModalElements().stream().map(drtCfg -> drtCfg.mode).toList());
+        addControlerListenerBinding().toInstance(instrumentation);
+        addMobsimListenerBinding().toInstance(instrumentation);
+        instrumentation.getAllHistograms().forEach(histograms -> addEventHandlerBinding().toInstance(histograms));
+
+        for (DrtConfigGroup drtCfg : multiModeDrtConfig.getModalElements()) {
+            DrtInstrumentation.ModeHistograms histograms = instrumentation.getHistograms(drtCfg.mode);
+            installOverridingQSimModule(new AbstractDvrpModeQSimModule(drtCfg.mode) {
+                @Override
+                protected void configureQSim() {
+                    bindModal(UnplannedRequestInserter.class).toProvider(modalProvider(
+                            getter -> new TimedRequestInserter(getter.getModal(DefaultUnplannedRequestInserter.class), histograms)));
+
+                    CostCalculationStrategy costCalculationStrategy = drtCfg.rejectRequestIfMaxWaitOrTravelTimeViolated ?
+                            new CostCalculationStrategy.RejectSoftConstraintViolations() :
+                            new CostCalculationStrategy.DiscourageSoftConstraintViolations();
+                    bindModal(CostCalculationStrategy.class).toInstance(
+                            new CountingCostCalculationStrategy(costCalculationStrategy, histograms));
+
+                    RebalancingParams rebalancingParams = drtCfg.getRebalancingParams().orElse(null);
+                    if (rebalancingParams != null
+                            && rebalancingParams.getRebalancingStrategyParams() instanceof MinCostFlowRebalancingStrategyParams) {
+                        bindModal(RebalancingStrategy.class).toProvider(modalProvider(getter -> new TimedRebalancingStrategy(
+                                new MinCostFlowRebalancingStrategy(getter.getModal(RebalancingTargetCalculator.class),
+                                        getter.getModal(DrtZonalSystem.class), getter.getModal(Fleet.class),
+                                        getter.getModal(ZonalRelocationCalculator.class), rebalancingParams),
+                                histograms))).asEagerSingleton();
+                    }
+                }
+            });
+        }
+    }
+
+    private record CountingCostCalculationStrategy(CostCalculationStrategy delegate,
+                                                   DrtInstrumentation.ModeHistograms histograms)
+            implements CostCalculationStrategy {
+        @Override
+        public double calcCost(DrtRequest request, InsertionGenerator.Insertion insertion,
+                               InsertionDetourTimeCalculator.DetourTimeInfo detourTimeInfo) {
+            histograms.costCalculations.increment();
+            return delegate.calcCost(request, insertion, detourTimeInfo);
+        }
+    }
+
+    private record TimedRebalancingStrategy(RebalancingStrategy delegate, DrtInstrumentation.ModeHistograms histograms)
+            implements RebalancingStrategy {
+        @Override
+        public List<Relocation> calcRelocations(Stream<? extends DvrpVehicle> rebalancableVehicles, double time) {
+            long start = System.nanoTime();
+            List<Relocation> relocations = delegate.calcRelocations(rebalancableVehicles, time);
+            histograms.rebalancingTime.record((System.nanoTime() - start) / 1000);
+            return relocations;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.matsim.modules;
+
+import org.matsim.core.config.ReflectiveConfigGroup;
+
+/**
+ * Selects the {@link StopDurationModel} of the DRT modes. Without this module in the config, the linear model with
+ * the stopDuration of the drt config group is used.
+ */
+public class DrtStopDurationConfigGroup extends ReflectiveConfigGroup {
+    public static final String GROUP_NAME = "drtStopDuration";
+
+    public enum Model {LINEAR, FIXED_PLUS_PER_PASSENGER, CAPPED_BATCH}
+
+    @Parameter
+    @Comment("Stop duration model: LINEAR, FIXED_PLUS_PER_PASSENGER or CAPPED_BATCH")
+    public Model model = Model.LINEAR;
+
+    @Parameter
+    @Comment("Fixed duration of each stop [s] (FIXED_PLUS_PER_PASSENGER, CAPPED_BATCH)")
+    public double fixedDuration = 0;
+
+    @Parameter
+    @Comment("Duration per passenger (LINEAR, FIXED_PLUS_PER_PASSENGER) or per batch of passengers (CAPPED_BATCH) [s]. " +
+            "If negative, the stopDuration of the drt config group is used")
+    public double perPassengerDuration = -1;
+
+    @Parameter
+    @Comment("Number of passengers boarding or alighting at the same time (CAPPED_BATCH)")
+    public int batchSize = 2;
+
+    @Parameter
+    @Comment("Maximum duration of a stop [s] (CAPPED_BATCH)")
+    public double maxDuration = Double.POSITIVE_INFINITY;
+
+    public DrtStopDurationConfigGroup() {
+        super(GROUP_NAME);
+    }
+
+    public StopDurationModel createModel(double drtStopDuration) {
+        double duration = perPassengerDuration < 0 ? drtStopDuration : perPassengerDuration;
+        return switch (model) {
+            case LINEAR -> new StopDurationModel.Linear(duration);
+            case FIXED_PLUS_PER_PASSENGER -> new StopDurationModel.FixedPlusPerPassenger(fixedDuration, duration);
+            case CAPPED_BATCH -> new StopDurationModel.CappedBatch(fixedDuration, duration, batchSize, maxDuration);
+        };
+    }
+}
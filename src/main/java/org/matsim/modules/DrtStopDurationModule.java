@@ -0,0 +1,35 @@
+package org.matsim.modules;
+
+import org.matsim.contrib.drt.optimizer.insertion.IncrementalStopDurationEstimator;
+import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.contrib.drt.schedule.StopDurationEstimator;
+import org.matsim.contrib.dvrp.run.AbstractDvrpModeModule;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+
+/**
+ * Binds a {@link StopDurationModel} as stop duration estimator (and incremental estimator) of a DRT mode.
+ */
+public class DrtStopDurationModule extends AbstractDvrpModeModule {
+    private final StopDurationModel model;
+
+    public DrtStopDurationModule(String mode, StopDurationModel model) {
+        super(mode);
+        this.model = model;
+    }
+
+    /**
+     * @return the module with the model of the drtStopDuration config group (linear model with the drt stopDuration
+     * if the config group is not set)
+     */
+    public static DrtStopDurationModule create(Config config, DrtConfigGroup drtCfg) {
+        DrtStopDurationConfigGroup stopDurationConfig = ConfigUtils.addOrGetModule(config, DrtStopDurationConfigGroup.class);
+        return new DrtStopDurationModule(drtCfg.mode, stopDurationConfig.createModel(drtCfg.stopDuration));
+    }
+
+    @Override
+    public void install() {
+        bindModal(StopDurationEstimator.class).toInstance(model);
+        bindModal(IncrementalStopDurationEstimator.class).toInstance(model);
+    }
+}
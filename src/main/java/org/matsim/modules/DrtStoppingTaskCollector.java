@@ -0,0 +1,123 @@
+package org.matsim.modules;
+
+import com.google.inject.Inject;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.drt.schedule.DrtStayTask;
+import org.matsim.contrib.drt.schedule.DrtStopTask;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+import org.matsim.contrib.dvrp.schedule.Task;
+import org.matsim.contrib.dvrp.vrpagent.TaskEndedEvent;
+import org.matsim.contrib.dvrp.vrpagent.TaskEndedEventHandler;
+import org.matsim.contrib.dvrp.vrpagent.TaskStartedEvent;
+import org.matsim.contrib.dvrp.vrpagent.TaskStartedEventHandler;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.IterationStartsListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the stopping tasks (stop and stay tasks) of the DRT vehicles from the task events of the last iteration
+ * and writes each task to drt_stopping_tasks.csv in the output folder as soon as it ends. This replaces the analysis
+ * of the output events after the run (DrtVehicleStoppingTaskWriter), so the output files are not read again. Tasks
+ * that have not ended by the end of the simulation are written with an empty end time.
+ */
+public class DrtStoppingTaskCollector implements TaskStartedEventHandler, TaskEndedEventHandler,
+        IterationStartsListener, IterationEndsListener {
+    public static final String FILE_NAME = "drt_stopping_tasks.csv";
+
+    private final Network network;
+    private final OutputDirectoryHierarchy controlerIO;
+    private final Map<VehicleKey, TaskStartedEvent> startedTasks = new LinkedHashMap<>(); // vehicle ids are only unique per mode
+    private CSVPrinter printer; // only open during the last iteration
+
+    @Inject
+    DrtStoppingTaskCollector(Network network, OutputDirectoryHierarchy controlerIO) {
+        this.network = network;
+        this.controlerIO = controlerIO;
+    }
+
+    @Override
+    public void notifyIterationStarts(IterationStartsEvent event) {
+        if (!event.isLastIteration()) {
+            return;
+        }
+        try {
+            printer = new CSVPrinter(Files.newBufferedWriter(Path.of(controlerIO.getOutputFilename(FILE_NAME))),
+                    CSVFormat.DEFAULT.withDelimiter(';'));
+            printer.printRecord("mode", "vehicle_id", "task_index", "task_type", "link_id", "x", "y", "start_time", "end_time");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void handleEvent(TaskStartedEvent event) {
+        if (printer != null && isStoppingTask(event.getTaskType())) {
+            startedTasks.put(new VehicleKey(event.getDvrpMode(), event.getDvrpVehicleId()), event);
+        }
+    }
+
+    @Override
+    public void handleEvent(TaskEndedEvent event) {
+        if (printer == null || !isStoppingTask(event.getTaskType())) {
+            return;
+        }
+        TaskStartedEvent started = startedTasks.remove(new VehicleKey(event.getDvrpMode(), event.getDvrpVehicleId()));
+        if (started != null) {
+            print(started, Double.toString(event.getTime()));
+        }
+    }
+
+    @Override
+    public void notifyIterationEnds(IterationEndsEvent event) {
+        if (printer == null) {
+            return;
+        }
+        for (TaskStartedEvent started : startedTasks.values()) {
+            print(started, "");
+        }
+        startedTasks.clear();
+        try {
+            printer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        printer = null;
+    }
+
+    @Override
+    public void reset(int iteration) {
+        startedTasks.clear();
+    }
+
+    private static boolean isStoppingTask(Task.TaskType taskType) {
+        return taskType.equals(DrtStopTask.TYPE) || taskType.equals(DrtStayTask.TYPE);
+    }
+
+    private void print(TaskStartedEvent started, String endTime) {
+        Id<Link> linkId = started.getLinkId();
+        Coord coord = network.getLinks().get(linkId).getToNode().getCoord();
+        try {
+            printer.printRecord(started.getDvrpMode(), started.getDvrpVehicleId(), started.getTaskIndex(),
+                    started.getTaskType().name(), linkId, coord.getX(), coord.getY(), started.getTime(), endTime);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record VehicleKey(String mode, Id<DvrpVehicle> vehicleId) {
+    }
+}
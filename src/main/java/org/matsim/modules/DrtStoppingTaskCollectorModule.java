@@ -0,0 +1,15 @@
+package org.matsim.modules;
+
+import org.matsim.core.controler.AbstractModule;
+
+/**
+ * Writes the stopping tasks of the DRT vehicles in the last iteration, see {@link DrtStoppingTaskCollector}.
+ */
+public class DrtStoppingTaskCollectorModule extends AbstractModule {
+    @Override
+    public void install() {
+        bind(DrtStoppingTaskCollector.class).asEagerSingleton();
+        addEventHandlerBinding().to(DrtStoppingTaskCollector.class);
+        addControlerListenerBinding().to(DrtStoppingTaskCollector.class);
+    }
+}
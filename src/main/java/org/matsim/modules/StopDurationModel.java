@@ -0,0 +1,120 @@
+package org.matsim.modules;
+
+import org.matsim.contrib.drt.optimizer.insertion.IncrementalStopDurationEstimator;
+import org.matsim.contrib.drt.passenger.AcceptedDrtRequest;
+import org.matsim.contrib.drt.passenger.DrtRequest;
+import org.matsim.contrib.drt.schedule.DrtStopTask;
+import org.matsim.contrib.drt.schedule.StopDurationEstimator;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+
+import java.util.Collection;
+
+/**
+ * Stop duration as a function of the number of passengers (pickups and dropoffs) at the stop. The same instance is
+ * used as {@link StopDurationEstimator} and as {@link IncrementalStopDurationEstimator}. The incremental estimate is
+ * the additional stop duration caused by one more passenger (for a new stop, i.e. without a stop task, the duration
+ * of a stop with one passenger).
+ * <p>
+ * The models are final records and compute the duration directly, without allocations or further virtual calls,
+ * because they are called for every insertion candidate of the insertion search.
+ */
+public sealed interface StopDurationModel extends StopDurationEstimator, IncrementalStopDurationEstimator {
+
+    double getDuration(int passengers);
+
+    static int getPassengers(DrtStopTask stopTask) {
+        return stopTask.getPickupRequests().size() + stopTask.getDropoffRequests().size();
+    }
+
+    /**
+     * Each passenger takes the same time (the former LinearDrtStopDurationModule).
+     */
+    record Linear(double perPassengerDuration) implements StopDurationModel {
+        @Override
+        public double getDuration(int passengers) {
+            return perPassengerDuration * passengers;
+        }
+
+        @Override
+        public double calcDuration(DvrpVehicle vehicle, Collection<AcceptedDrtRequest> dropoffRequests,
+                                   Collection<AcceptedDrtRequest> pickupRequests) {
+            return perPassengerDuration * (dropoffRequests.size() + pickupRequests.size());
+        }
+
+        @Override
+        public double calcForPickup(DvrpVehicle vehicle, DrtStopTask stopTask, DrtRequest pickupRequest) {
+            return perPassengerDuration;
+        }
+
+        @Override
+        public double calcForDropoff(DvrpVehicle vehicle, DrtStopTask stopTask, DrtRequest dropoffRequest) {
+            return perPassengerDuration;
+        }
+    }
+
+    /**
+     * Fixed duration for each stop (e.g. approaching the curb, opening the doors) plus a duration per passenger.
+     */
+    record FixedPlusPerPassenger(double fixedDuration, double perPassengerDuration) implements StopDurationModel {
+        @Override
+        public double getDuration(int passengers) {
+            return passengers == 0 ? 0 : fixedDuration + perPassengerDuration * passengers;
+        }
+
+        @Override
+        public double calcDuration(DvrpVehicle vehicle, Collection<AcceptedDrtRequest> dropoffRequests,
+                                   Collection<AcceptedDrtRequest> pickupRequests) {
+            return getDuration(dropoffRequests.size() + pickupRequests.size());
+        }
+
+        @Override
+        public double calcForPickup(DvrpVehicle vehicle, DrtStopTask stopTask, DrtRequest pickupRequest) {
+            return stopTask == null || getPassengers(stopTask) == 0 ? fixedDuration + perPassengerDuration : perPassengerDuration;
+        }
+
+        @Override
+        public double calcForDropoff(DvrpVehicle vehicle, DrtStopTask stopTask, DrtRequest dropoffRequest) {
+            return stopTask == null || getPassengers(stopTask) == 0 ? fixedDuration + perPassengerDuration : perPassengerDuration;
+        }
+    }
+
+    /**
+     * Passengers board and alight in batches (e.g. through several doors): fixed duration plus a duration per batch
+     * of up to batchSize passengers. The total duration is capped at maxDuration.
+     */
+    record CappedBatch(double fixedDuration, double perBatchDuration, int batchSize, double maxDuration)
+            implements StopDurationModel {
+        public CappedBatch {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("The batch size must be positive");
+            }
+        }
+
+        @Override
+        public double getDuration(int passengers) {
+            if (passengers == 0) {
+                return 0;
+            }
+            int batches = (passengers + batchSize - 1) / batchSize;
+            return Math.min(fixedDuration + perBatchDuration * batches, maxDuration);
+        }
+
+        @Override
+        public double calcDuration(DvrpVehicle vehicle, Collection<AcceptedDrtRequest> dropoffRequests,
+                                   Collection<AcceptedDrtRequest> pickupRequests) {
+            return getDuration(dropoffRequests.size() + pickupRequests.size());
+        }
+
+        @Override
+        public double calcForPickup(DvrpVehicle vehicle, DrtStopTask stopTask, DrtRequest pickupRequest) {
+            int passengers = stopTask == null ? 0 : getPassengers(stopTask);
+            return getDuration(passengers + 1) - getDuration(passengers);
+        }
+
+        @Override
+        public double calcForDropoff(DvrpVehicle vehicle, DrtStopTask stopTask, DrtRequest dropoffRequest) {
+            int passengers = stopTask == null ? 0 : getPassengers(stopTask);
+            return getDuration(passengers + 1) - getDuration(passengers);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.matsim.modules;
+
+import org.matsim.contrib.drt.optimizer.insertion.UnplannedRequestInserter;
+import org.matsim.contrib.drt.passenger.DrtRequest;
+
+import java.util.Collection;
+
+/**
+ * Decorator of the request inserter that measures the wall time of each call (vehicle entries, insertion search and
+ * scheduling of the requests of one time step). Used by the {@link DrtInstrumentationModule} and by the use case
+ * benchmark.
+ */
+public class TimedRequestInserter implements UnplannedRequestInserter {
+    public interface Recorder {
+        /**
+         * @param requests      number of requests inserted together (may be 0)
+         * @param insertionTime wall time of the insertion [ns]
+         */
+        void recordInsertion(int requests, long insertionTime);
+    }
+
+    private final UnplannedRequestInserter delegate;
+    private final Recorder recorder;
+
+    public TimedRequestInserter(UnplannedRequestInserter delegate, Recorder recorder) {
+        this.delegate = delegate;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public void scheduleUnplannedRequests(Collection<DrtRequest> unplannedRequests) {
+        // The inserter removes the requests from the collection
+        int requests = unplannedRequests.size();
+        long start = System.nanoTime();
+        delegate.scheduleUnplannedRequests(unplannedRequests);
+        recorder.recordInsertion(requests, System.nanoTime() - start);
+    }
+}
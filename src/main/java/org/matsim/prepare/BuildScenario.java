@@ -0,0 +1,241 @@
+package org.matsim.prepare;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.application.options.ShpOptions;
+import org.matsim.contrib.dvrp.fleet.FleetWriter;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.source.NetworkCutter;
+import org.matsim.source.PrepareAllPossibleDrtTrips;
+import org.matsim.utils.*;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a DRT scenario in one run: cuts the network to the service area ({@link NetworkCutter}), extracts the DRT
+ * trips from the plans ({@link PrepareAllPossibleDrtTrips}), creates the fleets ({@link CreateFleetVehicles}) and
+ * down-samples the demand ({@link RandomSampling}). The network and the plans are read once, and the intermediate
+ * results are passed in memory. Only the final files are written.
+ * <p>
+ * The network and the plans are read concurrently. Once the network is cut, the cut network is written, the fleets
+ * are created and the network for the snapping is processed at the same time. The trips are then extracted, shuffled,
+ * limited and snapped as in {@link PrepareAllPossibleDrtTrips} (with {@link NetworkUtils#getNearestLink} or the
+ * {@link SnappingCache}), so the samples are the same as the ones of the separate commands. The samples are written
+ * concurrently.
+ */
+@CommandLine.Command(
+        name = "build-scenario",
+        description = "build network, demand samples and fleets of a DRT scenario in one run"
+)
+public class BuildScenario implements MATSimAppCommand {
+    private static final Logger log = LogManager.getLogger(BuildScenario.class);
+
+    @CommandLine.Option(names = "--network", description = "path to input network file", required = true)
+    private String networkPath;
+
+    @CommandLine.Option(names = "--plans", description = "path to input plans", required = true)
+    private String plansPath;
+
+    @CommandLine.Option(names = "--output", description = "output folder of the scenario", required = true)
+    private Path output;
+
+    @CommandLine.Option(names = "--name", description = "prefix of the output files", defaultValue = "drt")
+    private String name;
+
+    @CommandLine.Option(names = "--start-time", description = "Service hour start time", defaultValue = "3600")
+    private double startTime;
+
+    @CommandLine.Option(names = "--end-time", description = "Service hour end time", defaultValue = "86400")
+    private double endTime;
+
+    @CommandLine.Option(names = "--min-euclidean-distance", description = "filter out short trips", defaultValue = "500")
+    private double minTripEuclideanDistance;
+
+    @CommandLine.Option(names = "--trips", description = "Number of trips to keep", defaultValue = "1000000")
+    private int numberOfTrips;
+
+    @CommandLine.Option(names = "--samples", description = "Desired down-sampled sizes of the DRT trips in (0, 1]",
+            arity = "1..*", defaultValue = "1.0")
+    private List<Double> samples;
+
+    @CommandLine.Option(names = "--fleet-size-from", description = "number of vehicles to generate", required = true)
+    private int fleetSizeFrom;
+
+    @CommandLine.Option(names = "--fleet-size-to", description = "number of vehicles to generate", required = true)
+    private int fleetSizeTo;
+
+    @CommandLine.Option(names = "--fleet-size-interval", description = "number of vehicles to generate", defaultValue = "10")
+    private int fleetSizeInterval;
+
+    @CommandLine.Option(names = "--capacity", description = "capacity of the vehicle", required = true)
+    private int capacity;
+
+    @CommandLine.Option(names = "--operator", description = "name of the operator", defaultValue = "drt")
+    private String operator;
+
+    @CommandLine.Option(names = "--seed", description = "random seed for the down sampling and the start links", defaultValue = "4711")
+    private long seed;
+
+    @CommandLine.Option(names = "--threads", description = "number of threads for extracting the trips", defaultValue = "4")
+    private int threads;
+
+    @CommandLine.Mixin
+    private ShpOptions shp = new ShpOptions();
+
+    @CommandLine.Mixin
+    private OutputOptions outputOptions = new OutputOptions();
+
+    @CommandLine.Mixin
+    private SnappingCacheOptions snappingCacheOptions = new SnappingCacheOptions();
+
+    public static void main(String[] args) {
+        new BuildScenario().execute(args);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        if (!shp.isDefined()) {
+            throw new IllegalArgumentException("The service area (shape file) is required to cut the network");
+        }
+        Files.createDirectories(output.resolve("plans"));
+        Files.createDirectories(output.resolve("vehicles"));
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            ServiceArea serviceArea = new ServiceArea(shp.getGeometry());
+            CompletableFuture<Population> inputPlans = CompletableFuture.supplyAsync(
+                    () -> PopulationUtils.readPopulation(plansPath), executor);
+            Network network = NetworkUtils.readNetwork(networkPath);
+            Network cutNetwork = NetworkCutter.cutNetwork(network, serviceArea);
+
+            String cutNetworkFile = output.resolve(name + ".network.xml.gz").toString();
+            CompletableFuture<Void> networkWritten = CompletableFuture.runAsync(
+                    () -> outputOptions.writeNetwork(cutNetwork, cutNetworkFile), executor);
+            CompletableFuture<Void> fleetsWritten = CompletableFuture.runAsync(() -> writeFleets(cutNetwork, serviceArea), executor);
+            CompletableFuture<Network> snappingNetwork = CompletableFuture.supplyAsync(() -> createSnappingNetwork(cutNetwork), executor);
+            CompletableFuture<Void> plansWritten = inputPlans
+                    .thenCombineAsync(snappingNetwork, (population, processedNetwork) -> createDemand(population, network,
+                            processedNetwork, cutNetworkFile, serviceArea), executor)
+                    .thenCompose(demand -> writeSamples(demand, executor));
+
+            CompletableFuture.allOf(networkWritten, fleetsWritten, plansWritten).join();
+        } finally {
+            executor.shutdown();
+        }
+        return 0;
+    }
+
+    /**
+     * @return a copy of the cut network, processed as in {@link PrepareAllPossibleDrtTrips#processNetwork}: only the
+     * links that are feasible DRT trip origins and destinations. The cut network itself is written and used for the
+     * fleets at the same time, so it is not changed.
+     */
+    private static Network createSnappingNetwork(Network cutNetwork) {
+        Network snappingNetwork = Tools.filterNetwork(cutNetwork, link -> true);
+        PrepareAllPossibleDrtTrips.processNetwork(snappingNetwork);
+        return snappingNetwork;
+    }
+
+    /**
+     * The trips are extracted with the input network (the activities of the plans refer to its links). As in
+     * {@link PrepareAllPossibleDrtTrips}, they are shuffled with the same seed, limited to --trips and snapped to the
+     * processed cut network. The snapping cache (if enabled) is the one of the written cut network.
+     */
+    private DrtRequestTable createDemand(Population inputPlans, Network network, Network snappingNetwork,
+                                         String cutNetworkFile, ServiceArea serviceArea) {
+        List<TripStructureUtils.Trip> trips = PrepareAllPossibleDrtTrips.collectAllRelevantTripsFromInputPlans(inputPlans,
+                network, serviceArea, startTime, endTime, minTripEuclideanDistance, threads, log);
+        log.info("There are in total " + trips.size() + " potential DRT trips in total.");
+        Collections.shuffle(trips, new Random(4711));
+        int numberOfTripsToKeep = Math.min(numberOfTrips, trips.size());
+
+        SnappingCache snappingCache = snappingCacheOptions.getCache(snappingNetwork, cutNetworkFile,
+                PrepareAllPossibleDrtTrips.NETWORK_FILTER);
+        DrtRequestTable demand = new DrtRequestTable(numberOfTripsToKeep);
+        for (int i = 0; i < numberOfTripsToKeep; i++) {
+            TripStructureUtils.Trip trip = trips.get(i);
+            Link fromLink = snappingCache.getNearestLink(trip.getOriginActivity().getCoord());
+            Link toLink = snappingCache.getNearestLink(trip.getDestinationActivity().getCoord());
+            demand.add(trip.getOriginActivity().getEndTime().orElseThrow(RuntimeException::new), fromLink.getId(), toLink.getId());
+        }
+        try {
+            snappingCache.save();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info(demand.size() + " DRT trips are kept");
+        return demand;
+    }
+
+    /**
+     * The samples are nested: each sample is down-sampled from the previous (larger) one, as in {@link RandomSampling}.
+     * The sample files are written concurrently.
+     */
+    private CompletableFuture<Void> writeSamples(DrtRequestTable demand, ExecutorService executor) {
+        List<Double> sortedSamples = new ArrayList<>(samples);
+        sortedSamples.sort(Comparator.reverseOrder());
+        List<Integer> requests = IntStream.range(0, demand.size()).boxed().collect(Collectors.toList());
+        double baseSample = 1.0;
+        List<CompletableFuture<Void>> samplesWritten = new ArrayList<>();
+        for (double sample : sortedSamples) {
+            if (sample > baseSample) {
+                log.warn(sample + " is larger than the full demand (1.0). Skip this sample...");
+                continue;
+            }
+            Set<Integer> toRemove = new HashSet<>(RandomSampling.getItemsToRemove(new ArrayList<>(requests), sample / baseSample, seed));
+            requests.removeIf(toRemove::contains);
+            baseSample = sample;
+
+            List<Integer> sampledRequests = List.copyOf(requests);
+            String plansFile = output.resolve("plans").resolve(name + "-" + getSampleName(sample) + ".plans.xml.gz").toString();
+            samplesWritten.add(CompletableFuture.runAsync(() -> {
+                try (DrtPlansWriter writer = new DrtPlansWriter(outputOptions.getWriter(plansFile), "drt_person_")) {
+                    for (int request : sampledRequests) {
+                        writer.write(request, demand.getDepartureTime(request), demand.getFromLinkId(request),
+                                demand.getToLinkId(request), demand.getMode(request));
+                    }
+                }
+                log.info(sampledRequests.size() + " trips are written to " + plansFile);
+            }, executor));
+        }
+        return CompletableFuture.allOf(samplesWritten.toArray(new CompletableFuture[0]));
+    }
+
+    private static String getSampleName(double sample) {
+        double pct = sample * 100;
+        return pct % 1 == 0 ? String.format("%dpct", Math.round(pct)) : pct + "pct";
+    }
+
+    /**
+     * Start links are the car links of the cut network within the service area. Each fleet is seeded as in the
+     * --parallel mode of {@link CreateFleetVehicles}. The vehicles are in service for the whole day.
+     */
+    private void writeFleets(Network cutNetwork, ServiceArea serviceArea) {
+        List<Link> links = cutNetwork.getLinks().values().stream()
+                .filter(link -> link.getAllowedModes().contains(TransportMode.car))
+                .filter(link -> serviceArea.contains(link.getToNode()))
+                .collect(Collectors.toList());
+        IntStream.iterate(fleetSizeFrom, fleetSize -> fleetSize <= fleetSizeTo, fleetSize -> fleetSize + fleetSizeInterval)
+                .parallel()
+                .forEach(fleetSize -> new FleetWriter(CreateFleetVehicles.createRandomFleet(links, fleetSize, capacity, seed,
+                        operator, 0, 86400).stream())
+                        .write(output.resolve("vehicles").resolve(CreateFleetVehicles.getFleetFileName(fleetSize, capacity, operator)).toString()));
+    }
+}
@@ -0,0 +1,90 @@
+package org.matsim.prepare;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.contrib.dvrp.fleet.FleetReader;
+import org.matsim.contrib.dvrp.fleet.FleetSpecification;
+import org.matsim.contrib.dvrp.fleet.FleetSpecificationImpl;
+import org.matsim.contrib.dvrp.fleet.FleetWriter;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.utils.DrtBinaryFormat;
+import org.matsim.utils.OutputOptions;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@CommandLine.Command(
+        name = "convert-to-binary",
+        description = "convert drt plans and fleet files to the binary format and back"
+)
+public class ConvertToBinaryFormat implements MATSimAppCommand {
+    private static final Logger log = LogManager.getLogger(ConvertToBinaryFormat.class);
+
+    enum FileType {DEMAND, FLEET}
+
+    @CommandLine.Option(names = "--input", description = "input files or folders (all xml files in the folder). " +
+            "Files ending with " + DrtBinaryFormat.EXTENSION + " are converted back to xml", arity = "1..*", required = true)
+    private List<Path> inputs;
+
+    @CommandLine.Option(names = "--type", description = "type of the files, choose from: DEMAND, FLEET", required = true)
+    private FileType type;
+
+    @CommandLine.Mixin
+    private OutputOptions outputOptions = new OutputOptions();
+
+    public static void main(String[] args) {
+        new ConvertToBinaryFormat().execute(args);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> folder = Files.list(input)) {
+                    files.addAll(folder.filter(file -> file.toString().endsWith(".xml") || file.toString().endsWith(".xml.gz"))
+                            .sorted().collect(Collectors.toList()));
+                }
+            } else {
+                files.add(input);
+            }
+        }
+
+        // The output is written next to the input. The run scripts pick up the binary files from there.
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            if (fileName.endsWith(DrtBinaryFormat.EXTENSION)) {
+                String baseName = fileName.substring(0, fileName.length() - DrtBinaryFormat.EXTENSION.length());
+                Path output = file.resolveSibling(baseName + (type == FileType.DEMAND ? ".xml.gz" : ".xml"));
+                log.info("Converting " + file + " to " + output);
+                if (type == FileType.DEMAND) {
+                    Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+                    DrtBinaryFormat.readDemand(file, population);
+                    outputOptions.writePopulation(population, output.toString());
+                } else {
+                    FleetSpecification fleet = DrtBinaryFormat.readFleet(file);
+                    new FleetWriter(fleet.getVehicleSpecifications().values().stream()).write(output.toString());
+                }
+            } else {
+                Path output = file.resolveSibling(DrtBinaryFormat.getBinaryFileName(fileName));
+                log.info("Converting " + file + " to " + output);
+                if (type == FileType.DEMAND) {
+                    DrtBinaryFormat.writeDemand(PopulationUtils.readPopulation(file.toString()), output, file);
+                } else {
+                    FleetSpecification fleet = new FleetSpecificationImpl();
+                    new FleetReader(fleet).readFile(file.toString());
+                    DrtBinaryFormat.writeFleet(fleet, output, file);
+                }
+            }
+        }
+        return 0;
+    }
+}
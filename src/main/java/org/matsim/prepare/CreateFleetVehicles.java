@@ -22,7 +22,9 @@ package org.matsim.prepare;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.locationtech.jts.geom.Geometry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
@@ -35,7 +37,9 @@ import org.matsim.contrib.dvrp.fleet.FleetWriter;
 import org.matsim.contrib.dvrp.fleet.ImmutableDvrpVehicleSpecification;
 import org.matsim.core.gbl.MatsimRandom;
 import org.matsim.core.network.NetworkUtils;
-import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.utils.DemandWeightedPlacement;
+import org.matsim.utils.ServiceArea;
+import org.matsim.utils.Tools;
 import picocli.CommandLine;
 
 import java.nio.charset.StandardCharsets;
@@ -45,6 +49,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * @author jbischoff, luchengqi7
@@ -57,6 +62,8 @@ import java.util.stream.Collectors;
         description = "create drt fleet"
 )
 public class CreateFleetVehicles implements MATSimAppCommand {
+    private static final Logger log = LogManager.getLogger(CreateFleetVehicles.class);
+
     @CommandLine.Option(names = "--network", description = "path to network file", required = true)
     private Path networkFile;
 
@@ -87,11 +94,38 @@ public class CreateFleetVehicles implements MATSimAppCommand {
     @CommandLine.Option(names = "--depots", description = "Path to the depots location file", defaultValue = "")
     private String depotsPath;
 
+    @CommandLine.Option(names = "--demand-plans", description = "Path to the drt plans. If set (and no depots are " +
+            "specified), the vehicles are placed in proportion to the demand at the beginning of the simulation. The " +
+            "placement is always nested: the larger fleets extend the smaller ones", defaultValue = "")
+    private String demandPlansPath;
+
+    @CommandLine.Option(names = "--demand-time-window", description = "demand considered for the placement: trips " +
+            "departing within this time window [s] after the first departure", defaultValue = "3600")
+    private double demandTimeWindow;
+
+    @CommandLine.Option(names = "--demand-cell-size", description = "size of the zones (square grid) of the demand " +
+            "histogram [m]", defaultValue = "1000")
+    private double demandCellSize;
+
+    @CommandLine.Option(names = "--parallel", description = "generate the fleet files in parallel. Each fleet gets its " +
+            "own random generator (seeded by --seed, fleet size and capacity), so the fleets do not depend on the other " +
+            "fleet sizes generated in the same run", defaultValue = "false")
+    private boolean parallel;
+
+    @CommandLine.Option(names = "--nested", description = "each vehicle gets its start link from its own seed (--seed, " +
+            "capacity and vehicle index), so the larger fleets extend the smaller ones", defaultValue = "false")
+    private boolean nested;
+
+    @CommandLine.Option(names = "--seed", description = "random seed for the start links (with --parallel or --nested)", defaultValue = "4711")
+    private long seed;
+
     @CommandLine.Mixin
     private ShpOptions shp = new ShpOptions(); // Optional input for service area (shape file)
 
     private static final Random random = MatsimRandom.getRandom();
 
+    private DemandWeightedPlacement placement;
+
 
     public static void main(String[] args) {
         new CreateFleetVehicles().execute(args);
@@ -107,10 +141,11 @@ public class CreateFleetVehicles implements MATSimAppCommand {
         List<Link> links = network.getLinks().values().stream().
                 filter(l -> l.getAllowedModes().contains(TransportMode.car)).
                 collect(Collectors.toList());
-        if (shp.isDefined()) {
-            Geometry serviceArea = shp.getGeometry();
+        if (shp.isDefined() && depotsPath.equals("")) {
+            // computed once for all the fleets (not needed with depots, which replace the candidate links)
+            ServiceArea serviceArea = new ServiceArea(shp.getGeometry());
             links = links.stream().
-                    filter(l -> MGC.coord2Point(l.getToNode().getCoord()).within(serviceArea)).
+                    filter(l -> serviceArea.contains(l.getToNode())).
                     collect(Collectors.toList());
         }
 
@@ -125,8 +160,27 @@ public class CreateFleetVehicles implements MATSimAppCommand {
             }
         }
 
+        if (depotsPath.equals("") && !demandPlansPath.equals("")) {
+            List<Coord> origins = DemandWeightedPlacement.readOrigins(demandPlansPath, network, demandTimeWindow);
+            placement = new DemandWeightedPlacement(links, origins, demandCellSize);
+            log.info("Placing the vehicles according to " + origins.size() + " trips in "
+                    + placement.getNumberOfZones() + " zones");
+        }
+
+        if (parallel) {
+            List<Link> startLinks = links;
+            List<Integer> fleetSizes = IntStream.iterate(fleetSizeFrom, fleetSize -> fleetSize <= fleetSizeTo,
+                    fleetSize -> fleetSize + fleetSizeInterval).boxed().toList();
+            fleetSizes.parallelStream().forEach(fleetSize -> writeFleet(createFleet(startLinks, fleetSize), fleetSize));
+            return 0;
+        }
+
         for (int fleetSize = fleetSizeFrom; fleetSize <= fleetSizeTo; fleetSize += fleetSizeInterval) {
-            System.out.println("Creating fleet: " + fleetSize);
+            log.info("Creating fleet: " + fleetSize);
+            if (placement != null || nested) {
+                writeFleet(createFleet(links, fleetSize), fleetSize);
+                continue;
+            }
             List<DvrpVehicleSpecification> vehicleSpecifications = new ArrayList<>();
             for (int i = 0; i < fleetSize; i++) {
                 Id<Link> startLinkId;
@@ -135,17 +189,83 @@ public class CreateFleetVehicles implements MATSimAppCommand {
                 } else {
                     startLinkId = links.get(i % links.size()).getId(); // Even distribution of the vehcles
                 }
-
-                DvrpVehicleSpecification vehicleSpecification = ImmutableDvrpVehicleSpecification.newBuilder().
-                        id(Id.create(operator + "_" + i, DvrpVehicle.class)).
-                        startLinkId(startLinkId).
-                        capacity(capacity).
-                        serviceBeginTime(startTime).
-                        serviceEndTime(endTime).build();
-                vehicleSpecifications.add(vehicleSpecification);
+                vehicleSpecifications.add(createVehicle(i, startLinkId));
             }
-            new FleetWriter(vehicleSpecifications.stream()).write(outputFolder.toString() + "/" + fleetSize + "-" + capacity + "_seater-" + operator + "-vehicles.xml");
+            writeFleet(vehicleSpecifications, fleetSize);
         }
         return 0;
     }
+
+    /**
+     * Fleet with deterministic start links for the --parallel and --nested modes (independent of the other fleets and
+     * threads): demand weighted placement, depots, or random start links.
+     */
+    private List<DvrpVehicleSpecification> createFleet(List<Link> links, int fleetSize) {
+        if (placement != null) {
+            return createFleet(placement.getStartLinks(fleetSize));
+        }
+        if (depotsPath.equals("") && !nested) {
+            return createRandomFleet(links, fleetSize, capacity, seed, operator, startTime, endTime);
+        }
+        long capacitySeed = Tools.mix64(seed ^ Tools.mix64(capacity));
+        List<DvrpVehicleSpecification> vehicleSpecifications = new ArrayList<>(fleetSize);
+        for (int i = 0; i < fleetSize; i++) {
+            int linkIndex;
+            if (!depotsPath.equals("")) {
+                linkIndex = i % links.size(); // Even distribution of the vehicles
+            } else {
+                // uniform in [0, links.size()) from the vehicle's own seed
+                linkIndex = (int) (((Tools.mix64(capacitySeed + i) >>> 11) * 0x1.0p-53) * links.size());
+            }
+            vehicleSpecifications.add(createVehicle(i, links.get(linkIndex).getId()));
+        }
+        return vehicleSpecifications;
+    }
+
+    /**
+     * Fleet with random start links, from a random generator seeded by the seed, the capacity and the fleet size
+     * (as in the --parallel mode).
+     */
+    static List<DvrpVehicleSpecification> createRandomFleet(List<Link> links, int fleetSize, int capacity, long seed,
+                                                            String operator, double startTime, double endTime) {
+        long capacitySeed = Tools.mix64(seed ^ Tools.mix64(capacity));
+        Random fleetRandom = new Random(Tools.mix64(capacitySeed + fleetSize));
+        List<DvrpVehicleSpecification> vehicleSpecifications = new ArrayList<>(fleetSize);
+        for (int i = 0; i < fleetSize; i++) {
+            Id<Link> startLinkId = links.get(fleetRandom.nextInt(links.size())).getId();
+            vehicleSpecifications.add(createVehicle(operator, i, startLinkId, capacity, startTime, endTime));
+        }
+        return vehicleSpecifications;
+    }
+
+    private List<DvrpVehicleSpecification> createFleet(List<Link> startLinks) {
+        List<DvrpVehicleSpecification> vehicleSpecifications = new ArrayList<>(startLinks.size());
+        for (int i = 0; i < startLinks.size(); i++) {
+            vehicleSpecifications.add(createVehicle(i, startLinks.get(i).getId()));
+        }
+        return vehicleSpecifications;
+    }
+
+    private DvrpVehicleSpecification createVehicle(int index, Id<Link> startLinkId) {
+        return createVehicle(operator, index, startLinkId, capacity, startTime, endTime);
+    }
+
+    private static DvrpVehicleSpecification createVehicle(String operator, int index, Id<Link> startLinkId, int capacity,
+                                                          double startTime, double endTime) {
+        return ImmutableDvrpVehicleSpecification.newBuilder().
+                id(Id.create(operator + "_" + index, DvrpVehicle.class)).
+                startLinkId(startLinkId).
+                capacity(capacity).
+                serviceBeginTime(startTime).
+                serviceEndTime(endTime).build();
+    }
+
+    private void writeFleet(List<DvrpVehicleSpecification> vehicleSpecifications, int fleetSize) {
+        log.info("Writing fleet: " + fleetSize);
+        new FleetWriter(vehicleSpecifications.stream()).write(outputFolder.toString() + "/" + getFleetFileName(fleetSize, capacity, operator));
+    }
+
+    static String getFleetFileName(int fleetSize, int capacity, String operator) {
+        return fleetSize + "-" + capacity + "_seater-" + operator + "-vehicles.xml";
+    }
 }
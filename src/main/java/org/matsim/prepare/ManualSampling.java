@@ -3,32 +3,35 @@ package org.matsim.prepare;
 import com.google.common.base.Preconditions;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.Scenario;
-import org.matsim.api.core.v01.TransportMode;
-import org.matsim.api.core.v01.network.NetworkWriter;
-import org.matsim.api.core.v01.population.*;
+import org.matsim.api.core.v01.population.Population;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.contrib.drt.run.MultiModeDrtConfigGroup;
 import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.algorithms.PersonAlgorithm;
 import org.matsim.core.router.DefaultAnalysisMainModeIdentifier;
 import org.matsim.core.router.MainModeIdentifier;
 import org.matsim.core.router.TripStructureUtils;
-import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.utils.ArtifactCacheOptions;
+import org.matsim.utils.DrtPlansWriter;
+import org.matsim.utils.OutputOptions;
+import org.matsim.utils.ScenarioArtifactCache;
 import org.matsim.utils.ScenariosTools;
+import org.matsim.utils.Tools;
+import org.matsim.utils.TripPool;
 import picocli.CommandLine;
 
+import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
-import static org.matsim.utils.Tools.downloadFile;
-
 public class ManualSampling implements MATSimAppCommand {
     private static final Logger log = LogManager.getLogger(ManualSampling.class);
 
@@ -49,6 +52,32 @@ public class ManualSampling implements MATSimAppCommand {
     @CommandLine.Option(names = "--plans-name", description = "name of the output plans", defaultValue = "manual-sampled.plans.xml.gz")
     private String plansName;
 
+    @CommandLine.Option(names = "--streaming", description = "read the input plans person by person instead of " +
+            "loading the whole population (for large populations). The result is the same", defaultValue = "false")
+    private boolean streaming;
+
+    @CommandLine.Option(names = "--trip-pool", description = "trip pool (index of the trips by mode and departure hour) " +
+            "of the input plans. It is built and saved at this path if it does not exist yet. With a trip pool, the trips " +
+            "are selected by a stable random key per trip: the samples are nested across the percentages, but differ " +
+            "from the samples without a trip pool")
+    private Path tripPoolPath;
+
+    @CommandLine.Option(names = "--start-time", description = "earliest departure time of the sampled trips (in second)", defaultValue = "0")
+    private double startTime;
+
+    @CommandLine.Option(names = "--end-time", description = "latest departure time of the sampled trips (in second), " +
+            "by default all trips", defaultValue = "Infinity")
+    private double endTime;
+
+    @CommandLine.Option(names = "--seed", description = "random seed of the sampling (and of the trip pool)", defaultValue = "4711")
+    private long seed;
+
+    @CommandLine.Mixin
+    private ArtifactCacheOptions cacheOptions = new ArtifactCacheOptions();
+
+    @CommandLine.Mixin
+    private OutputOptions outputOptions = new OutputOptions();
+
     public static void main(String[] args) {
         new ManualSampling().execute(args);
     }
@@ -86,56 +115,73 @@ public class ManualSampling implements MATSimAppCommand {
             default -> throw new RuntimeException("MANHATTAN_TAXI does not need to use the manual sampling");
         }
 
-        // Download config file
+        // Download config file (the files are fetched through the local cache and only downloaded once)
+        ScenarioArtifactCache cache = cacheOptions.getCache();
         log.info("Downloading config file");
-        downloadFile(configUrl, target.toString() + "/" + rawScenario.toString().toLowerCase() + ".config.xml");
-        Config config = ConfigUtils.loadConfig(configUrl, new MultiModeDrtConfigGroup());
-        Scenario scenario = ScenarioUtils.loadScenario(config);
+        Path configFile = cache.fetch(configUrl);
+        Files.copy(configFile, Path.of(target + "/" + rawScenario.toString().toLowerCase() + ".config.xml"), StandardCopyOption.REPLACE_EXISTING);
+        Config config = ConfigUtils.loadConfig(configFile.toString(), new MultiModeDrtConfigGroup());
 
-        // Download network file
+        // Download network file (copied as it is, without parsing)
         log.info("Downloading network file");
         String networkFileName = config.network().getInputFile();
-        new NetworkWriter(scenario.getNetwork()).write(target.toString() + "/" + networkFileName);
+        Path networkFile = cache.fetch(ConfigGroup.getInputFileURL(new URL(configUrl), networkFileName).toString());
+        Path targetNetworkFile = Path.of(target + "/" + networkFileName);
+        Files.createDirectories(targetNetworkFile.getParent());
+        Files.copy(networkFile, targetNetworkFile, StandardCopyOption.REPLACE_EXISTING);
 
         // Prepare plans file
         // Apply manual selection
-        Population inputPlans = PopulationUtils.readPopulation(plansUrl);
-        Population outputPlans = PopulationUtils.createPopulation(ConfigUtils.createConfig());
-        PopulationFactory populationFactory = outputPlans.getFactory();
-        Random random = new Random(4711);
+        DrtPlansWriter drtPlansWriter = new DrtPlansWriter(outputOptions.getWriter(target + "/" + plansName), "drt-person-");
+        Random random = new Random(seed);
         MainModeIdentifier mainModeIdentifier = new DefaultAnalysisMainModeIdentifier();
-        int counter = 0;
 
-        Map<String, Double> convertedModesMap = new HashMap<>();
+        Map<String, Double> convertedModesMap = new LinkedHashMap<>();
         for (int i = 0; i < modes.size(); i++) {
             convertedModesMap.put(modes.get(i), percent.get(i));
         }
 
-        for (Person person : inputPlans.getPersons().values()) {
+        if (tripPoolPath != null) {
+            // The pool must belong to the plans file (identified by its checksum) and the seed
+            String plansChecksum = cache.getChecksum(plansUrl);
+            if (!Files.exists(tripPoolPath)) {
+                log.info("Building trip pool " + tripPoolPath);
+                TripPool.build(cache.fetch(plansUrl).toString(), plansChecksum, seed, tripPoolPath);
+            }
+            log.info("Reading trip pool " + tripPoolPath);
+            try (TripPool tripPool = TripPool.open(tripPoolPath, plansChecksum, seed)) {
+                int sampledTrips = tripPool.sample(convertedModesMap, startTime, endTime,
+                        (departureTime, fromLinkId, toLinkId, mode) -> drtPlansWriter.write(departureTime, fromLinkId, toLinkId));
+                log.info(sampledTrips + " trips are sampled from the trip pool");
+            }
+            drtPlansWriter.close();
+            return 0;
+        }
+
+        String plansFile = cache.fetch(plansUrl).toString();
+        PersonAlgorithm manualSelection = person -> {
             List<TripStructureUtils.Trip> trips = TripStructureUtils.getTrips(person.getSelectedPlan());
             for (TripStructureUtils.Trip trip : trips) {
                 String mode = mainModeIdentifier.identifyMainMode(trip.getTripElements());
                 if (convertedModesMap.containsKey(mode)) {
                     if (random.nextDouble() < convertedModesMap.get(mode)) {
-                        Person newPerson = populationFactory.createPerson(Id.createPersonId("drt-person-" + counter));
-                        Plan plan = populationFactory.createPlan();
-                        Activity act0 = populationFactory.createActivityFromLinkId("dummy", trip.getOriginActivity().getLinkId());
-                        act0.setEndTime(trip.getOriginActivity().getEndTime().orElseThrow(RuntimeException::new));
-                        Leg leg = populationFactory.createLeg(TransportMode.drt);
-                        Activity act1 = populationFactory.createActivityFromLinkId("dummy", trip.getDestinationActivity().getLinkId());
-                        plan.addActivity(act0);
-                        plan.addLeg(leg);
-                        plan.addActivity(act1);
-                        newPerson.addPlan(plan);
-                        outputPlans.addPerson(newPerson);
-                        counter++;
+                        double departureTime = trip.getOriginActivity().getEndTime().orElseThrow(RuntimeException::new);
+                        if (departureTime >= startTime && departureTime <= endTime) {
+                            drtPlansWriter.write(departureTime, trip.getOriginActivity().getLinkId(), trip.getDestinationActivity().getLinkId());
+                        }
                     }
                 }
             }
+        };
+
+        if (streaming) {
+            Tools.readPersons(plansFile, manualSelection);
+        } else {
+            Population inputPlans = PopulationUtils.readPopulation(plansFile);
+            inputPlans.getPersons().values().forEach(manualSelection::run);
         }
 
-        // write output plans
-        PopulationUtils.writePopulation(outputPlans, target + "/" + plansName);
+        drtPlansWriter.close();
 
         return 0;
     }
@@ -3,24 +3,34 @@ package org.matsim.prepare;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.Scenario;
-import org.matsim.api.core.v01.network.NetworkWriter;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.contrib.drt.run.MultiModeDrtConfigGroup;
 import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.StreamingPopulationReader;
+import org.matsim.core.population.io.StreamingPopulationWriter;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.utils.ArtifactCacheOptions;
+import org.matsim.utils.OutputOptions;
+import org.matsim.utils.ScenarioArtifactCache;
 import org.matsim.utils.ScenariosTools;
+import org.matsim.utils.Tools;
 import picocli.CommandLine;
 
+import java.io.IOException;
+import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-
-import static org.matsim.utils.Tools.downloadFile;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class RandomSampling implements MATSimAppCommand {
     private static final Logger log = LogManager.getLogger(RandomSampling.class);
@@ -38,6 +48,18 @@ public class RandomSampling implements MATSimAppCommand {
     @CommandLine.Option(names = "--seed", description = "random seed for down sampling", defaultValue = "4711")
     private long seed;
 
+    @CommandLine.Option(names = "--single-pass", description = "stream the input plans once and write all samples in " +
+            "parallel. Persons are selected by a stable random rank, so the result differs from the default mode", defaultValue = "false")
+    private boolean singlePass;
+
+    @CommandLine.Mixin
+    private ArtifactCacheOptions cacheOptions = new ArtifactCacheOptions();
+
+    @CommandLine.Mixin
+    private OutputOptions outputOptions = new OutputOptions();
+
+    private static final int BATCH_SIZE = 10000;
+
     public static void main(String[] args) {
         new RandomSampling().execute(args);
     }
@@ -83,19 +105,22 @@ public class RandomSampling implements MATSimAppCommand {
                     Arrays.toString(ScenariosTools.RawScenarios.values()));
         }
 
-        // Download config file
+        // Download config file (the files are fetched through the local cache and only downloaded once)
+        ScenarioArtifactCache cache = cacheOptions.getCache();
         log.info("Downloading config file");
-        downloadFile(configUrl, target.toString() + "/" + rawScenario.toString().toLowerCase() + ".config.xml");
-        Config config = ConfigUtils.loadConfig(configUrl, new MultiModeDrtConfigGroup());
-        Scenario scenario = ScenarioUtils.loadScenario(config);
+        Path configFile = cache.fetch(configUrl);
+        Files.copy(configFile, Path.of(target + "/" + rawScenario.toString().toLowerCase() + ".config.xml"), StandardCopyOption.REPLACE_EXISTING);
+        Config config = ConfigUtils.loadConfig(configFile.toString(), new MultiModeDrtConfigGroup());
 
-        // Download network file
+        // Download network file (copied as it is, without parsing)
         log.info("Downloading network file");
         String networkFileName = config.network().getInputFile();
-        new NetworkWriter(scenario.getNetwork()).write(target.toString() + "/" + networkFileName);
+        Path networkFile = cache.fetch(ConfigGroup.getInputFileURL(new URL(configUrl), networkFileName).toString());
+        Path targetNetworkFile = Path.of(target + "/" + networkFileName);
+        Files.createDirectories(targetNetworkFile.getParent());
+        Files.copy(networkFile, targetNetworkFile, StandardCopyOption.REPLACE_EXISTING);
 
         // Prepare plans file
-        Population inputPlans = PopulationUtils.readPopulation(plansUrl);
         Path plansFolder = Path.of(target + "/plans/");
         if (!Files.exists(plansFolder)) {
             Files.createDirectories(plansFolder);
@@ -103,8 +128,15 @@ public class RandomSampling implements MATSimAppCommand {
 
         samples.sort(Comparator.comparingDouble(Double::doubleValue).reversed());
         String orig = String.format("%dpct", Math.round(baseSample * 100));
-
         String originalPlansName = config.plans().getInputFile();
+
+        String plansFile = cache.fetch(plansUrl).toString();
+        if (singlePass) {
+            writeSamplesInSinglePass(plansFile, baseSample, originalPlansName, orig);
+            return 0;
+        }
+
+        Population inputPlans = PopulationUtils.readPopulation(plansFile);
         for (Double sample : samples) {
             if (sample > baseSample) {
                 log.warn(sample + " is larger than the maximum available sample size for this scenario, which is "
@@ -115,28 +147,142 @@ public class RandomSampling implements MATSimAppCommand {
             // down-sample previous samples
             sampleDownPopulation(inputPlans, sample / baseSample, seed);
             baseSample = sample;
-            String newPlansName;
-            double outputPct = sample * 100;
-            if (outputPct % 1 == 0) {
-                newPlansName = originalPlansName.replace(orig, String.format("%dpct-seed-%d", Math.round(outputPct), seed));
-            } else {
-                newPlansName = originalPlansName.replace(orig, String.format("%spct-seed-%d", outputPct, seed));
-            }
-            PopulationUtils.writePopulation(inputPlans, target + "/plans/" + newPlansName);
+            outputOptions.writePopulation(inputPlans, target + "/plans/" + getSamplePlansName(originalPlansName, orig, sample));
         }
 
         return 0;
     }
 
-    private void sampleDownPopulation(Population population, double sample, long seed) {
+    private String getSamplePlansName(String originalPlansName, String orig, double sample) {
+        double outputPct = sample * 100;
+        if (outputPct % 1 == 0) {
+            return originalPlansName.replace(orig, String.format("%dpct-seed-%d", Math.round(outputPct), seed));
+        }
+        return originalPlansName.replace(orig, String.format("%spct-seed-%d", outputPct, seed));
+    }
+
+    static void sampleDownPopulation(Population population, double sample, long seed) {
         log.info("population size before down sampling=" + population.getPersons().size());
-        Random random = new Random(seed);
-        int toRemove = (int) ((1 - sample) * population.getPersons().size());
-        List<Id<Person>> personList = new ArrayList<>(population.getPersons().keySet());
-        Collections.shuffle(personList, random);
-        for (int i = 0; i < toRemove; i++) {
-            population.removePerson(personList.get(i));
+        for (Id<Person> personId : getItemsToRemove(new ArrayList<>(population.getPersons().keySet()), sample, seed)) {
+            population.removePerson(personId);
         }
         log.info("population size after down sampling=" + population.getPersons().size());
     }
+
+    /**
+     * @return the items (a random share of 1 - sample) to be removed for down sampling. The list is shuffled.
+     */
+    static <T> List<T> getItemsToRemove(List<T> items, double sample, long seed) {
+        Random random = new Random(seed);
+        int toRemove = (int) ((1 - sample) * items.size());
+        Collections.shuffle(items, random);
+        return items.subList(0, toRemove);
+    }
+
+    /**
+     * Each person gets a stable random rank in [0, 1) based on the seed and the person id. The input plans are
+     * streamed once, and each person is written to every sample whose share (relative to the base sample) is larger
+     * than its rank. The samples are therefore nested, and only a small batch of persons is held in memory. Each
+     * sample file is written by its own thread.
+     */
+    private void writeSamplesInSinglePass(String plansFile, double baseSample, String originalPlansName, String orig)
+            throws InterruptedException, ExecutionException, IOException {
+        List<Double> validSamples = new ArrayList<>();
+        for (Double sample : samples) {
+            if (sample > baseSample) {
+                log.warn(sample + " is larger than the maximum available sample size for this scenario, which is "
+                        + baseSample + ". Skip this sample...");
+                continue;
+            }
+            validSamples.add(sample);
+        }
+
+        List<SampleWriter> sampleWriters = new ArrayList<>();
+        for (Double sample : validSamples) {
+            sampleWriters.add(new SampleWriter(sample / baseSample, target + "/plans/" + getSamplePlansName(originalPlansName, orig, sample),
+                    outputOptions));
+        }
+
+        List<Person> batch = new ArrayList<>(BATCH_SIZE);
+        List<Future<?>> pendingWrites = new ArrayList<>();
+        StreamingPopulationReader reader = new StreamingPopulationReader(ScenarioUtils.createScenario(ConfigUtils.createConfig()));
+        reader.addAlgorithm(person -> {
+            batch.add(person);
+            if (batch.size() == BATCH_SIZE) {
+                submitBatch(new ArrayList<>(batch), sampleWriters, pendingWrites);
+                batch.clear();
+            }
+        });
+        reader.readFile(plansFile);
+        submitBatch(batch, sampleWriters, pendingWrites);
+
+        for (Future<?> pendingWrite : pendingWrites) {
+            pendingWrite.get();
+        }
+        for (SampleWriter sampleWriter : sampleWriters) {
+            sampleWriter.close();
+        }
+    }
+
+    private void submitBatch(List<Person> batch, List<SampleWriter> sampleWriters, List<Future<?>> pendingWrites) {
+        double[] ranks = new double[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            ranks[i] = Tools.stableRandom(seed, batch.get(i).getId().toString());
+        }
+
+        // Wait for the previous batch, so that at most two batches are held in memory
+        try {
+            for (Future<?> pendingWrite : pendingWrites) {
+                pendingWrite.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Writing the sampled plans failed", e);
+        }
+        pendingWrites.clear();
+        for (SampleWriter sampleWriter : sampleWriters) {
+            pendingWrites.add(sampleWriter.write(batch, ranks));
+        }
+    }
+
+    /**
+     * The streaming writer only writes to files. If the sample is compressed in parallel, it is written uncompressed
+     * to a temporary file first, which is compressed when the sample is closed.
+     */
+    private static class SampleWriter {
+        private final double share;
+        private final String path;
+        private final OutputOptions outputOptions;
+        private final Path uncompressed;
+        private final StreamingPopulationWriter writer = new StreamingPopulationWriter();
+        private final ExecutorService executor = Executors.newSingleThreadExecutor();
+        private int counter = 0;
+
+        SampleWriter(double share, String path, OutputOptions outputOptions) throws IOException {
+            this.share = share;
+            this.path = path;
+            this.outputOptions = outputOptions;
+            this.uncompressed = outputOptions.isParallel(path) ? outputOptions.createTemporaryFile(path) : null;
+            writer.startStreaming(uncompressed == null ? path : uncompressed.toString());
+        }
+
+        Future<?> write(List<Person> persons, double[] ranks) {
+            return executor.submit(() -> {
+                for (int i = 0; i < persons.size(); i++) {
+                    if (ranks[i] < share) {
+                        writer.run(persons.get(i));
+                        counter++;
+                    }
+                }
+            });
+        }
+
+        void close() throws InterruptedException, ExecutionException, IOException {
+            executor.submit(writer::closeStreaming).get();
+            executor.shutdown();
+            if (uncompressed != null) {
+                outputOptions.compress(uncompressed, path);
+            }
+            log.info(counter + " persons are written to " + path);
+        }
+    }
 }
@@ -0,0 +1,393 @@
+package org.matsim.run;
+
+import com.google.inject.Singleton;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.contrib.drt.run.*;
+import org.matsim.contrib.dvrp.optimizer.Request;
+import org.matsim.contrib.dvrp.passenger.*;
+import org.matsim.contrib.dvrp.run.AbstractDvrpModeModule;
+import org.matsim.contrib.dvrp.run.DvrpConfigGroup;
+import org.matsim.contrib.dvrp.run.DvrpModule;
+import org.matsim.contrib.dvrp.run.DvrpQSimComponents;
+import org.matsim.contrib.zone.skims.DvrpTravelTimeMatrixParams;
+import org.matsim.contrib.zone.skims.FreeSpeedTravelTimeMatrix;
+import org.matsim.contrib.zone.skims.TravelTimeMatrix;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.scenario.MutableScenario;
+import org.matsim.modules.CachedTravelTimeMatrixModule;
+import org.matsim.modules.DrtStopDurationConfigGroup;
+import org.matsim.modules.DrtStopDurationModule;
+import org.matsim.utils.CachedTravelTimeMatrix;
+import org.matsim.utils.DrtBinaryInputs;
+import org.matsim.utils.ScenariosTools;
+import org.matsim.utils.objectattributes.attributable.AttributesUtils;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Runs a use case with different fleet sizes (the fleet files next to the vehicles file of the config, e.g.
+ * drt-vehicles/10-8_seater-drt-vehicles.xml ... drt-vehicles/2000-8_seater-drt-vehicles.xml) one after the other in
+ * one JVM. The network, the input plans and the DVRP travel time matrix are only loaded/computed once and shared by
+ * all the runs (each run gets its own copy of the plans). With --matrix-cache, the travel time matrix is also kept in
+ * the matrix cache for later sweeps. The KPIs of the last iteration of each run are written to fleet-size-sweep.csv
+ * in the output folder.
+ * <p>
+ * With --max-rejection-rate, only the runs needed to find the smallest fleet size with a rejection rate not above the
+ * target are performed (bisection over the sorted fleet sizes, assuming that the rejection rate does not increase with
+ * the fleet size).
+ * <p>
+ * The runs are not concurrent, because MATSim keeps global state (MatsimRandom, the log files). Each run starts with
+ * the random seed of the config (the controler resets MatsimRandom), so its KPIs are reproducible and the same as
+ * those of a separate run with RunUseCase.
+ */
+@CommandLine.Command(
+        name = "fleet-size-sweep",
+        description = "run a use case with different fleet sizes"
+)
+public class RunFleetSizeSweep implements MATSimAppCommand {
+    private static final Logger log = LogManager.getLogger(RunFleetSizeSweep.class);
+    private static final Pattern FLEET_FILE = Pattern.compile("^(\\d+)(-.*\\.xml)$");
+
+    @CommandLine.Option(names = "--use-case", description = "Use case to run, choose from: " +
+            "BERLIN_DRT, LEIPZIG_DRT, VULKANEIFEL_SCHOOL_TRANSPORT, KELHEIM_KEXI, ORANIENBURG")
+    private ScenariosTools.UseCases useCase;
+
+    @CommandLine.Option(names = "--config", description = "path to config file (instead of the use case)", defaultValue = "")
+    private String configPath;
+
+    @CommandLine.Option(names = "--mode", description = "drt mode whose fleet is varied", defaultValue = "drt")
+    private String mode;
+
+    @CommandLine.Option(names = "--fleet-size-from", description = "smallest fleet size", defaultValue = "0")
+    private int fleetSizeFrom;
+
+    @CommandLine.Option(names = "--fleet-size-to", description = "largest fleet size", defaultValue = "2147483647")
+    private int fleetSizeTo;
+
+    @CommandLine.Option(names = "--max-rejection-rate", description = "if set, search the smallest fleet size with " +
+            "a rejection rate not above this value instead of running all the fleet sizes", defaultValue = "-1")
+    private double maxRejectionRate;
+
+    @CommandLine.Option(names = "--threads", description = "number of threads of each simulation (default: as in the config)", defaultValue = "0")
+    private int threads;
+
+    @CommandLine.Option(names = "--output", description = "output folder of the sweep", required = true)
+    private Path output;
+
+    @CommandLine.Option(names = "--matrix-cache", description = "directory of the cached travel time matrices (if not set, the DVRP matrix is computed once for all runs)")
+    private Path matrixCacheDirectory;
+
+    private final Map<String, TravelTimeMatrix> sharedTravelTimeMatrices = new HashMap<>();
+
+    public static void main(String[] args) {
+        new RunFleetSizeSweep().execute(args);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        if (configPath.equals("")) {
+            if (useCase == null) {
+                throw new IllegalArgumentException("Please specify either the use case or the config file");
+            }
+            configPath = ScenariosTools.getConfigPath(useCase);
+        }
+        Files.createDirectories(output);
+
+        SortedMap<Integer, Path> fleetFiles = findFleetFiles(loadConfig());
+        if (fleetFiles.isEmpty()) {
+            throw new IllegalArgumentException("No fleet file between " + fleetSizeFrom + " and " + fleetSizeTo + " vehicles is found");
+        }
+        log.info("Fleet sizes to be considered: " + fleetFiles.keySet());
+
+        // Load the network and the plans only once
+        Config baseConfig = loadConfig();
+        DrtBinaryInputs binaryInputs = DrtBinaryInputs.prepare(baseConfig);
+        Scenario baseScenario = DrtControlerCreator.createScenarioWithDrtRouteFactory(baseConfig);
+        binaryInputs.loadScenario(baseScenario);
+
+        SortedMap<Integer, SweepResult> results = new TreeMap<>();
+        List<Integer> fleetSizes = new ArrayList<>(fleetFiles.keySet());
+        if (maxRejectionRate < 0) {
+            for (int fleetSize : fleetSizes) {
+                results.put(fleetSize, runSimulation(fleetSize, fleetFiles.get(fleetSize), baseScenario));
+            }
+        } else {
+            searchMinimalFleetSize(fleetSizes, fleetFiles, baseScenario, results);
+        }
+
+        writeResults(results);
+        return 0;
+    }
+
+    private void searchMinimalFleetSize(List<Integer> fleetSizes, Map<Integer, Path> fleetFiles, Scenario baseScenario,
+                                        Map<Integer, SweepResult> results) {
+        int lower = 0;
+        int upper = fleetSizes.size() - 1;
+        int best = -1;
+        while (lower <= upper) {
+            int probe = (lower + upper) >>> 1;
+            int fleetSize = fleetSizes.get(probe);
+            SweepResult result = runSimulation(fleetSize, fleetFiles.get(fleetSize), baseScenario);
+            results.put(fleetSize, result);
+            if (result.rejectionRate() <= maxRejectionRate) {
+                best = probe;
+                upper = probe - 1;
+            } else {
+                lower = probe + 1;
+            }
+        }
+
+        if (best < 0) {
+            log.warn("Even the largest fleet size " + fleetSizes.get(fleetSizes.size() - 1) +
+                    " has a rejection rate above " + maxRejectionRate);
+        } else {
+            log.info("Smallest fleet size with a rejection rate not above " + maxRejectionRate + ": " + fleetSizes.get(best));
+        }
+    }
+
+    private SweepResult runSimulation(int fleetSize, Path fleetFile, Scenario baseScenario) {
+        log.info("Start run with " + fleetSize + " vehicles");
+        long startTime = System.currentTimeMillis();
+
+        Config config = loadConfig();
+        config.controler().setOutputDirectory(output.resolve(fleetSize + "-vehicles").toString());
+        config.controler().setOverwriteFileSetting(OutputDirectoryHierarchy.OverwriteFileSetting.deleteDirectoryIfExists);
+        if (threads > 0) {
+            config.global().setNumberOfThreads(threads);
+            config.qsim().setNumberOfThreads(threads);
+        }
+        MultiModeDrtConfigGroup multiModeDrtConfig = MultiModeDrtConfigGroup.get(config);
+        DrtConfigGroup drtCfg = multiModeDrtConfig.getModalElements().stream()
+                .filter(cfg -> cfg.mode.equals(mode))
+                .findFirst().orElseThrow();
+        drtCfg.vehiclesFile = fleetFile.toAbsolutePath().toString();
+        DrtConfigs.adjustMultiModeDrtConfig(multiModeDrtConfig, config.planCalcScore(), config.plansCalcRoute());
+        DrtBinaryInputs binaryInputs = DrtBinaryInputs.prepare(config);
+
+        // The network is shared (read-only), the plans are copied as they are modified during the simulation
+        Scenario scenario = DrtControlerCreator.createScenarioWithDrtRouteFactory(config);
+        ((MutableScenario) scenario).setNetwork(baseScenario.getNetwork());
+        copyPopulation(baseScenario.getPopulation(), scenario.getPopulation());
+
+        Controler controler = new Controler(scenario);
+        controler.addOverridingModule(new DvrpModule());
+        controler.addOverridingModule(new MultiModeDrtModule());
+        controler.configureQSimComponents(DvrpQSimComponents.activateAllModes(multiModeDrtConfig));
+        for (DrtConfigGroup modalCfg : multiModeDrtConfig.getModalElements()) {
+            controler.addOverridingModule(DrtStopDurationModule.create(config, modalCfg));
+            controler.addOverridingModule(new SharedTravelTimeMatrixModule(modalCfg.mode, config, sharedTravelTimeMatrices,
+                    matrixCacheDirectory, config.global().getNumberOfThreads()));
+        }
+        binaryInputs.install(controler);
+
+        KpiCollector kpiCollector = new KpiCollector(mode);
+        controler.addOverridingModule(new AbstractModule() {
+            @Override
+            public void install() {
+                addEventHandlerBinding().toInstance(kpiCollector);
+            }
+        });
+
+        controler.run();
+
+        SweepResult result = kpiCollector.getResult(fleetSize, (System.currentTimeMillis() - startTime) / 1000.0);
+        log.info("Finished run with " + fleetSize + " vehicles. Rejection rate: " + result.rejectionRate());
+        return result;
+    }
+
+    private Config loadConfig() {
+        return ConfigUtils.loadConfig(configPath, new MultiModeDrtConfigGroup(), new DvrpConfigGroup(),
+                new DrtStopDurationConfigGroup());
+    }
+
+    /**
+     * @return fleet files with the same name pattern as the vehicles file of the config, e.g.
+     * {@code <fleet size>-8_seater-drt-vehicles.xml}, by fleet size
+     */
+    private SortedMap<Integer, Path> findFleetFiles(Config config) throws IOException {
+        DrtConfigGroup drtCfg = MultiModeDrtConfigGroup.get(config).getModalElements().stream()
+                .filter(cfg -> cfg.mode.equals(mode))
+                .findFirst().orElseThrow(() -> new IllegalArgumentException("There is no drt mode " + mode + " in the config"));
+        Path vehiclesFile;
+        try {
+            vehiclesFile = Path.of(ConfigGroup.getInputFileURL(config.getContext(), drtCfg.vehiclesFile).toURI());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("The vehicles file " + drtCfg.vehiclesFile + " must be a local file", e);
+        }
+        Matcher configuredFile = FLEET_FILE.matcher(vehiclesFile.getFileName().toString());
+        if (!configuredFile.matches()) {
+            throw new IllegalArgumentException("The vehicles file " + vehiclesFile + " does not start with the fleet size");
+        }
+
+        SortedMap<Integer, Path> fleetFiles = new TreeMap<>();
+        try (Stream<Path> files = Files.list(vehiclesFile.getParent())) {
+            files.forEach(file -> {
+                Matcher matcher = FLEET_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches() && matcher.group(2).equals(configuredFile.group(2))) {
+                    int fleetSize = Integer.parseInt(matcher.group(1));
+                    if (fleetSize >= fleetSizeFrom && fleetSize <= fleetSizeTo) {
+                        fleetFiles.put(fleetSize, file);
+                    }
+                }
+            });
+        }
+        return fleetFiles;
+    }
+
+    /**
+     * Full copy of the persons (all plans, the selected plan and the attributes of the persons and plans) and of the
+     * attributes of the population.
+     */
+    private static void copyPopulation(Population source, Population target) {
+        for (Person person : source.getPersons().values()) {
+            Person copy = target.getFactory().createPerson(person.getId());
+            AttributesUtils.copyAttributesFromTo(person, copy);
+            for (Plan plan : person.getPlans()) {
+                Plan planCopy = target.getFactory().createPlan();
+                PopulationUtils.copyFromTo(plan, planCopy);
+                AttributesUtils.copyAttributesFromTo(plan, planCopy);
+                copy.addPlan(planCopy);
+                if (plan == person.getSelectedPlan()) {
+                    copy.setSelectedPlan(planCopy);
+                }
+            }
+            target.addPerson(copy);
+        }
+        AttributesUtils.copyAttributesFromTo(source, target);
+    }
+
+    private void writeResults(Map<Integer, SweepResult> results) throws IOException {
+        Path resultsFile = output.resolve("fleet-size-sweep.csv");
+        try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(resultsFile), CSVFormat.DEFAULT.withDelimiter(';'))) {
+            printer.printRecord("fleet_size", "requests", "rejections", "rejection_rate", "mean_wait_time", "p95_wait_time", "run_time_s");
+            for (SweepResult result : results.values()) {
+                printer.printRecord(result.fleetSize(), result.requests(), result.rejections(), result.rejectionRate(),
+                        result.meanWaitTime(), result.p95WaitTime(), result.runTime());
+            }
+        }
+        log.info("KPIs are written to " + resultsFile);
+    }
+
+    record SweepResult(int fleetSize, int requests, int rejections, double rejectionRate, double meanWaitTime,
+                       double p95WaitTime, double runTime) {
+    }
+
+    /**
+     * Computes the DVRP travel time matrix of a mode (or loads it from the matrix cache, if a cache directory is given)
+     * once and shares it with all the runs. Without a travelTimeMatrix parameter set, the DVRP default parameters are
+     * used.
+     */
+    private static class SharedTravelTimeMatrixModule extends AbstractDvrpModeModule {
+        private final Config config;
+        private final Map<String, TravelTimeMatrix> matrices;
+        private final Path cacheDirectory;
+        private final int threads;
+
+        SharedTravelTimeMatrixModule(String mode, Config config, Map<String, TravelTimeMatrix> matrices,
+                                     Path cacheDirectory, int threads) {
+            super(mode);
+            this.config = config;
+            this.matrices = matrices;
+            this.cacheDirectory = cacheDirectory;
+            this.threads = threads;
+        }
+
+        @Override
+        public void install() {
+            DvrpTravelTimeMatrixParams matrixParams = CachedTravelTimeMatrixModule.getMatrixParams(config);
+            bindModal(TravelTimeMatrix.class).toProvider(modalProvider(getter -> matrices.computeIfAbsent(getMode(), mode -> {
+                Network network = getter.getModal(Network.class);
+                if (cacheDirectory == null) {
+                    return FreeSpeedTravelTimeMatrix.createFreeSpeedMatrix(network, matrixParams, threads,
+                            config.qsim().getTimeStepSize());
+                }
+                try {
+                    return CachedTravelTimeMatrix.loadOrCreate(cacheDirectory, network, matrixParams,
+                            config.qsim().getTimeStepSize(), threads);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }))).in(Singleton.class);
+        }
+    }
+
+    /**
+     * Number of requests, rejections and wait times of the last iteration.
+     */
+    private static class KpiCollector implements PassengerRequestSubmittedEventHandler,
+            PassengerRequestRejectedEventHandler, PassengerPickedUpEventHandler {
+        private final String mode;
+        private final Map<Id<Request>, Double> submissionTimes = new HashMap<>();
+        private final List<Double> waitTimes = new ArrayList<>();
+        private int requests = 0;
+        private int rejections = 0;
+
+        KpiCollector(String mode) {
+            this.mode = mode;
+        }
+
+        @Override
+        public void handleEvent(PassengerRequestSubmittedEvent event) {
+            if (event.getMode().equals(mode)) {
+                submissionTimes.put(event.getRequestId(), event.getTime());
+                requests++;
+            }
+        }
+
+        @Override
+        public void handleEvent(PassengerRequestRejectedEvent event) {
+            if (event.getMode().equals(mode)) {
+                rejections++;
+            }
+        }
+
+        @Override
+        public void handleEvent(PassengerPickedUpEvent event) {
+            Double submissionTime = submissionTimes.remove(event.getRequestId());
+            if (event.getMode().equals(mode) && submissionTime != null) {
+                waitTimes.add(event.getTime() - submissionTime);
+            }
+        }
+
+        @Override
+        public void reset(int iteration) {
+            submissionTimes.clear();
+            waitTimes.clear();
+            requests = 0;
+            rejections = 0;
+        }
+
+        SweepResult getResult(int fleetSize, double runTime) {
+            double[] sortedWaitTimes = waitTimes.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+            double meanWaitTime = Arrays.stream(sortedWaitTimes).average().orElse(Double.NaN);
+            double p95WaitTime = sortedWaitTimes.length == 0 ? Double.NaN :
+                    sortedWaitTimes[Math.min((int) Math.ceil(0.95 * sortedWaitTimes.length) - 1, sortedWaitTimes.length - 1)];
+            double rejectionRate = requests == 0 ? 0 : (double) rejections / requests;
+            return new SweepResult(fleetSize, requests, rejections, rejectionRate, meanWaitTime, p95WaitTime, runTime);
+        }
+    }
+}
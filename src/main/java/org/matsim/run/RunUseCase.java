@@ -1,62 +1,95 @@
 package org.matsim.run;
 
-import org.matsim.contrib.drt.analysis.afterSimAnalysis.DrtVehicleStoppingTaskWriter;
+import org.matsim.api.core.v01.Scenario;
 import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.contrib.drt.run.DrtConfigs;
 import org.matsim.contrib.drt.run.DrtControlerCreator;
 import org.matsim.contrib.drt.run.MultiModeDrtConfigGroup;
+import org.matsim.contrib.drt.run.MultiModeDrtModule;
 import org.matsim.contrib.dvrp.run.DvrpConfigGroup;
+import org.matsim.contrib.dvrp.run.DvrpModule;
+import org.matsim.contrib.dvrp.run.DvrpQSimComponents;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.controler.Controler;
-import org.matsim.modules.LinearDrtStopDurationModule;
+import org.matsim.modules.CachedTravelTimeMatrixModule;
+import org.matsim.modules.DrtInstrumentationConfigGroup;
+import org.matsim.modules.DrtInstrumentationModule;
+import org.matsim.modules.DrtStopDurationConfigGroup;
+import org.matsim.modules.DrtStopDurationModule;
+import org.matsim.modules.DrtStoppingTaskCollectorModule;
+import org.matsim.utils.DrtBinaryInputs;
 import org.matsim.simwrapper.SimWrapperConfigGroup;
 import org.matsim.simwrapper.SimWrapperModule;
 import org.matsim.utils.ScenariosTools;
 
-import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Arrays;
 
 public class RunUseCase {
 
-    public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
+    public static void main(String[] args) {
+        if (args.length != 1 && args.length != 2) {
             throw new RuntimeException("Please specify the use case in the argument. Choose from: "
-                    + Arrays.toString(ScenariosTools.UseCases.values()));
+                    + Arrays.toString(ScenariosTools.UseCases.values())
+                    + ". Optionally, the directory of the cached travel time matrices can be given as second argument.");
         }
 
         ScenariosTools.UseCases useCase = ScenariosTools.UseCases.valueOf(args[0].toUpperCase());
+        Path matrixCacheDirectory = args.length == 2 ? Path.of(args[1]) : null;
 
-        String configPath;
-        switch (useCase) {
-            case BERLIN_DRT -> configPath = "scenarios/berlin-drt/berlin-drt.config.xml";
-            case LEIPZIG_DRT -> configPath = "scenarios/leipzig-drt/leipzig-drt.config.xml";
-            case VULKANEIFEL_SCHOOL_TRANSPORT ->
-                    configPath = "scenarios/vulkaneifel-school-transport/vulkaneifel-school-transport.config.xml";
-            case KELHEIM_KEXI -> configPath = "scenarios/kelheim-kexi/kelheim-kexi.config.xml";
-            case ORANIENBURG -> configPath = "scenarios/oranienburg/oranienburg-drt.config.xml";
-            default -> throw new RuntimeException("Not implemented. Please choose from " +
-                    "[BERLIN_DRT, LEIPZIG_DRT, VULKANEIFEL_SCHOOL_TRANSPORT, KELHEIM_KEXI, ORANIENBURG]");
-        }
+        Config config = loadConfig(useCase);
+        Controler controler = createControler(config, matrixCacheDirectory);
+        controler.run();
+    }
 
-        Config config = ConfigUtils.loadConfig(configPath, new MultiModeDrtConfigGroup(), new DvrpConfigGroup());
-        SimWrapperConfigGroup sw = ConfigUtils.addOrGetModule(config, SimWrapperConfigGroup.class);
+    static Config loadConfig(ScenariosTools.UseCases useCase) {
+        String configPath = ScenariosTools.getConfigPath(useCase);
+        Config config = ConfigUtils.loadConfig(configPath, new MultiModeDrtConfigGroup(), new DvrpConfigGroup(),
+                new DrtStopDurationConfigGroup(), new DrtInstrumentationConfigGroup());
+        ConfigUtils.addOrGetModule(config, SimWrapperConfigGroup.class);
+        return config;
+    }
+
+    static Controler createControler(Config config) {
+        return createControler(config, null);
+    }
 
-        Controler controler = DrtControlerCreator.createControler(config, false);
+    /**
+     * @param matrixCacheDirectory directory of the cached travel time matrices, or null to compute the DVRP matrix
+     */
+    static Controler createControler(Config config, Path matrixCacheDirectory) {
+        // Use the binary plans and fleet files instead of the xml files, if available (see ConvertToBinaryFormat)
+        // (as DrtControlerCreator.createControler, but the scenario is loaded with the binary inputs)
+        MultiModeDrtConfigGroup multiModeDrtConfigGroup = MultiModeDrtConfigGroup.get(config);
+        DrtConfigs.adjustMultiModeDrtConfig(multiModeDrtConfigGroup, config.planCalcScore(), config.plansCalcRoute());
+        DrtBinaryInputs binaryInputs = DrtBinaryInputs.prepare(config);
+        Scenario scenario = DrtControlerCreator.createScenarioWithDrtRouteFactory(config);
+        binaryInputs.loadScenario(scenario);
+        Controler controler = new Controler(scenario);
+        controler.addOverridingModule(new DvrpModule());
+        controler.addOverridingModule(new MultiModeDrtModule());
+        controler.configureQSimComponents(DvrpQSimComponents.activateAllModes(multiModeDrtConfigGroup));
+        binaryInputs.install(controler);
 
         controler.addOverridingModule(new SimWrapperModule());
+        // DRT stopping tasks of the last iteration, collected during the simulation
+        controler.addOverridingModule(new DrtStoppingTaskCollectorModule());
 
-        MultiModeDrtConfigGroup multiModeDrtConfigGroup = MultiModeDrtConfigGroup.get(config);
         for (DrtConfigGroup drtCfg : multiModeDrtConfigGroup.getModalElements()) {
-            // Add linear stop duration module
-            controler.addOverridingModule(new LinearDrtStopDurationModule(drtCfg));
+            // Add stop duration module (linear, unless configured otherwise in the drtStopDuration config group)
+            controler.addOverridingModule(DrtStopDurationModule.create(config, drtCfg));
+            if (matrixCacheDirectory != null) {
+                // Load the travel time matrix from the cache, if it has been computed before for the same network
+                controler.addOverridingModule(new CachedTravelTimeMatrixModule(drtCfg.mode, matrixCacheDirectory));
+            }
         }
 
-        controler.run();
-
-        // Plot DRT stopping tasks
-        new DrtVehicleStoppingTaskWriter(Path.of(config.controler().getOutputDirectory())).run();
-
+        // Optional histograms of the dispatch hot paths (drtInstrumentation config group)
+        if (ConfigUtils.addOrGetModule(config, DrtInstrumentationConfigGroup.class).enabled) {
+            controler.addOverridingModule(new DrtInstrumentationModule(multiModeDrtConfigGroup));
+        }
+        return controler;
     }
 
 }
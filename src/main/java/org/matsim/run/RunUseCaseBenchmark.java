@@ -0,0 +1,219 @@
+package org.matsim.run;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.contrib.drt.optimizer.insertion.DefaultUnplannedRequestInserter;
+import org.matsim.contrib.drt.optimizer.insertion.UnplannedRequestInserter;
+import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.contrib.drt.run.MultiModeDrtConfigGroup;
+import org.matsim.contrib.dvrp.run.AbstractDvrpModeQSimModule;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
+import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
+import org.matsim.core.mobsim.qsim.QSim;
+import org.matsim.modules.DrtInstrumentationConfigGroup;
+import org.matsim.modules.TimedRequestInserter;
+import org.matsim.utils.ScenariosTools;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the use cases (see RunUseCase) for a fixed number of iterations and records the run time of each iteration:
+ * wall time of the iteration and of the QSim, wall time per simulated second, time spent inserting the DRT requests
+ * (vehicle entries, insertion search and scheduling) per request, and the peak heap usage of the use case. The
+ * results of all the use cases are written to benchmark.csv in the output folder, one row per use case and
+ * iteration, so that the files of different commits (--label) can be compared or concatenated.
+ */
+@CommandLine.Command(
+        name = "benchmark-use-cases",
+        description = "measure the run time of the use cases"
+)
+public class RunUseCaseBenchmark implements MATSimAppCommand {
+    private static final Logger log = LogManager.getLogger(RunUseCaseBenchmark.class);
+
+    @CommandLine.Option(names = "--use-cases", description = "Use cases to run, choose from: " +
+            "BERLIN_DRT, LEIPZIG_DRT, VULKANEIFEL_SCHOOL_TRANSPORT, KELHEIM_KEXI, ORANIENBURG",
+            defaultValue = "KELHEIM_KEXI,ORANIENBURG", split = ",")
+    private List<ScenariosTools.UseCases> useCases;
+
+    @CommandLine.Option(names = "--iterations", description = "number of iterations of each run", defaultValue = "3")
+    private int iterations;
+
+    @CommandLine.Option(names = "--output", description = "output folder of the benchmark", required = true)
+    private Path output;
+
+    @CommandLine.Option(names = "--label", description = "label of this benchmark (e.g. the commit), written to each row", defaultValue = "")
+    private String label;
+
+    public static void main(String[] args) {
+        new RunUseCaseBenchmark().execute(args);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        Files.createDirectories(output);
+        List<IterationTimes> results = new ArrayList<>();
+        for (ScenariosTools.UseCases useCase : useCases) {
+            results.addAll(runUseCase(useCase));
+            writeResults(results);
+        }
+        return 0;
+    }
+
+    private List<IterationTimes> runUseCase(ScenariosTools.UseCases useCase) {
+        log.info("Start benchmark of " + useCase);
+        Config config = RunUseCase.loadConfig(useCase);
+        config.controler().setOutputDirectory(output.resolve(useCase.toString().toLowerCase()).toString());
+        config.controler().setOverwriteFileSetting(OutputDirectoryHierarchy.OverwriteFileSetting.deleteDirectoryIfExists);
+        config.controler().setLastIteration(config.controler().getFirstIteration() + iterations - 1);
+        // The instrumentation decorates the same request inserter (and adds its own overhead)
+        ConfigUtils.addOrGetModule(config, DrtInstrumentationConfigGroup.class).enabled = false;
+
+        resetPeakHeapUsage();
+        Controler controler = RunUseCase.createControler(config);
+        RunTimeRecorder recorder = new RunTimeRecorder(useCase);
+        controler.addOverridingModule(new AbstractModule() {
+            @Override
+            public void install() {
+                addControlerListenerBinding().toInstance(recorder);
+                addMobsimListenerBinding().toInstance(recorder);
+            }
+        });
+        for (DrtConfigGroup drtCfg : MultiModeDrtConfigGroup.get(config).getModalElements()) {
+            controler.addOverridingQSimModule(new AbstractDvrpModeQSimModule(drtCfg.mode) {
+                @Override
+                protected void configureQSim() {
+                    bindModal(UnplannedRequestInserter.class).toProvider(modalProvider(
+                            getter -> new TimedRequestInserter(getter.getModal(DefaultUnplannedRequestInserter.class), recorder)));
+                }
+            });
+        }
+        controler.run();
+
+        long peakHeapUsage = getPeakHeapUsage();
+        recorder.iterations.forEach(times -> times.peakHeapUsage = peakHeapUsage);
+        return recorder.iterations;
+    }
+
+    private void writeResults(List<IterationTimes> results) throws IOException {
+        try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(output.resolve("benchmark.csv")), CSVFormat.DEFAULT.withDelimiter(';'))) {
+            printer.printRecord("label", "use_case", "iteration", "iteration_time_s", "mobsim_time_s", "simulated_time_s",
+                    "mobsim_time_per_simulated_s_ms", "requests", "insertion_time_per_request_ms", "peak_heap_mb");
+            for (IterationTimes times : results) {
+                printer.printRecord(label, times.useCase, times.iteration, times.iterationTime / 1e9, times.mobsimTime / 1e9,
+                        times.simulatedTime, times.simulatedTime > 0 ? times.mobsimTime / 1e6 / times.simulatedTime : 0,
+                        times.requests, times.requests > 0 ? times.insertionTime / 1e6 / times.requests : 0,
+                        times.peakHeapUsage / 1024 / 1024);
+            }
+        }
+    }
+
+    private static void resetPeakHeapUsage() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * @return sum of the peak usages of the heap memory pools (an upper bound, as the pools may peak at different times)
+     */
+    private static long getPeakHeapUsage() {
+        long peakHeapUsage = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeapUsage += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peakHeapUsage;
+    }
+
+    private static class IterationTimes {
+        private final ScenariosTools.UseCases useCase;
+        private final int iteration;
+        private long iterationTime;
+        private long mobsimTime;
+        private double simulatedTime;
+        private long requests;
+        private long insertionTime;
+        private long peakHeapUsage;
+
+        IterationTimes(ScenariosTools.UseCases useCase, int iteration) {
+            this.useCase = useCase;
+            this.iteration = iteration;
+        }
+    }
+
+    /**
+     * Controler and mobsim listener. All the measured code runs on the main thread (the QSim and the request
+     * inserter), so no synchronization is needed.
+     */
+    private static class RunTimeRecorder implements IterationStartsListener, IterationEndsListener,
+            MobsimInitializedListener, MobsimBeforeCleanupListener, TimedRequestInserter.Recorder {
+        private final ScenariosTools.UseCases useCase;
+        private final List<IterationTimes> iterations = new ArrayList<>();
+        private IterationTimes current;
+        private long iterationStart;
+        private long mobsimStart;
+        private double simulationStartTime;
+
+        RunTimeRecorder(ScenariosTools.UseCases useCase) {
+            this.useCase = useCase;
+        }
+
+        @Override
+        public void notifyIterationStarts(IterationStartsEvent event) {
+            current = new IterationTimes(useCase, event.getIteration());
+            iterationStart = System.nanoTime();
+        }
+
+        @Override
+        public void notifyMobsimInitialized(MobsimInitializedEvent event) {
+            simulationStartTime = ((QSim) event.getQueueSimulation()).getSimTimer().getTimeOfDay();
+            mobsimStart = System.nanoTime();
+        }
+
+        @Override
+        public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent event) {
+            current.mobsimTime = System.nanoTime() - mobsimStart;
+            current.simulatedTime = ((QSim) event.getQueueSimulation()).getSimTimer().getTimeOfDay() - simulationStartTime;
+        }
+
+        @Override
+        public void notifyIterationEnds(IterationEndsEvent event) {
+            current.iterationTime = System.nanoTime() - iterationStart;
+            iterations.add(current);
+            log.info(useCase + ", iteration " + current.iteration + ": " + current.iterationTime / 1e9 + " s, " +
+                    current.requests + " requests inserted in " + current.insertionTime / 1e9 + " s");
+        }
+
+        @Override
+        public void recordInsertion(int requests, long time) {
+            current.requests += requests;
+            current.insertionTime += time;
+        }
+    }
+}
@@ -17,16 +17,26 @@ import org.matsim.contrib.dvrp.run.DvrpQSimComponents;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.controler.Controler;
-import org.matsim.modules.LinearDrtStopDurationModule;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.modules.CachedTravelTimeMatrixModule;
+import org.matsim.modules.DrtStopDurationConfigGroup;
+import org.matsim.modules.DrtStopDurationModule;
+import org.matsim.utils.DrtBinaryInputs;
 import org.matsim.utils.ScenariosTools;
 import picocli.CommandLine;
 
 import javax.annotation.Nullable;
+import java.nio.file.Path;
 
 @CommandLine.Command(header = ":: Run insertion strategy ::", version = runDrtScenario.VERSION)
 public class runDrtScenario extends MATSimApplication {
     static final String VERSION = "1.0";
 
+    @CommandLine.Option(names = "--matrix-cache", description = "directory of the cached travel time matrices (if not set, the matrix is computed by DVRP)")
+    private Path matrixCacheDirectory;
+
+    private DrtBinaryInputs binaryInputs;
+
     public static void main(String[] args) {
         MATSimApplication.run(runDrtScenario.class, args);
     }
@@ -36,10 +46,20 @@ public class runDrtScenario extends MATSimApplication {
     protected Config prepareConfig(Config config) {
         MultiModeDrtConfigGroup multiModeDrtConfig = ConfigUtils.addOrGetModule(config, MultiModeDrtConfigGroup.class);
         ConfigUtils.addOrGetModule(config, DvrpConfigGroup.class);
+        ConfigUtils.addOrGetModule(config, DrtStopDurationConfigGroup.class);
         DrtConfigs.adjustMultiModeDrtConfig(multiModeDrtConfig, config.planCalcScore(), config.plansCalcRoute());
+        // Use the binary plans and fleet files instead of the xml files, if available (see ConvertToBinaryFormat)
+        binaryInputs = DrtBinaryInputs.prepare(config);
         return config;
     }
 
+    @Override
+    protected Scenario createScenario(Config config) {
+        Scenario scenario = ScenarioUtils.createScenario(config);
+        binaryInputs.loadScenario(scenario);
+        return scenario;
+    }
+
     @Override
     protected void prepareScenario(Scenario scenario) {
         scenario.getPopulation()
@@ -55,11 +75,15 @@ public class runDrtScenario extends MATSimApplication {
         controler.addOverridingModule(new DvrpModule());
         controler.addOverridingModule(new MultiModeDrtModule());
         controler.configureQSimComponents(DvrpQSimComponents.activateAllModes(multiModeDrtConfig));
+        binaryInputs.install(controler);
 
         MultiModeDrtConfigGroup multiModeDrtConfigGroup = MultiModeDrtConfigGroup.get(config);
         for (DrtConfigGroup drtCfg : multiModeDrtConfigGroup.getModalElements()) {
-            // Add linear stop duration module
-            controler.addOverridingModule(new LinearDrtStopDurationModule(drtCfg));
+            // Add stop duration module (linear, unless configured otherwise in the drtStopDuration config group)
+            controler.addOverridingModule(DrtStopDurationModule.create(config, drtCfg));
+            if (matrixCacheDirectory != null) {
+                controler.addOverridingModule(new CachedTravelTimeMatrixModule(drtCfg.mode, matrixCacheDirectory));
+            }
         }
     }
 
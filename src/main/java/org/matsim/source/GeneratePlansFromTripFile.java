@@ -3,20 +3,19 @@ package org.matsim.source;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.locationtech.jts.geom.Geometry;
 import org.matsim.api.core.v01.Coord;
-import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
-import org.matsim.api.core.v01.population.*;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.application.options.ShpOptions;
-import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.NetworkUtils;
-import org.matsim.core.population.PopulationUtils;
-import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.utils.DrtPlansWriter;
+import org.matsim.utils.DrtRequestTable;
+import org.matsim.utils.OutputOptions;
+import org.matsim.utils.ServiceArea;
+import org.matsim.utils.SnappingCache;
+import org.matsim.utils.SnappingCacheOptions;
 import picocli.CommandLine;
 
 import java.nio.file.Files;
@@ -37,6 +36,12 @@ public class GeneratePlansFromTripFile implements MATSimAppCommand {
     @CommandLine.Mixin
     private ShpOptions shp = new ShpOptions();
 
+    @CommandLine.Mixin
+    private OutputOptions outputOptions = new OutputOptions();
+
+    @CommandLine.Mixin
+    private SnappingCacheOptions snappingCacheOptions = new SnappingCacheOptions();
+
     public static void main(String[] args) {
         new GeneratePlansFromTripFile().execute(args);
     }
@@ -44,8 +49,6 @@ public class GeneratePlansFromTripFile implements MATSimAppCommand {
     @Override
     public Integer call() throws Exception {
         Network network = NetworkUtils.readNetwork(networkPath);
-        Population outputPopulation = PopulationUtils.createPopulation(ConfigUtils.createConfig());
-        PopulationFactory populationFactory = outputPopulation.getFactory();
 
         // We don't want the request to start on very long links
         List<Link> linksToRemove = new ArrayList<>();
@@ -64,41 +67,30 @@ public class GeneratePlansFromTripFile implements MATSimAppCommand {
         }
         nodesToRemove.forEach(node -> network.removeNode(node.getId()));
 
-        int counter = 0;
+        ServiceArea serviceArea = ServiceArea.fromShp(shp);
+        SnappingCache snappingCache = snappingCacheOptions.getCache(network, networkPath, "max-length-1000");
+        DrtRequestTable drtRequests = new DrtRequestTable();
         try (CSVParser parser = new CSVParser(Files.newBufferedReader(inputPlansPath),
                 CSVFormat.DEFAULT.withDelimiter(';').withFirstRecordAsHeader())) {
-            for (CSVRecord record : parser.getRecords()) {
+            for (CSVRecord record : parser) {
                 double departureTime = Double.parseDouble(record.get(0));
                 Coord fromCoord = new Coord(Double.parseDouble(record.get(4)), Double.parseDouble(record.get(5)));
                 Coord toCoord = new Coord(Double.parseDouble(record.get(7)), Double.parseDouble(record.get(8)));
 
-                if (shp.isDefined()) {
-                    Geometry serviceArea = shp.getGeometry();
-                    if (!MGC.coord2Point(fromCoord).within(serviceArea) || !MGC.coord2Point(toCoord).within(serviceArea)) {
+                if (serviceArea != null) {
+                    if (!serviceArea.contains(fromCoord) || !serviceArea.contains(toCoord)) {
                         continue;
                     }
                 }
 
-                Link fromLink = NetworkUtils.getNearestLink(network, fromCoord);
-                Link toLink = NetworkUtils.getNearestLink(network, toCoord);
-                Activity fromAct = populationFactory.createActivityFromLinkId("dummy", fromLink.getId());
-                fromAct.setEndTime(departureTime);
-                Leg leg = populationFactory.createLeg(TransportMode.drt);
-                Activity toAct = populationFactory.createActivityFromLinkId("dummy", toLink.getId());
-                Plan plan = populationFactory.createPlan();
-                plan.addActivity(fromAct);
-                plan.addLeg(leg);
-                plan.addActivity(toAct);
-                Person person = populationFactory.createPerson(Id.createPersonId("drt_person_" + counter));
-                person.addPlan(plan);
-                outputPopulation.addPerson(person);
-
-                counter++;
+                Link fromLink = snappingCache.getNearestLink(fromCoord);
+                Link toLink = snappingCache.getNearestLink(toCoord);
+                drtRequests.add(departureTime, fromLink.getId(), toLink.getId());
             }
         }
+        snappingCache.save();
 
-        PopulationWriter populationWriter = new PopulationWriter(outputPopulation);
-        populationWriter.write(outputPath.toString());
+        DrtPlansWriter.write(drtRequests, "drt_person_", outputOptions.getWriter(outputPath.toString()));
 
         return 0;
     }
@@ -1,23 +1,25 @@
 package org.matsim.source;
 
-import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.Point;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
-import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.application.options.ShpOptions;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.algorithms.NetworkCleaner;
-import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.utils.OutputOptions;
+import org.matsim.utils.ServiceArea;
+import org.matsim.utils.Tools;
 import picocli.CommandLine;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import static org.matsim.utils.Tools.removeLinksFromNetwork;
+import java.util.Set;
 
 public class NetworkCutter implements MATSimAppCommand {
+    private static final Logger log = LogManager.getLogger(NetworkCutter.class);
+
     @CommandLine.Option(names = "--network", description = "path to input network file", required = true)
     private String networkPath;
 
@@ -27,6 +29,9 @@ public class NetworkCutter implements MATSimAppCommand {
     @CommandLine.Mixin
     private ShpOptions shp = new ShpOptions();
 
+    @CommandLine.Mixin
+    private OutputOptions outputOptions = new OutputOptions();
+
     public static void main(String[] args) {
         new NetworkCutter().execute(args);
     }
@@ -34,37 +39,29 @@ public class NetworkCutter implements MATSimAppCommand {
     @Override
     public Integer call() throws Exception {
         Network network = NetworkUtils.readNetwork(networkPath);
-        Geometry areaToKeep = shp.getGeometry();
-
-        // Remove irrelevant links
-        List<Link> linksToRemove = new ArrayList<>();
-        System.out.println("Total links" + network.getLinks().size());
-        int counter = 0;
-        for (Link link : network.getLinks().values()) {
-            counter++;
-            if (counter % 1000 == 0) {
-                System.out.println("Processing: " + counter + " processed.");
-            }
-
-            if (!link.getAllowedModes().contains(TransportMode.car)) {
-                continue;
-            }
-
-            Point from = MGC.coord2Point(link.getFromNode().getCoord());
-            Point to = MGC.coord2Point(link.getToNode().getCoord());
-            if (!from.within(areaToKeep) || !to.within(areaToKeep)) {
-                linksToRemove.add(link);
-            }
-        }
-
-        // Remove links outside the study area and clean network
-        removeLinksFromNetwork(network, linksToRemove);
-        new NetworkCleaner().run(network);
+        Network cutNetwork = cutNetwork(network, new ServiceArea(shp.getGeometry()));
 
         // Write new network
-        NetworkUtils.writeNetwork(network, outputNetwork);
+        outputOptions.writeNetwork(cutNetwork, outputNetwork);
         return 0;
     }
 
+    /**
+     * @return a new network with the car links inside the area (and all the other links), reduced to the largest
+     * strongly connected part. The input network is not changed.
+     */
+    public static Network cutNetwork(Network network, ServiceArea areaToKeep) {
+        log.info("Total links: " + network.getLinks().size());
 
+        // Each node is tested once (in parallel). Car links are kept if both nodes are inside the study area,
+        // all the other links are kept.
+        Set<Id<Node>> nodesToKeep = areaToKeep.getContainedNodes(network.getNodes().values());
+        Network cutNetwork = Tools.filterNetwork(network, link -> !link.getAllowedModes().contains(TransportMode.car) ||
+                nodesToKeep.contains(link.getFromNode().getId()) && nodesToKeep.contains(link.getToNode().getId()));
+        log.info("Links after cutting: " + cutNetwork.getLinks().size());
+
+        // Keep the largest strongly connected part
+        new NetworkCleaner().run(cutNetwork);
+        return cutNetwork;
+    }
 }
@@ -3,8 +3,6 @@ package org.matsim.source;
 import com.google.common.base.Preconditions;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.Point;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
@@ -13,20 +11,31 @@ import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.*;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.application.options.ShpOptions;
-import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.utils.geometry.CoordUtils;
-import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.utils.DrtPlansWriter;
+import org.matsim.utils.OutputOptions;
+import org.matsim.utils.ServiceArea;
+import org.matsim.utils.SnappingCache;
+import org.matsim.utils.SnappingCacheOptions;
 import org.matsim.utils.Tools;
 import picocli.CommandLine;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 public class PrepareAllPossibleDrtTrips implements MATSimAppCommand {
+    /**
+     * Name of the network filter of {@link #processNetwork}, for the {@link SnappingCache}
+     */
+    public static final String NETWORK_FILTER = "drt-trip-links";
+
     @CommandLine.Option(names = "--input", description = "path to input plans", required = true)
     private String inputPopulation;
 
@@ -51,9 +60,18 @@ public class PrepareAllPossibleDrtTrips implements MATSimAppCommand {
     @CommandLine.Option(names = "--min-euclidean-distance", description = "filter out short trips", defaultValue = "500")
     private double minTripEuclideanDistance;
 
+    @CommandLine.Option(names = "--threads", description = "number of threads for extracting the trips", defaultValue = "4")
+    private int threads;
+
     @CommandLine.Mixin
     private ShpOptions shp = new ShpOptions();
 
+    @CommandLine.Mixin
+    private OutputOptions outputOptions = new OutputOptions();
+
+    @CommandLine.Mixin
+    private SnappingCacheOptions snappingCacheOptions = new SnappingCacheOptions();
+
     private final Logger log = LogManager.getLogger(PrepareAllPossibleDrtTrips.class);
 
     public static void main(String[] args) {
@@ -65,18 +83,16 @@ public class PrepareAllPossibleDrtTrips implements MATSimAppCommand {
         Preconditions.checkArgument(percentage <= 1.0, "The percentage should not be greater than 1!");
 
         Population inputPlans = PopulationUtils.readPopulation(inputPopulation);
-        Population outputPlans = PopulationUtils.createPopulation(ConfigUtils.createConfig());
-        PopulationFactory populationFactory = inputPlans.getFactory();
         Network network = NetworkUtils.readNetwork(networkPath);
 
-        Geometry serviceArea = shp.isDefined() ? shp.getGeometry() : null;
+        ServiceArea serviceArea = ServiceArea.fromShp(shp);
 
         if (serviceArea == null) {
             log.error("Service area is null!!!");
         }
 
         List<TripStructureUtils.Trip> allTrips = collectAllRelevantTripsFromInputPlans(inputPlans, network, serviceArea,
-                startTime, endTime, minTripEuclideanDistance, log);
+                startTime, endTime, minTripEuclideanDistance, threads, log);
 
         // Process network
         processNetwork(network);
@@ -85,37 +101,27 @@ public class PrepareAllPossibleDrtTrips implements MATSimAppCommand {
         int numberOfTripsToKeep = (int) Math.min(numberOfTrips, percentage * allTrips.size());
         Collections.shuffle(allTrips, new Random(4711));
 
+        Path folder = Path.of(outputPopulation).getParent();
+        if (!Files.exists(folder)) {
+            Files.createDirectories(folder);
+        }
+        SnappingCache snappingCache = snappingCacheOptions.getCache(network, networkPath, NETWORK_FILTER);
+        DrtPlansWriter drtPlansWriter = new DrtPlansWriter(outputOptions.getWriter(outputPopulation), "drt_person_");
         for (int i = 0; i < numberOfTripsToKeep; i++) {
             TripStructureUtils.Trip trip = allTrips.get(i);
             Coord fromCoord = trip.getOriginActivity().getCoord();
             Coord toCoord = trip.getDestinationActivity().getCoord();
-            Link fromLink = NetworkUtils.getNearestLink(network, fromCoord);
-            Link toLink = NetworkUtils.getNearestLink(network, toCoord);
-
-            Activity fromAct = populationFactory.createActivityFromLinkId("dummy", fromLink.getId());
-            fromAct.setEndTime(trip.getOriginActivity().getEndTime().orElseThrow(RuntimeException::new));
-            Leg leg = populationFactory.createLeg(TransportMode.drt);
-            Activity toAct = populationFactory.createActivityFromLinkId("dummy", toLink.getId());
-
-            Person person = populationFactory.createPerson(Id.createPersonId("drt_person_" + i));
-            Plan plan = populationFactory.createPlan();
-            plan.addActivity(fromAct);
-            plan.addLeg(leg);
-            plan.addActivity(toAct);
-            person.addPlan(plan);
-            outputPlans.addPerson(person);
-        }
-
-        Path folder = Path.of(outputPopulation).getParent();
-        if (!Files.exists(folder)) {
-            Files.createDirectories(folder);
+            Link fromLink = snappingCache.getNearestLink(fromCoord);
+            Link toLink = snappingCache.getNearestLink(toCoord);
+            drtPlansWriter.write(trip.getOriginActivity().getEndTime().orElseThrow(RuntimeException::new),
+                    fromLink.getId(), toLink.getId());
         }
-        PopulationWriter populationWriter = new PopulationWriter(outputPlans);
-        populationWriter.write(outputPopulation);
+        drtPlansWriter.close();
+        snappingCache.save();
         return 0;
     }
 
-    static void processNetwork(Network network) {
+    public static void processNetwork(Network network) {
         List<Link> linksToRemove = new ArrayList<>();
         for (Link link : network.getLinks().values()) {
             // Remove links that does not allow car
@@ -144,58 +150,78 @@ public class PrepareAllPossibleDrtTrips implements MATSimAppCommand {
         Tools.removeLinksFromNetwork(network, linksToRemove);
     }
 
-    static List<TripStructureUtils.Trip> collectAllRelevantTripsFromInputPlans
-            (Population inputPlans, Network network, Geometry serviceArea, double startTime, double endTime,
-             double minTripEuclideanDistance, Logger log) {
-        int totalPersons = inputPlans.getPersons().size();
+    /**
+     * Collects the trips of the selected plans that are within the service area, the service hours and are not too
+     * short. The persons are processed in parallel, but the trips are returned in the same order as a sequential
+     * pass over the population would return them (i.e. a subsequent seeded shuffle is not affected).
+     */
+    public static List<TripStructureUtils.Trip> collectAllRelevantTripsFromInputPlans
+            (Population inputPlans, Network network, ServiceArea serviceArea, double startTime, double endTime,
+             double minTripEuclideanDistance, int threads, Logger log) {
+        List<Person> persons = new ArrayList<>(inputPlans.getPersons().values());
+        int totalPersons = persons.size();
         log.info("There are total " + totalPersons + " persons to be processed");
-        int counter = 0;
-        int percent = 0;
-        int percent10 = (int) (0.1 * totalPersons);
-
-        List<TripStructureUtils.Trip> allTrips = new ArrayList<>();
-        for (Person person : inputPlans.getPersons().values()) {
-            List<TripStructureUtils.Trip> trips = TripStructureUtils.getTrips(person.getSelectedPlan());
-            for (TripStructureUtils.Trip trip : trips) {
-                double departureTime = trip.getOriginActivity().getEndTime().orElse(-1);
-                if (departureTime < startTime || departureTime > endTime) {
-                    continue;
-                }
+        AtomicInteger counter = new AtomicInteger();
+        int percent10 = Math.max((int) (0.1 * totalPersons), 1);
+
+        ForkJoinPool forkJoinPool = new ForkJoinPool(threads);
+        try {
+            // A parallel stream started within the pool runs on the threads of that pool. Collecting keeps the encounter order.
+            return forkJoinPool.submit(() -> persons.parallelStream()
+                    .flatMap(person -> {
+                        List<TripStructureUtils.Trip> relevantTrips = collectRelevantTrips(person, network.getLinks(), serviceArea,
+                                startTime, endTime, minTripEuclideanDistance);
+                        int processed = counter.incrementAndGet();
+                        if (processed % percent10 == 0) {
+                            log.info("Processing: " + processed / percent10 * 10 + "% processed");
+                        }
+                        return relevantTrips.stream();
+                    })
+                    .collect(Collectors.toList())).join();
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
 
-                if (trip.getOriginActivity().getCoord() == null) {
-                    Coord fromCoord = network.getLinks().get(trip.getOriginActivity().getLinkId()).getToNode().getCoord();
-                    trip.getOriginActivity().setCoord(fromCoord);
-                }
+    /**
+     * @param links links of the network the activities refer to, for the activities without coordinates
+     */
+    static List<TripStructureUtils.Trip> collectRelevantTrips(Person person, Map<Id<Link>, ? extends Link> links,
+                                                              ServiceArea serviceArea, double startTime, double endTime,
+                                                              double minTripEuclideanDistance) {
+        List<TripStructureUtils.Trip> relevantTrips = new ArrayList<>();
+        for (TripStructureUtils.Trip trip : TripStructureUtils.getTrips(person.getSelectedPlan())) {
+            double departureTime = trip.getOriginActivity().getEndTime().orElse(-1);
+            if (departureTime < startTime || departureTime > endTime) {
+                continue;
+            }
 
-                if (trip.getDestinationActivity().getCoord() == null) {
-                    Coord toCoord = network.getLinks().get(trip.getDestinationActivity().getLinkId()).getToNode().getCoord();
-                    trip.getDestinationActivity().setCoord(toCoord);
-                }
+            if (trip.getOriginActivity().getCoord() == null) {
+                Coord fromCoord = links.get(trip.getOriginActivity().getLinkId()).getToNode().getCoord();
+                trip.getOriginActivity().setCoord(fromCoord);
+            }
 
-                if (serviceArea != null) {
-                    Point fromPoint = MGC.coord2Point(trip.getOriginActivity().getCoord());
-                    Point toPoint = MGC.coord2Point(trip.getDestinationActivity().getCoord());
-                    if (!fromPoint.within(serviceArea) || !toPoint.within(serviceArea)) {
-                        continue;
-                    }
-                }
+            if (trip.getDestinationActivity().getCoord() == null) {
+                Coord toCoord = links.get(trip.getDestinationActivity().getLinkId()).getToNode().getCoord();
+                trip.getDestinationActivity().setCoord(toCoord);
+            }
 
-                double euclideanDistance =
-                        CoordUtils.calcEuclideanDistance(trip.getOriginActivity().getCoord(), trip.getDestinationActivity().getCoord());
-                if (euclideanDistance <= minTripEuclideanDistance) {
+            if (serviceArea != null) {
+                if (!serviceArea.contains(trip.getOriginActivity().getCoord()) ||
+                        !serviceArea.contains(trip.getDestinationActivity().getCoord())) {
                     continue;
                 }
-
-                allTrips.add(trip);
             }
 
-            counter++;
-            if (counter % percent10 == 0) {
-                percent += 10;
-                log.info("Processing: " + percent + "% processed");
+            double euclideanDistance =
+                    CoordUtils.calcEuclideanDistance(trip.getOriginActivity().getCoord(), trip.getDestinationActivity().getCoord());
+            if (euclideanDistance <= minTripEuclideanDistance) {
+                continue;
             }
+
+            relevantTrips.add(trip);
         }
-        return allTrips;
+        return relevantTrips;
     }
 
 }
@@ -9,18 +9,24 @@ import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.*;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.application.options.ShpOptions;
-import org.locationtech.jts.geom.Geometry;
-import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.router.DefaultAnalysisMainModeIdentifier;
 import org.matsim.core.router.MainModeIdentifier;
 import org.matsim.core.router.TripStructureUtils;
+import org.matsim.utils.DrtPlansWriter;
+import org.matsim.utils.OutputOptions;
+import org.matsim.utils.ServiceArea;
+import org.matsim.utils.SnappingCache;
+import org.matsim.utils.SnappingCacheOptions;
+import org.matsim.utils.Tools;
 import picocli.CommandLine;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class PreparePlansForManualSampling implements MATSimAppCommand {
     @CommandLine.Option(names = "--input", description = "path to input plans", required = true)
@@ -41,9 +47,22 @@ public class PreparePlansForManualSampling implements MATSimAppCommand {
     @CommandLine.Option(names = "--min-euclidean-distance", description = "filter out short trips", defaultValue = "500")
     private double minTripEuclideanDistance;
 
+    @CommandLine.Option(names = "--threads", description = "number of threads for extracting the trips", defaultValue = "4")
+    private int threads;
+
+    @CommandLine.Option(names = "--streaming", description = "read the input plans person by person instead of " +
+            "loading the whole population (for large populations). The persons are then processed in a single thread", defaultValue = "false")
+    private boolean streaming;
+
     @CommandLine.Mixin
     private ShpOptions shp = new ShpOptions();
 
+    @CommandLine.Mixin
+    private OutputOptions outputOptions = new OutputOptions();
+
+    @CommandLine.Mixin
+    private SnappingCacheOptions snappingCacheOptions = new SnappingCacheOptions();
+
     private final Logger log = LogManager.getLogger(PreparePlansForManualSampling.class);
 
     public static void main(String[] args) {
@@ -52,51 +71,59 @@ public class PreparePlansForManualSampling implements MATSimAppCommand {
 
     @Override
     public Integer call() throws Exception {
-        Geometry serviceArea = shp.isDefined() ? shp.getGeometry() : null;
+        ServiceArea serviceArea = ServiceArea.fromShp(shp);
         if (serviceArea == null) {
             log.warn("Service area is not defined! Will use the whole plans. " +
                     "This may cause problem (if it is not deliberately set in this way)");
         }
 
-        Population inputPlans = PopulationUtils.readPopulation(inputPopulation);
-        Population outputPlans = PopulationUtils.createPopulation(ConfigUtils.createConfig());
-        PopulationFactory populationFactory = inputPlans.getFactory();
         Network network = NetworkUtils.readNetwork(networkPath);
         MainModeIdentifier mainModeIdentifier = new DefaultAnalysisMainModeIdentifier();
 
-        List<TripStructureUtils.Trip> allRelevantTrips = PrepareAllPossibleDrtTrips.collectAllRelevantTripsFromInputPlans
-                (inputPlans, network, serviceArea, startTime, endTime, minTripEuclideanDistance, log);
-        PrepareAllPossibleDrtTrips.processNetwork(network);
-
-        int counter = 0;
-        for (TripStructureUtils.Trip trip : allRelevantTrips) {
-            Coord fromCoord = trip.getOriginActivity().getCoord();
-            Coord toCoord = trip.getDestinationActivity().getCoord();
-            Link fromLink = NetworkUtils.getNearestLink(network, fromCoord);
-            Link toLink = NetworkUtils.getNearestLink(network, toCoord);
-
-            Activity fromAct = populationFactory.createActivityFromLinkId("dummy", fromLink.getId());
-            fromAct.setEndTime(trip.getOriginActivity().getEndTime().orElseThrow(RuntimeException::new));
-            Leg leg = populationFactory.createLeg(mainModeIdentifier.identifyMainMode(trip.getTripElements()));
-            Activity toAct = populationFactory.createActivityFromLinkId("dummy", toLink.getId());
-
-            Person person = populationFactory.createPerson(Id.createPersonId("drt_person_" + counter));
-            Plan plan = populationFactory.createPlan();
-            plan.addActivity(fromAct);
-            plan.addLeg(leg);
-            plan.addActivity(toAct);
-            person.addPlan(plan);
-            outputPlans.addPerson(person);
-            counter++;
-        }
-
         Path folder = Path.of(outputPopulation).getParent();
         if (!Files.exists(folder)) {
             Files.createDirectories(folder);
         }
-        PopulationWriter populationWriter = new PopulationWriter(outputPlans);
-        populationWriter.write(outputPopulation);
+        // The leg keeps the original main mode, which is used by the manual sampling
+        DrtPlansWriter drtPlansWriter = new DrtPlansWriter(outputOptions.getWriter(outputPopulation), "drt_person_");
+        if (streaming) {
+            // Each trip is written directly, so the network is processed before the trips are read. The activities
+            // without coordinates still refer to all the links of the network (only the link map is copied).
+            Map<Id<Link>, Link> links = new HashMap<>(network.getLinks());
+            PrepareAllPossibleDrtTrips.processNetwork(network);
+            SnappingCache snappingCache = snappingCacheOptions.getCache(network, networkPath,
+                    PrepareAllPossibleDrtTrips.NETWORK_FILTER);
+            Tools.readPersons(inputPopulation, person -> {
+                for (TripStructureUtils.Trip trip : PrepareAllPossibleDrtTrips.collectRelevantTrips(person, links,
+                        serviceArea, startTime, endTime, minTripEuclideanDistance)) {
+                    writeTrip(trip, snappingCache, mainModeIdentifier, drtPlansWriter);
+                }
+            });
+            snappingCache.save();
+        } else {
+            Population inputPlans = PopulationUtils.readPopulation(inputPopulation);
+            List<TripStructureUtils.Trip> allRelevantTrips = PrepareAllPossibleDrtTrips.collectAllRelevantTripsFromInputPlans
+                    (inputPlans, network, serviceArea, startTime, endTime, minTripEuclideanDistance, threads, log);
+            PrepareAllPossibleDrtTrips.processNetwork(network);
+            SnappingCache snappingCache = snappingCacheOptions.getCache(network, networkPath,
+                    PrepareAllPossibleDrtTrips.NETWORK_FILTER);
+            for (TripStructureUtils.Trip trip : allRelevantTrips) {
+                writeTrip(trip, snappingCache, mainModeIdentifier, drtPlansWriter);
+            }
+            snappingCache.save();
+        }
+        drtPlansWriter.close();
 
         return 0;
     }
+
+    private static void writeTrip(TripStructureUtils.Trip trip, SnappingCache snappingCache, MainModeIdentifier mainModeIdentifier,
+                                  DrtPlansWriter drtPlansWriter) {
+        Coord fromCoord = trip.getOriginActivity().getCoord();
+        Coord toCoord = trip.getDestinationActivity().getCoord();
+        Link fromLink = snappingCache.getNearestLink(fromCoord);
+        Link toLink = snappingCache.getNearestLink(toCoord);
+        drtPlansWriter.write(trip.getOriginActivity().getEndTime().orElseThrow(RuntimeException::new),
+                fromLink.getId(), toLink.getId(), mainModeIdentifier.identifyMainMode(trip.getTripElements()));
+    }
 }
@@ -1,8 +1,6 @@
 package org.matsim.source;
 
-import org.locationtech.jts.geom.Geometry;
 import org.matsim.api.core.v01.Coord;
-import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -11,14 +9,19 @@ import org.matsim.api.core.v01.population.*;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.application.options.CrsOptions;
 import org.matsim.application.options.ShpOptions;
-import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.algorithms.PersonAlgorithm;
 import org.matsim.core.router.DefaultAnalysisMainModeIdentifier;
 import org.matsim.core.router.MainModeIdentifier;
 import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
-import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.utils.DrtPlansWriter;
+import org.matsim.utils.OutputOptions;
+import org.matsim.utils.ServiceArea;
+import org.matsim.utils.SnappingCache;
+import org.matsim.utils.SnappingCacheOptions;
+import org.matsim.utils.Tools;
 import picocli.CommandLine;
 
 import java.nio.file.Path;
@@ -53,12 +56,22 @@ public class SimpleDrtRequestGenerator implements MATSimAppCommand {
     @CommandLine.Option(names = "--end-time", description = "end time to take the request (in second)", defaultValue = "86400")
     private double endingTime;
 
+    @CommandLine.Option(names = "--streaming", description = "read the input plans person by person instead of " +
+            "loading the whole population (for large populations). The result is the same", defaultValue = "false")
+    private boolean streaming;
+
     @CommandLine.Mixin
     private ShpOptions shp = new ShpOptions();
 
     @CommandLine.Mixin
     private CrsOptions crs = new CrsOptions();
 
+    @CommandLine.Mixin
+    private OutputOptions outputOptions = new OutputOptions();
+
+    @CommandLine.Mixin
+    private SnappingCacheOptions snappingCacheOptions = new SnappingCacheOptions();
+
     private final Random random = new Random(1234);
 
     public static void main(String[] args) {
@@ -78,7 +91,6 @@ public class SimpleDrtRequestGenerator implements MATSimAppCommand {
             modeConversionMap.put(modesToConvert[i], Double.parseDouble(conversionRates[i]));
         }
 
-        Population inputPlans = PopulationUtils.readPopulation(inputPlansPath.toString());
         Network network = NetworkUtils.readNetwork(networkPath.toString());
         Network outputNetwork;
         if (outputNetworkPath.equals("")) {
@@ -86,8 +98,6 @@ public class SimpleDrtRequestGenerator implements MATSimAppCommand {
         } else {
             outputNetwork = NetworkUtils.readNetwork(outputNetworkPath);
         }
-        PopulationFactory populationFactory = inputPlans.getFactory();
-        Population outputPopulation = PopulationUtils.createPopulation(ConfigUtils.createConfig());
 
         // We don't want the request to start on very long links
         List<Link> linksToRemove = new ArrayList<>();
@@ -110,83 +120,79 @@ public class SimpleDrtRequestGenerator implements MATSimAppCommand {
         }
         nodesToRemove.forEach(node -> outputNetwork.removeNode(node.getId()));
 
+        ServiceArea serviceArea = ServiceArea.fromShp(shp);
         MainModeIdentifier mainModeIdentifier = new DefaultAnalysisMainModeIdentifier();
-        int counter = 0;
-        for (Person person : inputPlans.getPersons().values()) {
-            List<TripStructureUtils.Trip> trips = TripStructureUtils.getTrips(person.getSelectedPlan());
-            for (TripStructureUtils.Trip trip : trips) {
-                String mode = mainModeIdentifier.identifyMainMode(trip.getTripElements());
-                if (modeConversionMap.containsKey(mode)) {
-                    if (random.nextDouble() > modeConversionMap.get(mode)) {
-                        continue;
-                    }
+        SnappingCache snappingCache = snappingCacheOptions.getCache(outputNetwork,
+                outputNetworkPath.equals("") ? networkPath.toString() : outputNetworkPath, "car-max-length-1000");
+        // The requests are written as the persons are processed
+        DrtPlansWriter drtPlansWriter = new DrtPlansWriter(outputOptions.getWriter(outputPath.toString()), "drt_person_");
+        PersonAlgorithm tripConverter = person -> convertTrips(person, modeConversionMap, network, snappingCache,
+                serviceArea, mainModeIdentifier, drtPlansWriter);
+        if (streaming) {
+            Tools.readPersons(inputPlansPath.toString(), tripConverter);
+        } else {
+            Population inputPlans = PopulationUtils.readPopulation(inputPlansPath.toString());
+            inputPlans.getPersons().values().forEach(tripConverter::run);
+        }
+        drtPlansWriter.close();
+        snappingCache.save();
 
-                    if (trip.getOriginActivity().getEndTime().orElse(-1) < startingTime ||
-                            trip.getOriginActivity().getEndTime().orElse(-1) > endingTime) {
-                        continue;
-                    }
+        System.out.println("There are " + drtPlansWriter.getNumberOfPersons() + " drt trips.");
+        return 0;
+    }
+
+    private void convertTrips(Person person, Map<String, Double> modeConversionMap, Network network, SnappingCache snappingCache,
+                              ServiceArea serviceArea, MainModeIdentifier mainModeIdentifier, DrtPlansWriter drtPlansWriter) {
+        List<TripStructureUtils.Trip> trips = TripStructureUtils.getTrips(person.getSelectedPlan());
+        for (TripStructureUtils.Trip trip : trips) {
+            String mode = mainModeIdentifier.identifyMainMode(trip.getTripElements());
+            if (modeConversionMap.containsKey(mode)) {
+                if (random.nextDouble() > modeConversionMap.get(mode)) {
+                    continue;
+                }
 
-                    Coord fromCoord;
-                    Coord toCoord;
-                    if (trip.getOriginActivity().getCoord() != null) {
-                        fromCoord = trip.getOriginActivity().getCoord();
-                    } else {
-                        if (network.getLinks().get(trip.getOriginActivity().getLinkId()) == null) {
-                            continue;
-                        }
-                        fromCoord = network.getLinks().get(trip.getOriginActivity().getLinkId()).getToNode().getCoord();
+                if (trip.getOriginActivity().getEndTime().orElse(-1) < startingTime ||
+                        trip.getOriginActivity().getEndTime().orElse(-1) > endingTime) {
+                    continue;
+                }
+
+                Coord fromCoord;
+                Coord toCoord;
+                if (trip.getOriginActivity().getCoord() != null) {
+                    fromCoord = trip.getOriginActivity().getCoord();
+                } else {
+                    if (network.getLinks().get(trip.getOriginActivity().getLinkId()) == null) {
+                        continue;
                     }
-                    if (trip.getDestinationActivity().getCoord() != null) {
-                        toCoord = trip.getDestinationActivity().getCoord();
-                    } else {
-                        if (network.getLinks().get(trip.getDestinationActivity().getLinkId()) == null) {
-                            continue;
-                        }
-                        toCoord = network.getLinks().get(trip.getDestinationActivity().getLinkId()).getToNode().getCoord();
+                    fromCoord = network.getLinks().get(trip.getOriginActivity().getLinkId()).getToNode().getCoord();
+                }
+                if (trip.getDestinationActivity().getCoord() != null) {
+                    toCoord = trip.getDestinationActivity().getCoord();
+                } else {
+                    if (network.getLinks().get(trip.getDestinationActivity().getLinkId()) == null) {
+                        continue;
                     }
+                    toCoord = network.getLinks().get(trip.getDestinationActivity().getLinkId()).getToNode().getCoord();
+                }
 
-                    if (shp.isDefined()) {
-                        Geometry serviceArea = shp.getGeometry();
-                        if (!MGC.coord2Point(fromCoord).within(serviceArea) || !MGC.coord2Point(toCoord).within(serviceArea)) {
-                            continue;
-                        }
+                if (serviceArea != null) {
+                    if (!serviceArea.contains(fromCoord) || !serviceArea.contains(toCoord)) {
+                        continue;
                     }
+                }
 
 
-                    if (crs != null) {
-                        CoordinateTransformation cf = crs.getTransformation();
-                        fromCoord = cf.transform(fromCoord);
-                        toCoord = cf.transform(toCoord);
-                    }
-
-                    // Now,  we create a drt person based on this trip
-                    // Then we create the plans
-                    Person dummyPerson = populationFactory.createPerson(Id.createPersonId("drt_person_" + counter));
-                    Plan plan = populationFactory.createPlan();
-                    Activity fromAct = populationFactory.createActivityFromCoord("dummy", fromCoord);
-                    fromAct.setEndTime(trip.getOriginActivity().getEndTime().orElse(-1));
-                    fromAct.setLinkId(NetworkUtils.getNearestLink(outputNetwork, fromCoord).getId());
-                    fromAct.setCoord(null); // This may be not necessary
-                    Leg leg = populationFactory.createLeg(TransportMode.drt);
-                    Activity toAct = populationFactory.createActivityFromCoord("dummy", toCoord);
-                    toAct.setLinkId(NetworkUtils.getNearestLink(outputNetwork, toCoord).getId());
-                    toAct.setCoord(null); // This may be not necessary
-
-                    plan.addActivity(fromAct);
-                    plan.addLeg(leg);
-                    plan.addActivity(toAct);
-                    dummyPerson.addPlan(plan);
-                    outputPopulation.addPerson(dummyPerson);
-
-                    counter++;
+                if (crs != null) {
+                    CoordinateTransformation cf = crs.getTransformation();
+                    fromCoord = cf.transform(fromCoord);
+                    toCoord = cf.transform(toCoord);
                 }
+
+                // Now, we create a drt request based on this trip
+                drtPlansWriter.write(trip.getOriginActivity().getEndTime().orElse(-1),
+                        snappingCache.getNearestLink(fromCoord).getId(),
+                        snappingCache.getNearestLink(toCoord).getId());
             }
         }
-
-        System.out.println("There are " + counter + " drt trips.");
-
-        PopulationWriter populationWriter = new PopulationWriter(outputPopulation);
-        populationWriter.write(outputPath.toString());
-        return 0;
     }
 }
@@ -0,0 +1,22 @@
+package org.matsim.utils;
+
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+
+/**
+ * Command line options for the {@link ScenarioArtifactCache}. Use as {@code @CommandLine.Mixin}.
+ */
+public class ArtifactCacheOptions {
+    @CommandLine.Option(names = "--cache-dir", description = "local cache for the downloaded scenario files",
+            defaultValue = "${sys:user.home}/.cache/drt-scenario-library")
+    private Path cacheDirectory;
+
+    @CommandLine.Option(names = "--mirror", description = "local copy of the public SVN " +
+            "(same folder structure as " + ScenarioArtifactCache.SVN_ROOT + "), used instead of the remote server")
+    private Path mirror;
+
+    public ScenarioArtifactCache getCache() {
+        return new ScenarioArtifactCache(cacheDirectory, mirror);
+    }
+}
@@ -0,0 +1,422 @@
+package org.matsim.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.dvrp.trafficmonitoring.QSimFreeSpeedTravelTime;
+import org.matsim.contrib.zone.skims.TravelTimeMatrix;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.router.util.TravelTime;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Free speed travel time matrix of the DVRP network that is stored on disk and memory-mapped when used. It is
+ * computed as the DVRP free speed matrix (FreeSpeedTravelTimeMatrix): a zonal matrix between the nodes closest to the
+ * centroids of square grid cells (as ZonalSystems.computeMostCentralNodes), and a sparse matrix with the exact travel
+ * times to the nodes within the max neighbor distance (network distance) or the max neighbor travel time.
+ * <p>
+ * The file is named after a hash of the network (node ids and coordinates, links with length and free speed), the
+ * parameters of the travelTimeMatrix parameter set and the qsim time step. If the network or one of the parameters
+ * changes, a new matrix is computed, so a file that exists is always valid. Nodes that are not in the network of the
+ * matrix are rejected.
+ */
+public class CachedTravelTimeMatrix implements TravelTimeMatrix {
+    private static final Logger log = LogManager.getLogger(CachedTravelTimeMatrix.class);
+    private static final int MAGIC_NUMBER = 0x4454544d; // "DTTM"
+    private static final int VERSION = 2;
+    private static final int SEGMENT_SHIFT = 28; // 2^28 ints (1 GB) per mapped segment of the sparse entries
+    private static final double GRID_EPSILON = 1; // margin of the square grid around the nodes, as in DVRP's SquareGrid
+
+    private final int[] canonicalIndices; // node id index -> index in the matrix file, -1 if not in the network
+    private final IntBuffer nodeZones;
+    private final int zoneCount;
+    private final IntBuffer zonalTravelTimes;
+    private final LongBuffer rowOffsets;
+    private final IntBuffer[] sparseEntries; // pairs of (to node, travel time), sorted by to node within each row
+
+    private CachedTravelTimeMatrix(int[] canonicalIndices, IntBuffer nodeZones, int zoneCount, IntBuffer zonalTravelTimes,
+                                   LongBuffer rowOffsets, IntBuffer[] sparseEntries) {
+        this.canonicalIndices = canonicalIndices;
+        this.nodeZones = nodeZones;
+        this.zoneCount = zoneCount;
+        this.zonalTravelTimes = zonalTravelTimes;
+        this.rowOffsets = rowOffsets;
+        this.sparseEntries = sparseEntries;
+    }
+
+    @Override
+    public int getTravelTime(Node fromNode, Node toNode, double departureTime) {
+        if (fromNode == toNode) {
+            return 0;
+        }
+        int from = getCanonicalIndex(fromNode);
+        int to = getCanonicalIndex(toNode);
+
+        long low = rowOffsets.get(from);
+        long high = rowOffsets.get(from + 1) - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            int middleNode = getSparseEntry(2 * middle);
+            if (middleNode < to) {
+                low = middle + 1;
+            } else if (middleNode > to) {
+                high = middle - 1;
+            } else {
+                return getSparseEntry(2 * middle + 1);
+            }
+        }
+        return zonalTravelTimes.get(nodeZones.get(from) * zoneCount + nodeZones.get(to));
+    }
+
+    private int getCanonicalIndex(Node node) {
+        int index = node.getId().index();
+        if (index >= canonicalIndices.length || canonicalIndices[index] < 0) {
+            throw new IllegalArgumentException("Node " + node.getId() + " is not in the network of the travel time matrix");
+        }
+        return canonicalIndices[index];
+    }
+
+    private int getSparseEntry(long position) {
+        return sparseEntries[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & ((1 << SEGMENT_SHIFT) - 1)));
+    }
+
+    /**
+     * Loads the matrix from the cache directory, or computes and stores it if it is not cached yet.
+     *
+     * @param matrixParams the travelTimeMatrix parameter set of the dvrp config group (cellSize, maxNeighborDistance,
+     *                     maxNeighborTravelTime; missing parameters are 0 as in DVRP)
+     */
+    public static CachedTravelTimeMatrix loadOrCreate(Path cacheDirectory, Network network, ConfigGroup matrixParams,
+                                                      double qSimTimeStepSize, int threads) throws IOException {
+        List<Node> nodes = new ArrayList<>(network.getNodes().values());
+        nodes.sort(Comparator.comparing(node -> node.getId().toString()));
+        Map<String, String> params = new TreeMap<>(matrixParams.getParams());
+
+        Path file = cacheDirectory.resolve(computeKey(network, nodes, params, qSimTimeStepSize) + ".ttm");
+        if (!Files.exists(file)) {
+            log.info("Travel time matrix is not cached yet. Computing it...");
+            Files.createDirectories(cacheDirectory);
+            Path tempFile = Files.createTempFile(cacheDirectory, "matrix", ".tmp");
+            new Builder(nodes, params, new QSimFreeSpeedTravelTime(qSimTimeStepSize), threads).write(tempFile);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        log.info("Loading travel time matrix from " + file);
+        return load(file, nodes);
+    }
+
+    private static CachedTravelTimeMatrix load(Path file, List<Node> nodes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 16);
+            if (header.getInt() != MAGIC_NUMBER || header.getInt() != VERSION) {
+                throw new IllegalStateException(file + " is not a travel time matrix of the current version");
+            }
+            int nodeCount = header.getInt();
+            int zoneCount = header.getInt();
+            if (nodeCount != nodes.size()) {
+                throw new IllegalStateException(file + " does not belong to the network");
+            }
+
+            long position = 16;
+            IntBuffer nodeZones = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * nodeCount).asIntBuffer();
+            position += 4L * nodeCount;
+            IntBuffer zonalTravelTimes = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * zoneCount * zoneCount).asIntBuffer();
+            position += 4L * zoneCount * zoneCount;
+            LongBuffer rowOffsets = channel.map(FileChannel.MapMode.READ_ONLY, position, 8L * (nodeCount + 1)).asLongBuffer();
+            position += 8L * (nodeCount + 1);
+
+            long entryInts = 2 * rowOffsets.get(nodeCount);
+            int segments = (int) ((entryInts >>> SEGMENT_SHIFT) + 1);
+            IntBuffer[] sparseEntries = new IntBuffer[segments];
+            for (int s = 0; s < segments; s++) {
+                long segmentInts = Math.min(entryInts - ((long) s << SEGMENT_SHIFT), 1L << SEGMENT_SHIFT);
+                sparseEntries[s] = channel.map(FileChannel.MapMode.READ_ONLY, position + 4L * ((long) s << SEGMENT_SHIFT),
+                        4L * segmentInts).asIntBuffer();
+            }
+
+            int[] canonicalIndices = new int[Id.getNumberOfIds(Node.class)];
+            Arrays.fill(canonicalIndices, -1);
+            for (int i = 0; i < nodes.size(); i++) {
+                canonicalIndices[nodes.get(i).getId().index()] = i;
+            }
+            return new CachedTravelTimeMatrix(canonicalIndices, nodeZones, zoneCount, zonalTravelTimes, rowOffsets, sparseEntries);
+        }
+    }
+
+    private static String computeKey(Network network, List<Node> sortedNodes, Map<String, String> params, double qSimTimeStepSize) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append(VERSION).append(';').append(qSimTimeStepSize).append(';').append(params).append(';')
+                .append(sortedNodes.size()).append('\n');
+        for (Node node : sortedNodes) {
+            builder.append(node.getId()).append(';').append(node.getCoord().getX()).append(';').append(node.getCoord().getY()).append('\n');
+            digest.update(builder.toString().getBytes(StandardCharsets.UTF_8));
+            builder.setLength(0);
+        }
+        List<Link> links = new ArrayList<>(network.getLinks().values());
+        links.sort(Comparator.comparing(link -> link.getId().toString()));
+        for (Link link : links) {
+            builder.append(link.getId()).append(';').append(link.getFromNode().getId()).append(';').append(link.getToNode().getId())
+                    .append(';').append(link.getLength()).append(';').append(link.getFreespeed()).append('\n');
+            digest.update(builder.toString().getBytes(StandardCharsets.UTF_8));
+            builder.setLength(0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Computes the matrix on arrays (forward star representation of the network) and writes it to a file.
+     */
+    private static class Builder {
+        private final List<Node> nodes;
+        private final int threads;
+        private final double cellSize;
+        private final double maxNeighborDistance;
+        private final double maxNeighborTravelTime;
+        private final int[] firstOutLinks;
+        private final int[] linkToNodes;
+        private final double[] linkTravelTimes;
+        private final double[] linkLengths;
+        private final ThreadLocal<double[][]> sparseSearchArrays; // times and distances, reset after each search
+
+        Builder(List<Node> nodes, Map<String, String> params, TravelTime travelTime, int threads) {
+            this.nodes = nodes;
+            this.threads = threads;
+            this.cellSize = Double.parseDouble(params.get("cellSize"));
+            this.maxNeighborDistance = Double.parseDouble(params.getOrDefault("maxNeighborDistance", "0"));
+            this.maxNeighborTravelTime = Double.parseDouble(params.getOrDefault("maxNeighborTravelTime", "0"));
+
+            Map<Id<Node>, Integer> indices = new HashMap<>();
+            for (int i = 0; i < nodes.size(); i++) {
+                indices.put(nodes.get(i).getId(), i);
+            }
+            int linkCount = nodes.stream().mapToInt(node -> node.getOutLinks().size()).sum();
+            firstOutLinks = new int[nodes.size() + 1];
+            linkToNodes = new int[linkCount];
+            linkTravelTimes = new double[linkCount];
+            linkLengths = new double[linkCount];
+            int l = 0;
+            for (int i = 0; i < nodes.size(); i++) {
+                firstOutLinks[i] = l;
+                for (Link link : nodes.get(i).getOutLinks().values()) {
+                    linkToNodes[l] = indices.get(link.getToNode().getId());
+                    linkTravelTimes[l] = travelTime.getLinkTravelTime(link, 0, null, null);
+                    linkLengths[l] = link.getLength();
+                    l++;
+                }
+            }
+            firstOutLinks[nodes.size()] = l;
+
+            sparseSearchArrays = ThreadLocal.withInitial(() -> {
+                double[] times = new double[nodes.size()];
+                Arrays.fill(times, Double.POSITIVE_INFINITY);
+                return new double[][]{times, new double[nodes.size()]};
+            });
+        }
+
+        void write(Path file) throws IOException {
+            int[] nodeZones = new int[nodes.size()];
+            int[] centralNodes = computeZones(nodeZones);
+            int zoneCount = centralNodes.length;
+            log.info(zoneCount + " zones with a cell size of " + cellSize);
+
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            int[][] zonalRows;
+            int[][] sparseRows;
+            try {
+                zonalRows = pool.submit(() -> IntStream.range(0, zoneCount).parallel()
+                        .mapToObj(zone -> computeZonalRow(centralNodes[zone], centralNodes))
+                        .toArray(int[][]::new)).join();
+                log.info("Zonal matrix computed");
+                sparseRows = pool.submit(() -> IntStream.range(0, nodes.size()).parallel()
+                        .mapToObj(this::computeSparseRow)
+                        .toArray(int[][]::new)).join();
+                log.info("Sparse matrix computed");
+            } finally {
+                pool.shutdown();
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+                buffer.putInt(MAGIC_NUMBER).putInt(VERSION).putInt(nodes.size()).putInt(zoneCount);
+                for (int zone : nodeZones) {
+                    buffer = putInt(channel, buffer, zone);
+                }
+                for (int[] row : zonalRows) {
+                    for (int value : row) {
+                        buffer = putInt(channel, buffer, value);
+                    }
+                }
+                long offset = 0;
+                for (int[] row : sparseRows) {
+                    buffer = putLong(channel, buffer, offset);
+                    offset += row.length / 2;
+                }
+                buffer = putLong(channel, buffer, offset);
+                for (int[] row : sparseRows) {
+                    for (int value : row) {
+                        buffer = putInt(channel, buffer, value);
+                    }
+                }
+                flush(channel, buffer);
+            }
+        }
+
+        /**
+         * Square grid cells (only the non-empty ones become zones), each represented by the node closest to the
+         * centroid of the cell. The grid and the tie-breaking (first node in the order of the network) are the same as
+         * in the SquareGridSystem and ZonalSystems.computeMostCentralNodes of DVRP.
+         */
+        private int[] computeZones(int[] nodeZones) {
+            double minX = nodes.stream().mapToDouble(node -> node.getCoord().getX()).min().orElse(0) - GRID_EPSILON;
+            double minY = nodes.stream().mapToDouble(node -> node.getCoord().getY()).min().orElse(0) - GRID_EPSILON;
+            // The network iterates its nodes in the order of the id indices
+            Integer[] networkOrder = IntStream.range(0, nodes.size()).boxed().toArray(Integer[]::new);
+            Arrays.sort(networkOrder, Comparator.comparingInt(i -> nodes.get(i).getId().index()));
+
+            Map<Long, List<Integer>> cells = new TreeMap<>();
+            for (int i : networkOrder) {
+                long column = (long) ((nodes.get(i).getCoord().getX() - minX) / cellSize);
+                long row = (long) ((nodes.get(i).getCoord().getY() - minY) / cellSize);
+                cells.computeIfAbsent(row << 32 | column, cell -> new ArrayList<>()).add(i);
+            }
+
+            int[] centralNodes = new int[cells.size()];
+            int zone = 0;
+            for (Map.Entry<Long, List<Integer>> cell : cells.entrySet()) {
+                double centroidX = minX + ((cell.getKey() & 0xffffffffL) + 0.5) * cellSize;
+                double centroidY = minY + ((cell.getKey() >>> 32) + 0.5) * cellSize;
+                double minSquaredDistance = Double.POSITIVE_INFINITY;
+                for (int candidate : cell.getValue()) {
+                    nodeZones[candidate] = zone;
+                    double dx = nodes.get(candidate).getCoord().getX() - centroidX;
+                    double dy = nodes.get(candidate).getCoord().getY() - centroidY;
+                    if (dx * dx + dy * dy < minSquaredDistance) {
+                        minSquaredDistance = dx * dx + dy * dy;
+                        centralNodes[zone] = candidate;
+                    }
+                }
+                zone++;
+            }
+            return centralNodes;
+        }
+
+        private int[] computeZonalRow(int centralNode, int[] centralNodes) {
+            double[] times = new double[nodes.size()];
+            Arrays.fill(times, Double.POSITIVE_INFINITY);
+            runDijkstra(centralNode, times, null, new ArrayList<>());
+            int[] row = new int[centralNodes.length];
+            for (int zone = 0; zone < centralNodes.length; zone++) {
+                double time = times[centralNodes[zone]];
+                row[zone] = time == Double.POSITIVE_INFINITY ? Integer.MAX_VALUE : (int) Math.round(time);
+            }
+            return row;
+        }
+
+        /**
+         * As in the sparse matrix of DVRP, the search stops at the first node that is beyond both the max neighbor
+         * distance and the max neighbor travel time, and all reached nodes within one of the limits are kept.
+         */
+        private int[] computeSparseRow(int node) {
+            double[][] arrays = sparseSearchArrays.get();
+            double[] times = arrays[0];
+            double[] distances = arrays[1];
+            List<Integer> reached = new ArrayList<>();
+            runDijkstra(node, times, distances, reached);
+
+            reached.sort(Comparator.naturalOrder());
+            int[] row = new int[2 * reached.size()];
+            int size = 0;
+            for (int neighbor : reached) {
+                if (neighbor != node && (distances[neighbor] <= maxNeighborDistance || times[neighbor] <= maxNeighborTravelTime)) {
+                    row[size++] = neighbor;
+                    row[size++] = (int) Math.round(times[neighbor]);
+                }
+                times[neighbor] = Double.POSITIVE_INFINITY;
+            }
+            return Arrays.copyOf(row, size);
+        }
+
+        /**
+         * Least travel time tree from the root node. If distances is given, the search stops at the first node that is
+         * at least the max neighbor distance (network distance along the tree) and the max neighbor travel time away.
+         */
+        private void runDijkstra(int root, double[] times, double[] distances, List<Integer> reached) {
+            PriorityQueue<double[]> queue = new PriorityQueue<>(Comparator.comparingDouble(entry -> entry[0]));
+            times[root] = 0;
+            if (distances != null) {
+                distances[root] = 0;
+            }
+            reached.add(root);
+            queue.add(new double[]{0, root});
+            while (!queue.isEmpty()) {
+                double[] entry = queue.poll();
+                int node = (int) entry[1];
+                if (entry[0] > times[node]) {
+                    continue; // outdated entry
+                }
+                if (distances != null && distances[node] >= maxNeighborDistance && times[node] >= maxNeighborTravelTime) {
+                    break;
+                }
+                for (int l = firstOutLinks[node]; l < firstOutLinks[node + 1]; l++) {
+                    int toNode = linkToNodes[l];
+                    double time = times[node] + linkTravelTimes[l];
+                    if (time < times[toNode]) {
+                        if (times[toNode] == Double.POSITIVE_INFINITY) {
+                            reached.add(toNode);
+                        }
+                        times[toNode] = time;
+                        if (distances != null) {
+                            distances[toNode] = distances[node] + linkLengths[l];
+                        }
+                        queue.add(new double[]{time, toNode});
+                    }
+                }
+            }
+        }
+
+        private static ByteBuffer putInt(FileChannel channel, ByteBuffer buffer, int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush(channel, buffer);
+            }
+            return buffer.putInt(value);
+        }
+
+        private static ByteBuffer putLong(FileChannel channel, ByteBuffer buffer, long value) throws IOException {
+            if (buffer.remaining() < 8) {
+                flush(channel, buffer);
+            }
+            return buffer.putLong(value);
+        }
+
+        private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
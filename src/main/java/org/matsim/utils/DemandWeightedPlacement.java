@@ -0,0 +1,127 @@
+package org.matsim.utils;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.io.StreamingPopulationReader;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+
+import java.util.*;
+
+/**
+ * Start links of a fleet in proportion to the demand. The origins of the requests are counted per zone (square grid
+ * cells, as the square grid zonal system of DRT), and the vehicles are allocated one after the other to the zone with
+ * the highest remaining quota. Within a zone, the vehicles are spread over the origins of the zone (van der Corput
+ * sequence) and each is placed on the candidate link nearest to its origin ({@link LinkSpatialIndex}). The placement
+ * is deterministic and nested: the start link of a vehicle only depends on its index, so the larger fleets extend the
+ * smaller ones.
+ */
+public class DemandWeightedPlacement {
+    private final LinkSpatialIndex candidateLinks;
+    private final List<List<Coord>> zoneOrigins = new ArrayList<>(); // zones in the order of their first origin
+
+    public DemandWeightedPlacement(Collection<? extends Link> candidateLinks, List<Coord> origins, double cellSize) {
+        if (origins.isEmpty()) {
+            throw new IllegalArgumentException("There is no demand to place the vehicles");
+        }
+        this.candidateLinks = new LinkSpatialIndex(candidateLinks);
+        Map<Long, List<Coord>> zones = new LinkedHashMap<>();
+        for (Coord origin : origins) {
+            long x = (long) Math.floor(origin.getX() / cellSize);
+            long y = (long) Math.floor(origin.getY() / cellSize);
+            zones.computeIfAbsent((x << 32) ^ (y & 0xffffffffL), zone -> new ArrayList<>()).add(origin);
+        }
+        zoneOrigins.addAll(zones.values());
+    }
+
+    /**
+     * Origins of the trips (coordinate of the origin activity, or the to node of its link) departing within the time
+     * window after the first departure in the plans file, e.g. the demand of the first hour of the simulation.
+     */
+    public static List<Coord> readOrigins(String plansFile, Network network, double timeWindow) {
+        List<Activity> originActivities = new ArrayList<>();
+        StreamingPopulationReader reader = new StreamingPopulationReader(ScenarioUtils.createScenario(ConfigUtils.createConfig()));
+        reader.addAlgorithm((Person person) -> {
+            for (TripStructureUtils.Trip trip : TripStructureUtils.getTrips(person.getSelectedPlan())) {
+                if (trip.getOriginActivity().getEndTime().isDefined()) {
+                    originActivities.add(trip.getOriginActivity());
+                }
+            }
+        });
+        reader.readFile(plansFile);
+
+        double firstDeparture = originActivities.stream()
+                .mapToDouble(activity -> activity.getEndTime().seconds())
+                .min().orElse(0);
+        List<Coord> origins = new ArrayList<>();
+        for (Activity activity : originActivities) {
+            if (activity.getEndTime().seconds() > firstDeparture + timeWindow) {
+                continue;
+            }
+            if (activity.getCoord() != null) {
+                origins.add(activity.getCoord());
+            } else if (network.getLinks().containsKey(activity.getLinkId())) {
+                origins.add(network.getLinks().get(activity.getLinkId()).getToNode().getCoord());
+            }
+        }
+        return origins;
+    }
+
+    public int getNumberOfZones() {
+        return zoneOrigins.size();
+    }
+
+    public List<Link> getStartLinks(int fleetSize) {
+        int[] zones = getZones(fleetSize);
+        int[] vehiclesPerZone = new int[zoneOrigins.size()];
+        List<Link> startLinks = new ArrayList<>(fleetSize);
+        for (int zone : zones) {
+            List<Coord> origins = zoneOrigins.get(zone);
+            int i = vehiclesPerZone[zone]++;
+            // van der Corput sequence: the first vehicles of the zone are spread over its origins, and with more
+            // vehicles than origins the origins are used repeatedly
+            int originIndex = (int) (((Integer.reverse(i) & 0xffffffffL) * origins.size()) >>> 32);
+            startLinks.add(candidateLinks.getNearestLink(origins.get(originIndex)));
+        }
+        return startLinks;
+    }
+
+    int[] allocate(int fleetSize) {
+        int[] vehiclesPerZone = new int[zoneOrigins.size()];
+        for (int zone : getZones(fleetSize)) {
+            vehiclesPerZone[zone]++;
+        }
+        return vehiclesPerZone;
+    }
+
+    /**
+     * Zone of each vehicle: vehicle k goes to the zone with the highest remaining quota, i.e. (k + 1) * demand share
+     * minus the vehicles already allocated to the zone (ties: more demand first, then the zone order). The rule only
+     * depends on the vehicles before k, and each zone stays close to its quota.
+     */
+    private int[] getZones(int fleetSize) {
+        long totalDemand = zoneOrigins.stream().mapToLong(List::size).sum();
+        int[] vehiclesPerZone = new int[zoneOrigins.size()];
+        int[] zones = new int[fleetSize];
+        for (int k = 0; k < fleetSize; k++) {
+            int bestZone = -1;
+            long bestRemainder = 0; // remaining quota * totalDemand (exact)
+            for (int zone = 0; zone < zoneOrigins.size(); zone++) {
+                long demand = zoneOrigins.get(zone).size();
+                long remainder = (k + 1) * demand - vehiclesPerZone[zone] * totalDemand;
+                if (bestZone < 0 || remainder > bestRemainder
+                        || (remainder == bestRemainder && demand > zoneOrigins.get(bestZone).size())) {
+                    bestZone = zone;
+                    bestRemainder = remainder;
+                }
+            }
+            zones[k] = bestZone;
+            vehiclesPerZone[bestZone]++;
+        }
+        return zones;
+    }
+}
@@ -0,0 +1,294 @@
+package org.matsim.utils;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.contrib.dvrp.fleet.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Compact binary format for single-leg DRT demand (plans) and for DRT fleets. The files are memory-mapped when read,
+ * which is much faster than parsing the (gzipped) XML files.
+ * <p>
+ * Layout: header (magic number, version, content type, number of records, size and sha256 of the XML file the binary
+ * file is converted from), dictionary of all strings (ids, activity types, modes), then fixed-size records that refer
+ * to the dictionary:
+ * <ul>
+ *     <li>demand: person, from activity type, from link, end time (NaN if undefined), mode, to activity type, to link</li>
+ *     <li>fleet: vehicle, start link, capacity, service begin time, service end time</li>
+ * </ul>
+ * Use {@code ConvertToBinaryFormat} to convert the files in both directions.
+ */
+public final class DrtBinaryFormat {
+    public static final String EXTENSION = ".bin";
+
+    private static final int MAGIC_NUMBER = 0x44525442; // "DRTB"
+    private static final int VERSION = 2;
+    private static final int DEMAND = 1;
+    private static final int FLEET = 2;
+
+    private DrtBinaryFormat() {
+    }
+
+    /**
+     * @return the name of the binary version of a plans or fleet file, e.g. berlin-drt.plans.bin for
+     * berlin-drt.plans.xml.gz
+     */
+    public static String getBinaryFileName(String xmlFileName) {
+        String name = xmlFileName;
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - ".gz".length());
+        }
+        if (name.endsWith(".xml")) {
+            name = name.substring(0, name.length() - ".xml".length());
+        }
+        return name + EXTENSION;
+    }
+
+    /**
+     * Writes the selected plans of the population. Each selected plan must consist of exactly one leg between two
+     * activities with link ids.
+     */
+    public static void writeDemand(Population population, Path file) throws IOException {
+        writeDemand(population, file, null);
+    }
+
+    /**
+     * @param sourceFile the XML file the population is read from (its size and sha256 are recorded, see
+     *                   {@link #isConvertedFrom}), or null
+     */
+    public static void writeDemand(Population population, Path file, Path sourceFile) throws IOException {
+        Dictionary dictionary = new Dictionary();
+        List<int[]> ids = new ArrayList<>(population.getPersons().size());
+        double[] endTimes = new double[population.getPersons().size()];
+        for (Person person : population.getPersons().values()) {
+            List<PlanElement> planElements = person.getSelectedPlan().getPlanElements();
+            if (planElements.size() != 3 || !(planElements.get(0) instanceof Activity fromAct) ||
+                    !(planElements.get(1) instanceof Leg leg) || !(planElements.get(2) instanceof Activity toAct) ||
+                    fromAct.getLinkId() == null || toAct.getLinkId() == null) {
+                throw new IllegalArgumentException("Person " + person.getId() + " does not have a single-leg plan " +
+                        "with link ids. Only DRT request plans can be written in the binary format.");
+            }
+            endTimes[ids.size()] = fromAct.getEndTime().orElse(Double.NaN);
+            ids.add(new int[]{dictionary.add(person.getId().toString()), dictionary.add(fromAct.getType()),
+                    dictionary.add(fromAct.getLinkId().toString()), dictionary.add(leg.getMode()),
+                    dictionary.add(toAct.getType()), dictionary.add(toAct.getLinkId().toString())});
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            writeHeader(out, DEMAND, ids.size(), sourceFile);
+            dictionary.write(out);
+            for (int i = 0; i < ids.size(); i++) {
+                int[] record = ids.get(i);
+                out.writeInt(record[0]);
+                out.writeInt(record[1]);
+                out.writeInt(record[2]);
+                out.writeDouble(endTimes[i]);
+                out.writeInt(record[3]);
+                out.writeInt(record[4]);
+                out.writeInt(record[5]);
+            }
+        }
+    }
+
+    /**
+     * Adds the persons of the binary demand file to the population.
+     */
+    public static void readDemand(Path file, Population population) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        int records = readHeader(buffer, DEMAND, file);
+        String[] dictionary = readDictionary(buffer);
+        LinkIds linkIds = new LinkIds(dictionary);
+        PopulationFactory factory = population.getFactory();
+        for (int i = 0; i < records; i++) {
+            Person person = factory.createPerson(Id.createPersonId(dictionary[buffer.getInt()]));
+            Activity fromAct = factory.createActivityFromLinkId(dictionary[buffer.getInt()], linkIds.get(buffer.getInt()));
+            double endTime = buffer.getDouble();
+            if (!Double.isNaN(endTime)) {
+                fromAct.setEndTime(endTime);
+            }
+            Leg leg = factory.createLeg(dictionary[buffer.getInt()]);
+            Activity toAct = factory.createActivityFromLinkId(dictionary[buffer.getInt()], linkIds.get(buffer.getInt()));
+
+            Plan plan = factory.createPlan();
+            plan.addActivity(fromAct);
+            plan.addLeg(leg);
+            plan.addActivity(toAct);
+            person.addPlan(plan);
+            population.addPerson(person);
+        }
+    }
+
+    public static void writeFleet(FleetSpecification fleet, Path file) throws IOException {
+        writeFleet(fleet, file, null);
+    }
+
+    /**
+     * @param sourceFile the XML file the fleet is read from (its size and sha256 are recorded, see
+     *                   {@link #isConvertedFrom}), or null
+     */
+    public static void writeFleet(FleetSpecification fleet, Path file, Path sourceFile) throws IOException {
+        Dictionary dictionary = new Dictionary();
+        Collection<DvrpVehicleSpecification> vehicles = fleet.getVehicleSpecifications().values();
+        for (DvrpVehicleSpecification vehicle : vehicles) {
+            dictionary.add(vehicle.getId().toString());
+            dictionary.add(vehicle.getStartLinkId().toString());
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            writeHeader(out, FLEET, vehicles.size(), sourceFile);
+            dictionary.write(out);
+            for (DvrpVehicleSpecification vehicle : vehicles) {
+                out.writeInt(dictionary.add(vehicle.getId().toString()));
+                out.writeInt(dictionary.add(vehicle.getStartLinkId().toString()));
+                out.writeInt(vehicle.getCapacity());
+                out.writeDouble(vehicle.getServiceBeginTime());
+                out.writeDouble(vehicle.getServiceEndTime());
+            }
+        }
+    }
+
+    public static FleetSpecification readFleet(Path file) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        int records = readHeader(buffer, FLEET, file);
+        String[] dictionary = readDictionary(buffer);
+        LinkIds linkIds = new LinkIds(dictionary);
+        FleetSpecification fleet = new FleetSpecificationImpl();
+        for (int i = 0; i < records; i++) {
+            fleet.addVehicleSpecification(ImmutableDvrpVehicleSpecification.newBuilder()
+                    .id(Id.create(dictionary[buffer.getInt()], DvrpVehicle.class))
+                    .startLinkId(linkIds.get(buffer.getInt()))
+                    .capacity(buffer.getInt())
+                    .serviceBeginTime(buffer.getDouble())
+                    .serviceEndTime(buffer.getDouble())
+                    .build());
+        }
+        return fleet;
+    }
+
+    /**
+     * @return true if the binary file records the size and the sha256 of the source file, i.e. it is converted from
+     * the current version of the source file. The size is compared first, so the source file is only read if the
+     * size matches.
+     */
+    public static boolean isConvertedFrom(Path file, Path sourceFile) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC_NUMBER || buffer.getInt() != VERSION) {
+            return false;
+        }
+        buffer.position(16);
+        long sourceSize = buffer.getLong();
+        byte[] checksum = new byte[buffer.getInt()];
+        buffer.get(checksum);
+        return sourceSize == Files.size(sourceFile) &&
+                new String(checksum, StandardCharsets.UTF_8).equals(ScenarioArtifactCache.sha256(sourceFile));
+    }
+
+    private static void writeHeader(DataOutputStream out, int type, int records, Path sourceFile) throws IOException {
+        out.writeInt(MAGIC_NUMBER);
+        out.writeInt(VERSION);
+        out.writeInt(type);
+        out.writeInt(records);
+        byte[] checksum = sourceFile == null ? new byte[0] : ScenarioArtifactCache.sha256(sourceFile).getBytes(StandardCharsets.UTF_8);
+        out.writeLong(sourceFile == null ? -1 : Files.size(sourceFile));
+        out.writeInt(checksum.length);
+        out.write(checksum);
+    }
+
+    private static int readHeader(MappedByteBuffer buffer, int expectedType, Path file) {
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC_NUMBER) {
+            throw new IllegalArgumentException(file + " is not a binary DRT file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException(file + " has the unsupported version " + version);
+        }
+        int type = buffer.getInt();
+        if (type != expectedType) {
+            throw new IllegalArgumentException(file + " contains " + (type == DEMAND ? "demand" : "a fleet") +
+                    ", but " + (expectedType == DEMAND ? "demand" : "a fleet") + " is expected");
+        }
+        int records = buffer.getInt();
+        // Skip the source size and checksum
+        buffer.getLong();
+        buffer.position(buffer.position() + buffer.getInt());
+        return records;
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(file + " is too large to be mapped into memory");
+            }
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static String[] readDictionary(MappedByteBuffer buffer) {
+        String[] dictionary = new String[buffer.getInt()];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < dictionary.length; i++) {
+            int length = buffer.getInt();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(bytes, 0, length);
+            dictionary[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return dictionary;
+    }
+
+    private static class Dictionary {
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        private int add(String value) {
+            return indices.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(values.size());
+            for (String value : values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Link ids of the dictionary, created on first use. Many records refer to the same links.
+     */
+    private static class LinkIds {
+        private final String[] dictionary;
+        private final List<Id<Link>> ids;
+
+        private LinkIds(String[] dictionary) {
+            this.dictionary = dictionary;
+            this.ids = new ArrayList<>(Collections.nCopies(dictionary.length, null));
+        }
+
+        private Id<Link> get(int index) {
+            Id<Link> id = ids.get(index);
+            if (id == null) {
+                id = Id.createLinkId(dictionary[index]);
+                ids.set(index, id);
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.matsim.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.contrib.drt.run.MultiModeDrtConfigGroup;
+import org.matsim.contrib.dvrp.fleet.FleetSpecification;
+import org.matsim.contrib.dvrp.run.AbstractDvrpModeModule;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.config.groups.PlansConfigGroup;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.scenario.ScenarioUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Uses the binary versions (see {@link DrtBinaryFormat}) of the plans file and of the DRT fleet files of a config
+ * instead of the XML files, if they exist next to the XML files and are converted from the current XML files (same
+ * size and sha256). The config is not changed, so the output config still refers to the XML files. Usage:
+ * <ol>
+ *     <li>{@link #prepare(Config)} to find the binary files</li>
+ *     <li>{@link #loadScenario(Scenario)} instead of {@link ScenarioUtils#loadScenario(Scenario)}</li>
+ *     <li>{@link #install(Controler)} to override the fleet specifications</li>
+ * </ol>
+ */
+public class DrtBinaryInputs {
+    private static final Logger log = LogManager.getLogger(DrtBinaryInputs.class);
+
+    private final Path demandFile;
+    private final Map<String, Path> fleetFiles;
+
+    private DrtBinaryInputs(Path demandFile, Map<String, Path> fleetFiles) {
+        this.demandFile = demandFile;
+        this.fleetFiles = fleetFiles;
+    }
+
+    public static DrtBinaryInputs prepare(Config config) {
+        Path demandFile = findBinaryFile(config.getContext(), config.plans().getInputFile());
+        if (demandFile != null) {
+            log.info("Using the binary demand file " + demandFile + " instead of " + config.plans().getInputFile());
+        } else if (config.plans().getInputFile() != null) {
+            log.info("Using the plans file " + config.plans().getInputFile());
+        }
+
+        Map<String, Path> fleetFiles = new LinkedHashMap<>();
+        for (DrtConfigGroup drtCfg : MultiModeDrtConfigGroup.get(config).getModalElements()) {
+            Path fleetFile = findBinaryFile(config.getContext(), drtCfg.vehiclesFile);
+            if (fleetFile != null) {
+                log.info("Using the binary fleet file " + fleetFile + " instead of " + drtCfg.vehiclesFile + " for mode " + drtCfg.mode);
+                fleetFiles.put(drtCfg.mode, fleetFile);
+            } else if (drtCfg.vehiclesFile != null) {
+                log.info("Using the fleet file " + drtCfg.vehiclesFile + " for mode " + drtCfg.mode);
+            }
+        }
+        return new DrtBinaryInputs(demandFile, fleetFiles);
+    }
+
+    /**
+     * Loads the scenario. If there is a binary demand file, the plans file of the config is only skipped while the
+     * scenario is loaded, and the demand is read from the binary file instead.
+     */
+    public void loadScenario(Scenario scenario) {
+        if (demandFile == null) {
+            ScenarioUtils.loadScenario(scenario);
+            return;
+        }
+        PlansConfigGroup plansConfig = scenario.getConfig().plans();
+        String plansFile = plansConfig.getInputFile();
+        plansConfig.setInputFile(null);
+        try {
+            ScenarioUtils.loadScenario(scenario);
+        } finally {
+            plansConfig.setInputFile(plansFile);
+        }
+        try {
+            DrtBinaryFormat.readDemand(demandFile, scenario.getPopulation());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void install(Controler controler) {
+        for (Map.Entry<String, Path> entry : fleetFiles.entrySet()) {
+            controler.addOverridingModule(new AbstractDvrpModeModule(entry.getKey()) {
+                @Override
+                public void install() {
+                    try {
+                        bindModal(FleetSpecification.class).toInstance(DrtBinaryFormat.readFleet(entry.getValue()));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the binary file next to the (local) input file, or null if there is none or if it is not converted from
+     * the current input file
+     */
+    private static Path findBinaryFile(URL context, String inputFile) {
+        if (inputFile == null) {
+            return null;
+        }
+        URL url = ConfigGroup.getInputFileURL(context, inputFile);
+        if (!url.getProtocol().equals("file")) {
+            return null;
+        }
+
+        try {
+            Path xmlFile = Path.of(url.toURI());
+            Path binaryFile = xmlFile.resolveSibling(DrtBinaryFormat.getBinaryFileName(xmlFile.getFileName().toString()));
+            if (!Files.exists(binaryFile)) {
+                return null;
+            }
+            if (Files.exists(xmlFile) && !DrtBinaryFormat.isConvertedFrom(binaryFile, xmlFile)) {
+                log.warn("The binary file " + binaryFile + " is not converted from the current " + xmlFile +
+                        " and will not be used. Convert the file again with ConvertToBinaryFormat.");
+                return null;
+            }
+            return binaryFile;
+        } catch (URISyntaxException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
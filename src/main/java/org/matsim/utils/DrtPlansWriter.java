@@ -0,0 +1,122 @@
+package org.matsim.utils;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.misc.Time;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Streaming writer for DRT plans files. Each request is written directly as a person with one selected plan
+ * (from activity with end time, leg, to activity), in the same format as the {@code PopulationWriter} (population_v6)
+ * would write it, but without creating the population in memory. The person ids are the prefix followed by a counter
+ * that starts at 0 (or a given number). The file is compressed according to its extension (e.g. .gz).
+ */
+public class DrtPlansWriter implements Closeable {
+    public static final String ACTIVITY_TYPE = "dummy";
+    private static final String SEPARATOR = "<!-- ====================================================================== -->";
+
+    private final BufferedWriter writer;
+    private final String personIdPrefix;
+    private int counter = 0;
+
+    public DrtPlansWriter(String filename, String personIdPrefix) {
+        this(IOUtils.getBufferedWriter(filename), personIdPrefix);
+    }
+
+    /**
+     * @param writer writer of the (already compressed, if required) output, e.g. from {@link OutputOptions#getWriter}
+     */
+    public DrtPlansWriter(BufferedWriter writer, String personIdPrefix) {
+        this.writer = writer;
+        this.personIdPrefix = personIdPrefix;
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+            writer.write("<!DOCTYPE population SYSTEM \"http://www.matsim.org/files/dtd/population_v6.dtd\">\n\n");
+            writer.write("<population>\n\n\n\n" + SEPARATOR + "\n\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes all the requests of the table to the file.
+     */
+    public static void write(DrtRequestTable requests, String personIdPrefix, String filename) {
+        try (DrtPlansWriter writer = new DrtPlansWriter(filename, personIdPrefix)) {
+            writer.write(requests);
+        }
+    }
+
+    public static void write(DrtRequestTable requests, String personIdPrefix, BufferedWriter bufferedWriter) {
+        try (DrtPlansWriter writer = new DrtPlansWriter(bufferedWriter, personIdPrefix)) {
+            writer.write(requests);
+        }
+    }
+
+    public void write(DrtRequestTable requests) {
+        for (int i = 0; i < requests.size(); i++) {
+            write(requests.getDepartureTime(i), requests.getFromLinkId(i), requests.getToLinkId(i), requests.getMode(i));
+        }
+    }
+
+    public void write(double departureTime, Id<Link> fromLinkId, Id<Link> toLinkId) {
+        write(departureTime, fromLinkId, toLinkId, TransportMode.drt);
+    }
+
+    public void write(double departureTime, Id<Link> fromLinkId, Id<Link> toLinkId, String mode) {
+        write(counter, departureTime, fromLinkId, toLinkId, mode);
+    }
+
+    /**
+     * Writes the request with the given number (instead of the counter) after the prefix as person id, e.g. to keep
+     * the person ids of the full demand in a sample of it.
+     */
+    public void write(int personNumber, double departureTime, Id<Link> fromLinkId, Id<Link> toLinkId, String mode) {
+        try {
+            writer.write("\t<person id=\"" + encode(personIdPrefix + personNumber) + "\">\n");
+            writer.write("\t\t<plan selected=\"yes\">\n");
+            writer.write("\t\t\t<activity type=\"" + ACTIVITY_TYPE + "\" link=\"" + encode(fromLinkId.toString()) +
+                    "\" end_time=\"" + Time.writeTime(departureTime) + "\" >\n");
+            writer.write("\t\t\t</activity>\n");
+            writer.write("\t\t\t<leg mode=\"" + encode(mode) + "\">\n");
+            writer.write("\t\t\t</leg>\n");
+            writer.write("\t\t\t<activity type=\"" + ACTIVITY_TYPE + "\" link=\"" + encode(toLinkId.toString()) + "\" >\n");
+            writer.write("\t\t\t</activity>\n");
+            writer.write("\t\t</plan>\n\n");
+            writer.write("\t</person>\n\n" + SEPARATOR + "\n\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        counter++;
+    }
+
+    /**
+     * @return number of persons (i.e. requests) written so far
+     */
+    public int getNumberOfPersons() {
+        return counter;
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.write("</population>\n");
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String encode(String value) {
+        if (value.indexOf('&') < 0 && value.indexOf('<') < 0 && value.indexOf('>') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,87 @@
+package org.matsim.utils;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact in-memory representation of DRT requests, i.e. single-trip plans (from activity, leg, to activity).
+ * Instead of a Person/Plan/Activity/Leg object graph, each request is stored as a row of primitive columns: departure
+ * time, the indices of the (interned) from and to link ids and the index of the mode. One request needs about 17
+ * bytes. Use {@link DrtPlansWriter} to write the table as plans file.
+ */
+public class DrtRequestTable {
+    private double[] departureTimes;
+    private int[] fromLinks;
+    private int[] toLinks;
+    private byte[] modes;
+    private final List<String> modeNames = new ArrayList<>();
+    private int size = 0;
+
+    public DrtRequestTable() {
+        this(1024);
+    }
+
+    public DrtRequestTable(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        departureTimes = new double[capacity];
+        fromLinks = new int[capacity];
+        toLinks = new int[capacity];
+        modes = new byte[capacity];
+    }
+
+    public void add(double departureTime, Id<Link> fromLinkId, Id<Link> toLinkId) {
+        add(departureTime, fromLinkId, toLinkId, TransportMode.drt);
+    }
+
+    public void add(double departureTime, Id<Link> fromLinkId, Id<Link> toLinkId, String mode) {
+        if (size == departureTimes.length) {
+            int capacity = size + (size >> 1);
+            departureTimes = Arrays.copyOf(departureTimes, capacity);
+            fromLinks = Arrays.copyOf(fromLinks, capacity);
+            toLinks = Arrays.copyOf(toLinks, capacity);
+            modes = Arrays.copyOf(modes, capacity);
+        }
+        departureTimes[size] = departureTime;
+        fromLinks[size] = fromLinkId.index();
+        toLinks[size] = toLinkId.index();
+        modes[size] = getModeIndex(mode);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getDepartureTime(int request) {
+        return departureTimes[request];
+    }
+
+    public Id<Link> getFromLinkId(int request) {
+        return Id.get(fromLinks[request], Link.class);
+    }
+
+    public Id<Link> getToLinkId(int request) {
+        return Id.get(toLinks[request], Link.class);
+    }
+
+    public String getMode(int request) {
+        return modeNames.get(modes[request]);
+    }
+
+    private byte getModeIndex(String mode) {
+        int index = modeNames.indexOf(mode);
+        if (index < 0) {
+            if (modeNames.size() == Byte.MAX_VALUE) {
+                throw new IllegalStateException("Too many different modes in the request table");
+            }
+            modeNames.add(mode);
+            index = modeNames.size() - 1;
+        }
+        return (byte) index;
+    }
+}
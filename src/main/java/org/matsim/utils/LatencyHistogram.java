@@ -0,0 +1,95 @@
+package org.matsim.utils;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative long values (e.g. durations in microseconds) with a fixed memory footprint and a relative
+ * error below 1.6 %, similar to HdrHistogram. Values below 128 are counted exactly; larger values are counted in
+ * buckets of 64 sub-buckets per power of two. Recording is a few arithmetic operations and an array increment,
+ * without allocation.
+ * <p>
+ * Not thread-safe: each histogram should be recorded from one thread at a time.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // per power of two
+    private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS; // values counted exactly
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long totalCount;
+    private double sum;
+    private long max;
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    public void record(long value, long count) {
+        if (count <= 0) {
+            return;
+        }
+        value = Math.max(value, 0);
+        counts[getBucket(value)] += count;
+        totalCount += count;
+        sum += (double) value * count;
+        max = Math.max(max, value);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile in [0, 100]
+     * @return the highest value that is counted in the same bucket as the value at the percentile (i.e. an upper
+     * bound within the precision of the histogram), but not more than the maximum recorded value
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long counted = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counted += counts[bucket];
+            if (counted >= rank) {
+                return Math.min(getHighestValue(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    static int getBucket(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS; // >= 1
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS; // mantissa in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long getHighestValue(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long mantissa = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,145 @@
+package org.matsim.utils;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.utils.geometry.CoordUtils;
+
+import java.util.Collection;
+
+/**
+ * KD-tree over the to-node coordinates of a fixed set of candidate links (e.g. the links left after filtering the
+ * network). The lookup returns exactly the link a linear scan over the candidates would return: the first link (in
+ * the order of the given collection) with the smallest euclidean distance between the coordinate and its to-node.
+ * The index is built once and can be queried from multiple threads.
+ */
+public class LinkSpatialIndex {
+    private final Link[] links;
+    private final Coord[] coords; // to-node coordinates, in tree order
+    private final int[] candidateIndices; // position of the link in the original candidate collection, in tree order
+
+    public LinkSpatialIndex(Collection<? extends Link> candidateLinks) {
+        int size = candidateLinks.size();
+        Link[] candidates = candidateLinks.toArray(new Link[0]);
+        this.links = new Link[size];
+        this.coords = new Coord[size];
+        this.candidateIndices = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            candidateIndices[i] = i;
+            coords[i] = candidates[i].getToNode().getCoord();
+        }
+        build(0, size, 0);
+        for (int i = 0; i < size; i++) {
+            links[i] = candidates[candidateIndices[i]];
+        }
+    }
+
+    public int size() {
+        return links.length;
+    }
+
+    /**
+     * @return the candidate link whose to-node is closest to the coordinate, or null if there are no candidates
+     */
+    public Link getNearestLink(Coord coord) {
+        if (links.length == 0) {
+            return null;
+        }
+        Nearest nearest = new Nearest();
+        search(coord, 0, links.length, 0, nearest);
+        return links[nearest.slot];
+    }
+
+    private void build(int from, int to, int depth) {
+        if (to - from <= 1) {
+            return;
+        }
+        int median = (from + to) >>> 1;
+        select(from, to - 1, median, depth & 1);
+        build(from, median, depth + 1);
+        build(median + 1, to, depth + 1);
+    }
+
+    private void search(Coord coord, int from, int to, int depth, Nearest nearest) {
+        if (from >= to) {
+            return;
+        }
+        int median = (from + to) >>> 1;
+        nearest.offer(median, CoordUtils.calcEuclideanDistance(coord, coords[median]), candidateIndices[median]);
+
+        double planeDistance = axisValue(coord, depth & 1) - axisValue(coords[median], depth & 1);
+        boolean nearSideIsLeft = planeDistance < 0;
+        if (nearSideIsLeft) {
+            search(coord, from, median, depth + 1, nearest);
+        } else {
+            search(coord, median + 1, to, depth + 1, nearest);
+        }
+        // Links on the other side may still tie with the current best one, hence <= instead of <
+        if (Math.abs(planeDistance) <= nearest.distance) {
+            if (nearSideIsLeft) {
+                search(coord, median + 1, to, depth + 1, nearest);
+            } else {
+                search(coord, from, median, depth + 1, nearest);
+            }
+        }
+    }
+
+    /**
+     * Quickselect on the slots [left, right], so that slot k holds the median along the axis, all slots before it are
+     * not larger and all slots after it are not smaller.
+     */
+    private void select(int left, int right, int k, int axis) {
+        while (right > left) {
+            double pivot = axisValue(coords[(left + right) >>> 1], axis);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (axisValue(coords[i], axis) < pivot) {
+                    i++;
+                }
+                while (axisValue(coords[j], axis) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        Coord coord = coords[i];
+        coords[i] = coords[j];
+        coords[j] = coord;
+        int candidateIndex = candidateIndices[i];
+        candidateIndices[i] = candidateIndices[j];
+        candidateIndices[j] = candidateIndex;
+    }
+
+    private static double axisValue(Coord coord, int axis) {
+        return axis == 0 ? coord.getX() : coord.getY();
+    }
+
+    private static class Nearest {
+        private int slot = -1;
+        private double distance = Double.MAX_VALUE;
+        private int candidateIndex = Integer.MAX_VALUE;
+
+        private void offer(int slot, double distance, int candidateIndex) {
+            if (distance < this.distance || (distance == this.distance && candidateIndex < this.candidateIndex)) {
+                this.slot = slot;
+                this.distance = distance;
+                this.candidateIndex = candidateIndex;
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.matsim.utils;
+
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationWriter;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.io.IOUtils;
+import picocli.CommandLine;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Command line options for writing the (large) output files. Use as {@code @CommandLine.Mixin}.
+ * <p>
+ * With more than one output thread, {@code .gz} files are compressed by the {@link ParallelGzipOutputStream}. All
+ * other files, and all files with a single output thread, are written by the standard MATSim writers.
+ */
+public class OutputOptions {
+    @CommandLine.Option(names = "--output-threads", description = "number of threads for compressing the .gz outputs. " +
+            "With more than one thread, the outputs are compressed in independent blocks", defaultValue = "1")
+    private int threads = 1;
+
+    @CommandLine.Option(names = "--compression-level", description = "gzip compression level of the outputs written " +
+            "with more than one thread, from 1 (fastest) to 9 (smallest)", defaultValue = "6")
+    private int compressionLevel = 6;
+
+    public OutputOptions() {
+    }
+
+    public OutputOptions(int threads, int compressionLevel) {
+        this.threads = threads;
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * @return whether the file is compressed on several threads
+     */
+    public boolean isParallel(String filename) {
+        return threads > 1 && filename.endsWith(".gz");
+    }
+
+    public OutputStream getOutputStream(String filename) {
+        if (!isParallel(filename)) {
+            return IOUtils.getOutputStream(IOUtils.getFileUrl(filename), false);
+        }
+        try {
+            return new ParallelGzipOutputStream(Files.newOutputStream(Path.of(filename)), threads, compressionLevel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public BufferedWriter getWriter(String filename) {
+        if (!isParallel(filename)) {
+            return IOUtils.getBufferedWriter(filename);
+        }
+        return new BufferedWriter(new OutputStreamWriter(getOutputStream(filename), StandardCharsets.UTF_8));
+    }
+
+    public void writePopulation(Population population, String filename) {
+        if (!isParallel(filename)) {
+            new PopulationWriter(population).write(filename);
+            return;
+        }
+        try (OutputStream out = getOutputStream(filename)) {
+            new PopulationWriter(population).write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The network writer only writes to files, so the network is written uncompressed to a temporary file first,
+     * which is then compressed in parallel.
+     */
+    public void writeNetwork(Network network, String filename) {
+        if (!isParallel(filename)) {
+            NetworkUtils.writeNetwork(network, filename);
+            return;
+        }
+        try {
+            Path uncompressed = createTemporaryFile(filename);
+            NetworkUtils.writeNetwork(network, uncompressed.toString());
+            compress(uncompressed, filename);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return an empty uncompressed xml file next to the output file, for writers that only write to files
+     */
+    public Path createTemporaryFile(String filename) throws IOException {
+        Path parent = Path.of(filename).toAbsolutePath().getParent();
+        return Files.createTempFile(parent, Path.of(filename).getFileName().toString(), ".xml");
+    }
+
+    /**
+     * Compresses the uncompressed file to the output file and deletes it.
+     */
+    public void compress(Path uncompressed, String filename) throws IOException {
+        try (InputStream in = Files.newInputStream(uncompressed); OutputStream out = getOutputStream(filename)) {
+            in.transferTo(out);
+        }
+        Files.delete(uncompressed);
+    }
+}
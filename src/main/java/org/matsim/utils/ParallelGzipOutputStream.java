@@ -0,0 +1,155 @@
+package org.matsim.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip output stream that compresses on several threads. The data is cut into blocks of a fixed size, each block is
+ * compressed as an independent gzip member, and the members are written in their original order. A file of
+ * concatenated gzip members is a valid gzip file, which is read by the standard gzip tools and the MATSim readers
+ * (i.e. {@link java.util.zip.GZIPInputStream}) like a file compressed in one piece. The output is slightly larger,
+ * as the compression starts anew for each block.
+ * <p>
+ * At most two blocks per thread are held in memory. {@link #flush()} does not cut the current block, so that the
+ * size of the blocks (and thus the output) does not depend on how often the caller flushes.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    private final OutputStream out;
+    private final int level;
+    private final ExecutorService executor;
+    private final int maxPendingBlocks;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private byte[] block;
+    private int position = 0;
+    private boolean empty = true;
+    private boolean closed = false;
+
+    /**
+     * @param level compression level of {@link java.util.zip.Deflater}, from 1 (fastest) to 9 (smallest), or -1 for
+     *              the default level
+     */
+    public ParallelGzipOutputStream(OutputStream out, int threads, int level, int blockSize) {
+        if (threads < 1 || blockSize < 1) {
+            throw new IllegalArgumentException("The number of threads and the block size must be positive");
+        }
+        this.out = out;
+        this.level = level;
+        this.block = new byte[blockSize];
+        this.maxPendingBlocks = 2 * threads;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "parallel-gzip");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ParallelGzipOutputStream(OutputStream out, int threads, int level) {
+        this(out, threads, level, DEFAULT_BLOCK_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[position++] = (byte) b;
+        if (position == block.length) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int copied = Math.min(length, block.length - position);
+            System.arraycopy(bytes, offset, block, position, copied);
+            position += copied;
+            offset += copied;
+            length -= copied;
+            if (position == block.length) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Writes the blocks that are compressed already. The current block is not cut.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pendingBlocks.isEmpty() && pendingBlocks.peek().isDone()) {
+            writeBlock(pendingBlocks.poll());
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (empty && position == 0) {
+                // An empty gzip member, so that an empty output is still a valid gzip file
+                pendingBlocks.add(executor.submit(() -> compress(block, 0, level)));
+            } else {
+                submitBlock();
+            }
+            while (!pendingBlocks.isEmpty()) {
+                writeBlock(pendingBlocks.poll());
+            }
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if (position == 0) {
+            return;
+        }
+        byte[] data = block;
+        int length = position;
+        pendingBlocks.add(executor.submit(() -> compress(data, length, level)));
+        empty = false;
+        block = new byte[block.length];
+        position = 0;
+
+        // Write the finished blocks, and wait for the oldest one if too many blocks are pending
+        while (!pendingBlocks.isEmpty() && (pendingBlocks.size() > maxPendingBlocks || pendingBlocks.peek().isDone())) {
+            writeBlock(pendingBlocks.poll());
+        }
+    }
+
+    private void writeBlock(Future<byte[]> compressedBlock) throws IOException {
+        try {
+            out.write(compressedBlock.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a compressed block");
+        } catch (ExecutionException e) {
+            throw new IOException("Compressing a block failed", e.getCause());
+        }
+    }
+
+    static byte[] compress(byte[] data, int length, int level) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 65536) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(data, 0, length);
+        }
+        return compressed.toByteArray();
+    }
+}
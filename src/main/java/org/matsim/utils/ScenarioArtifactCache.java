@@ -0,0 +1,323 @@
+package org.matsim.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Local, content-addressed cache for the scenario files on the public SVN (configs, networks, plans).
+ * <p>
+ * The files are stored as {@code objects/<sha256 of content>/<file name>}, so that the MATSim readers still recognize
+ * the file type by its extension. For each URL, {@code urls/<sha256 of url>} records the checksum, the size of the
+ * content and the URL. A cached file is reused without any network access as long as the index entry belongs to the
+ * URL and the file exists with the recorded size and checksum. Otherwise, it is fetched again.
+ * <p>
+ * Downloads are written to a {@code .part} file first, which is locked against other processes. An interrupted
+ * download is resumed on the next run: a HTTP range request with If-Range (ETag or Last-Modified of the interrupted
+ * download), so that the server sends the whole file again if it has changed, or an offset copy after checking that
+ * the partial copy is a prefix of the source. The final size is checked against the size reported by the source, and
+ * the checksum against the expected checksum, if given. Optionally, a local mirror of the public SVN (a directory with
+ * the same layout as {@value #SVN_ROOT}) is used instead of the remote server.
+ */
+public class ScenarioArtifactCache {
+    private static final Logger log = LogManager.getLogger(ScenarioArtifactCache.class);
+    public static final String SVN_ROOT = "https://svn.vsp.tu-berlin.de/repos/public-svn/";
+
+    // File locks are held by the JVM, so the threads of one JVM are serialized separately
+    private static final Map<Path, ReentrantLock> DOWNLOAD_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path cacheDirectory;
+    private final Path mirror;
+
+    /**
+     * @param mirror local copy of the public SVN, or null to download from the remote server
+     */
+    public ScenarioArtifactCache(Path cacheDirectory, Path mirror) {
+        this.cacheDirectory = cacheDirectory;
+        this.mirror = mirror;
+    }
+
+    /**
+     * @return the local path of the file behind the url, downloading (or copying) it first if it is not cached yet
+     */
+    public Path fetch(String url) throws IOException {
+        return fetch(url, null);
+    }
+
+    /**
+     * @param expectedChecksum sha256 of the content (hex), or null if it is not known in advance
+     * @return the local path of the file behind the url, downloading (or copying) it first if it is not cached yet
+     */
+    public Path fetch(String url, String expectedChecksum) throws IOException {
+        String fileName = url.substring(url.lastIndexOf('/') + 1);
+        String urlHash = sha256(url);
+        Path indexEntry = cacheDirectory.resolve("urls").resolve(urlHash);
+        Path cachedFile = findCachedFile(url, indexEntry, fileName, expectedChecksum);
+        if (cachedFile != null) {
+            return cachedFile;
+        }
+
+        Path downloads = cacheDirectory.resolve("downloads");
+        Files.createDirectories(downloads);
+        Path lockFile = downloads.resolve(urlHash + ".lock");
+        ReentrantLock threadLock = DOWNLOAD_LOCKS.computeIfAbsent(lockFile.toAbsolutePath(), file -> new ReentrantLock());
+        threadLock.lock();
+        try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+            // Another process may have fetched the file in the meantime
+            cachedFile = findCachedFile(url, indexEntry, fileName, expectedChecksum);
+            if (cachedFile != null) {
+                return cachedFile;
+            }
+            return download(url, urlHash, indexEntry, fileName, expectedChecksum);
+        } finally {
+            threadLock.unlock();
+        }
+    }
+
+    /**
+     * @return sha256 of the content behind the url, as recorded in the cache index (the cached file is not read). If
+     * the url is not cached yet, it is fetched first.
+     */
+    public String getChecksum(String url) throws IOException {
+        List<String> entry = readIndexEntry(url, cacheDirectory.resolve("urls").resolve(sha256(url)));
+        if (entry != null) {
+            return entry.get(0);
+        }
+        return fetch(url).getParent().getFileName().toString();
+    }
+
+    /**
+     * @return checksum, size and url of the index entry, or null if there is no valid index entry for the url
+     */
+    private static List<String> readIndexEntry(String url, Path indexEntry) throws IOException {
+        if (!Files.exists(indexEntry)) {
+            return null;
+        }
+        List<String> entry = Files.readAllLines(indexEntry, StandardCharsets.UTF_8);
+        if (entry.size() != 3 || !entry.get(0).matches("[0-9a-f]{64}") || !entry.get(1).matches("\\d+")
+                || !entry.get(2).equals(url)) {
+            log.warn("Invalid cache index entry " + indexEntry + " for " + url + ". The file will be fetched again.");
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * @return the cached file of the url, or null if there is no valid index entry or the file is missing or corrupt
+     */
+    private Path findCachedFile(String url, Path indexEntry, String fileName, String expectedChecksum) throws IOException {
+        List<String> entry = readIndexEntry(url, indexEntry);
+        if (entry == null) {
+            return null;
+        }
+        String checksum = entry.get(0);
+        if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(checksum)) {
+            log.warn("Cached file for " + url + " has the checksum " + checksum + " instead of " + expectedChecksum +
+                    ". It will be fetched again.");
+            return null;
+        }
+        Path cachedFile = getObjectPath(checksum, fileName);
+        if (Files.exists(cachedFile) && Files.size(cachedFile) == Long.parseLong(entry.get(1))
+                && sha256(cachedFile).equals(checksum)) {
+            log.info("Using cached file " + cachedFile + " for " + url);
+            return cachedFile;
+        }
+        log.warn("Cached file for " + url + " is missing or corrupt. It will be fetched again.");
+        Files.deleteIfExists(cachedFile);
+        return null;
+    }
+
+    private Path download(String url, String urlHash, Path indexEntry, String fileName, String expectedChecksum) throws IOException {
+        Path partFile = cacheDirectory.resolve("downloads").resolve(urlHash + ".part");
+        Path validatorFile = cacheDirectory.resolve("downloads").resolve(urlHash + ".validator");
+        Path mirroredFile = getMirroredFile(url);
+        if (mirroredFile != null) {
+            log.info("Copying " + mirroredFile + " into the cache");
+            copyResumable(mirroredFile, partFile);
+        } else {
+            log.info("Downloading " + url + " into the cache");
+            downloadResumable(new URL(url), partFile, validatorFile);
+        }
+
+        String checksum = sha256(partFile);
+        long size = Files.size(partFile);
+        if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(checksum)) {
+            Files.delete(partFile);
+            Files.deleteIfExists(validatorFile);
+            throw new IOException("Checksum of " + url + " is " + checksum + " instead of the expected " + expectedChecksum);
+        }
+        Path cachedFile = getObjectPath(checksum, fileName);
+        Files.createDirectories(cachedFile.getParent());
+        if (Files.exists(cachedFile) && Files.size(cachedFile) == size && sha256(cachedFile).equals(checksum)) {
+            Files.delete(partFile); // identical content is already cached (e.g. from another url)
+        } else {
+            Files.move(partFile, cachedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.deleteIfExists(validatorFile);
+
+        Files.createDirectories(indexEntry.getParent());
+        Path temporaryEntry = indexEntry.resolveSibling(indexEntry.getFileName() + ".part");
+        Files.write(temporaryEntry, List.of(checksum, Long.toString(size), url), StandardCharsets.UTF_8);
+        Files.move(temporaryEntry, indexEntry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return cachedFile;
+    }
+
+    private Path getObjectPath(String checksum, String fileName) {
+        return cacheDirectory.resolve("objects").resolve(checksum).resolve(fileName);
+    }
+
+    private Path getMirroredFile(String url) {
+        if (mirror == null || !url.startsWith(SVN_ROOT)) {
+            return null;
+        }
+        Path mirroredFile = mirror.resolve(url.substring(SVN_ROOT.length()));
+        if (!Files.exists(mirroredFile)) {
+            throw new IllegalArgumentException("File " + mirroredFile + " does not exist in the mirror " + mirror);
+        }
+        return mirroredFile;
+    }
+
+    private static void copyResumable(Path source, Path partFile) throws IOException {
+        long expectedSize = Files.size(source);
+        long existingSize = Files.exists(partFile) ? Files.size(partFile) : 0;
+        if (existingSize > expectedSize || (existingSize > 0 && !isPrefix(partFile, source))) {
+            log.info("Partial copy of " + source + " does not match the source. Copying it again.");
+            Files.delete(partFile);
+            existingSize = 0;
+        }
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long position = existingSize;
+            while (position < expectedSize) {
+                position += in.transferTo(position, expectedSize - position, out.position(position));
+            }
+        }
+        checkSize(partFile, expectedSize, source.toString());
+    }
+
+    /**
+     * @return true if the content of the (shorter) prefix file is the beginning of the file
+     */
+    private static boolean isPrefix(Path prefix, Path file) throws IOException {
+        byte[] prefixBuffer = new byte[1 << 16];
+        byte[] fileBuffer = new byte[1 << 16];
+        try (InputStream prefixIn = Files.newInputStream(prefix); InputStream fileIn = Files.newInputStream(file)) {
+            int length;
+            while ((length = prefixIn.readNBytes(prefixBuffer, 0, prefixBuffer.length)) > 0) {
+                if (fileIn.readNBytes(fileBuffer, 0, length) != length
+                        || !Arrays.equals(prefixBuffer, 0, length, fileBuffer, 0, length)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Resumes an interrupted download only with the validator (ETag or Last-Modified) of that download in an If-Range
+     * header. If the file has changed on the server, the server sends the whole file (200) and the download restarts.
+     */
+    private static void downloadResumable(URL url, Path partFile, Path validatorFile) throws IOException {
+        long existingSize = Files.exists(partFile) ? Files.size(partFile) : 0;
+        String validator = existingSize > 0 && Files.exists(validatorFile) ? Files.readString(validatorFile) : null;
+        URLConnection connection = url.openConnection();
+        boolean append = false;
+        if (connection instanceof HttpURLConnection httpConnection) {
+            if (validator != null) {
+                httpConnection.setRequestProperty("Range", "bytes=" + existingSize + "-");
+                httpConnection.setRequestProperty("If-Range", validator);
+            }
+            append = validator != null && httpConnection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+            if (append) {
+                String contentRange = httpConnection.getHeaderField("Content-Range");
+                if (contentRange == null || !contentRange.startsWith("bytes " + existingSize + "-")) {
+                    Files.delete(partFile);
+                    Files.deleteIfExists(validatorFile);
+                    throw new IOException("Unexpected range " + contentRange + " of " + url + ". Run again to restart the download.");
+                }
+                log.info("Resuming download of " + url + " at byte " + existingSize);
+            } else {
+                if (existingSize > 0) {
+                    log.info("Download of " + url + " cannot be resumed (the file may have changed). Restarting it.");
+                }
+                String newValidator = getValidator(httpConnection);
+                if (newValidator != null) {
+                    Files.writeString(validatorFile, newValidator);
+                } else {
+                    Files.deleteIfExists(validatorFile);
+                }
+            }
+        }
+
+        long contentLength = connection.getContentLengthLong();
+        long expectedSize = contentLength < 0 ? -1 : (append ? existingSize + contentLength : contentLength);
+        OpenOption[] openOptions = append ?
+                new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.APPEND} :
+                new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE};
+        try (InputStream in = connection.getInputStream(); OutputStream out = Files.newOutputStream(partFile, openOptions)) {
+            in.transferTo(out);
+        }
+        if (expectedSize >= 0) {
+            checkSize(partFile, expectedSize, url.toString());
+        }
+    }
+
+    /**
+     * @return strong ETag or Last-Modified of the response (usable in If-Range), or null
+     */
+    private static String getValidator(HttpURLConnection connection) {
+        String eTag = connection.getHeaderField("ETag");
+        if (eTag != null && !eTag.startsWith("W/")) {
+            return eTag;
+        }
+        return connection.getHeaderField("Last-Modified");
+    }
+
+    private static void checkSize(Path partFile, long expectedSize, String source) throws IOException {
+        long size = Files.size(partFile);
+        if (size != expectedSize) {
+            throw new IOException("Incomplete transfer of " + source + ": " + size + " of " + expectedSize +
+                    " bytes. Run again to resume.");
+        }
+    }
+
+    private static String sha256(String text) {
+        return HexFormat.of().formatHex(createDigest().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static String sha256(Path file) throws IOException {
+        MessageDigest digest = createDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
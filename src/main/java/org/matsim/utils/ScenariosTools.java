@@ -5,4 +5,14 @@ public class ScenariosTools {
 
     public enum UseCases {BERLIN_DRT, LEIPZIG_DRT, VULKANEIFEL_SCHOOL_TRANSPORT, KELHEIM_KEXI, ORANIENBURG}
 
+    public static String getConfigPath(UseCases useCase) {
+        return switch (useCase) {
+            case BERLIN_DRT -> "scenarios/berlin-drt/berlin-drt.config.xml";
+            case LEIPZIG_DRT -> "scenarios/leipzig-drt/leipzig-drt.config.xml";
+            case VULKANEIFEL_SCHOOL_TRANSPORT -> "scenarios/vulkaneifel-school-transport/vulkaneifel-school-transport.config.xml";
+            case KELHEIM_KEXI -> "scenarios/kelheim-kexi/kelheim-kexi.config.xml";
+            case ORANIENBURG -> "scenarios/oranienburg/oranienburg-drt.config.xml";
+        };
+    }
+
 }
@@ -0,0 +1,70 @@
+package org.matsim.utils;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.application.options.ShpOptions;
+import org.matsim.core.utils.geometry.geotools.MGC;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Service area (or study area) loaded once from a shape file. The geometry is prepared (indexed) for fast
+ * point-in-polygon tests, and the results for nodes and links are cached. A location is inside the service area
+ * if it is in the interior of the geometry, i.e. the same as {@code MGC.coord2Point(coord).within(geometry)}.
+ * The class can be used from multiple threads.
+ */
+public class ServiceArea {
+    private final PreparedGeometry geometry;
+    private final Map<Id<Node>, Boolean> nodeCache = new ConcurrentHashMap<>();
+    private final Map<Id<Link>, Boolean> linkCache = new ConcurrentHashMap<>();
+
+    public ServiceArea(Geometry geometry) {
+        this.geometry = PreparedGeometryFactory.prepare(geometry);
+    }
+
+    /**
+     * @return the service area defined by the shape file, or null if no shape file is specified
+     */
+    public static ServiceArea fromShp(ShpOptions shp) {
+        return shp.isDefined() ? new ServiceArea(shp.getGeometry()) : null;
+    }
+
+    public Geometry getGeometry() {
+        return geometry.getGeometry();
+    }
+
+    public boolean contains(Coord coord) {
+        return geometry.contains(MGC.coord2Point(coord));
+    }
+
+    public boolean contains(Node node) {
+        return nodeCache.computeIfAbsent(node.getId(), nodeId -> contains(node.getCoord()));
+    }
+
+    /**
+     * @return the ids of the nodes inside the service area, tested in parallel. The results are not cached, since
+     * each node is tested once and the returned set already holds them.
+     */
+    public Set<Id<Node>> getContainedNodes(Collection<? extends Node> nodes) {
+        return nodes.parallelStream()
+                .filter(node -> contains(node.getCoord()))
+                .map(Node::getId)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * @return true if both the from node and the to node of the link are inside the service area
+     */
+    public boolean contains(Link link) {
+        return linkCache.computeIfAbsent(link.getId(), linkId -> contains(link.getFromNode()) && contains(link.getToNode()));
+    }
+}
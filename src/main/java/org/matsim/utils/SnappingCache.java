@@ -0,0 +1,235 @@
+package org.matsim.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.network.NetworkUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Cache of {@link NetworkUtils#getNearestLink} for a (filtered) network, persisted in a file next to the network.
+ * <p>
+ * The coordinates are quantized to a square grid with the given resolution. The center of the grid cell is snapped,
+ * so the result does not depend on which coordinate of the cell is snapped first, and a cached result is the same as
+ * a new one. Each cell is packed into a long key, which maps to the index of the link.
+ * <p>
+ * The file records a hash of the network (ids and node coordinates of all links), the name of the filter and the
+ * resolution. A cache file that does not match is not used and is overwritten by {@link #save()}. The cache is not
+ * thread-safe.
+ * <p>
+ * Without a cache file, the coordinates are snapped directly (without quantization), as without the cache.
+ */
+public class SnappingCache {
+    private static final Logger log = LogManager.getLogger(SnappingCache.class);
+    public static final String EXTENSION = ".snapping-cache.bin";
+
+    private static final int MAGIC_NUMBER = 0x534e4150; // "SNAP"
+    private static final int VERSION = 1;
+
+    private final Network network;
+    private final Path file;
+    private final double resolution;
+    private final long hash;
+
+    private final List<Link> links = new ArrayList<>();
+    private final Map<Id<Link>, Integer> linkIndices = new HashMap<>();
+    private final LongIntMap cells = new LongIntMap();
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * @param file       cache file, e.g. from {@link #getCacheFile}, or null to snap directly
+     * @param filter     name of the filter applied to the network (part of the hash)
+     * @param resolution size of the grid cells [m]
+     */
+    public SnappingCache(Network network, Path file, String filter, double resolution) {
+        this.network = network;
+        this.file = file;
+        this.resolution = resolution;
+        this.hash = file == null ? 0 : Tools.mix64(hashNetwork(network) ^ hashString(filter) ^ Double.doubleToLongBits(resolution));
+        if (file != null && Files.exists(file)) {
+            try {
+                read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * @return the cache file for the network file and the filter, in the same folder as the network file
+     */
+    public static Path getCacheFile(String networkFile, String filter) {
+        Path networkPath = Path.of(networkFile);
+        String name = networkPath.getFileName().toString() + "." + filter.replaceAll("[^A-Za-z0-9_-]", "_") + EXTENSION;
+        return networkPath.toAbsolutePath().resolveSibling(name);
+    }
+
+    public Link getNearestLink(Coord coord) {
+        if (file == null) {
+            return NetworkUtils.getNearestLink(network, coord);
+        }
+        long cellX = (long) Math.floor(coord.getX() / resolution);
+        long cellY = (long) Math.floor(coord.getY() / resolution);
+        long key = (cellX << 32) | (cellY & 0xffffffffL);
+        int index = cells.get(key);
+        if (index >= 0) {
+            hits++;
+            return links.get(index);
+        }
+
+        misses++;
+        Coord center = new Coord((cellX + 0.5) * resolution, (cellY + 0.5) * resolution);
+        Link link = NetworkUtils.getNearestLink(network, center);
+        index = linkIndices.computeIfAbsent(link.getId(), id -> {
+            links.add(link);
+            return links.size() - 1;
+        });
+        cells.put(key, index);
+        return link;
+    }
+
+    /**
+     * @return number of coordinates that were not found in the cache
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Writes the cache file if new coordinates were snapped.
+     */
+    public void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        log.info("Snapping cache: " + hits + " hits, " + misses + " misses");
+        if (misses == 0) {
+            return;
+        }
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".part");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile), 1 << 16))) {
+            out.writeInt(MAGIC_NUMBER);
+            out.writeInt(VERSION);
+            out.writeLong(hash);
+            out.writeInt(links.size());
+            for (Link link : links) {
+                out.writeUTF(link.getId().toString());
+            }
+            out.writeInt(cells.size());
+            for (int slot = 0; slot < cells.keys.length; slot++) {
+                if (cells.values[slot] >= 0) {
+                    out.writeLong(cells.keys[slot]);
+                    out.writeInt(cells.values[slot]);
+                }
+            }
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void read() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC_NUMBER || in.readInt() != VERSION || in.readLong() != hash) {
+                log.warn(file + " does not match the network, the filter or the resolution. The coordinates are snapped anew.");
+                return;
+            }
+            int numberOfLinks = in.readInt();
+            for (int i = 0; i < numberOfLinks; i++) {
+                Link link = network.getLinks().get(Id.createLinkId(in.readUTF()));
+                linkIndices.put(link.getId(), links.size());
+                links.add(link);
+            }
+            int numberOfCells = in.readInt();
+            for (int i = 0; i < numberOfCells; i++) {
+                cells.put(in.readLong(), in.readInt());
+            }
+            log.info("Read " + numberOfCells + " snapped coordinates from " + file);
+        }
+    }
+
+    /**
+     * Hash of the ids and node coordinates of the links. It does not depend on the order of the links.
+     */
+    static long hashNetwork(Network network) {
+        long hash = network.getLinks().size();
+        for (Link link : network.getLinks().values()) {
+            long linkHash = hashString(link.getId().toString());
+            linkHash = Tools.mix64(linkHash ^ Double.doubleToLongBits(link.getFromNode().getCoord().getX()));
+            linkHash = Tools.mix64(linkHash ^ Double.doubleToLongBits(link.getFromNode().getCoord().getY()));
+            linkHash = Tools.mix64(linkHash ^ Double.doubleToLongBits(link.getToNode().getCoord().getX()));
+            linkHash = Tools.mix64(linkHash ^ Double.doubleToLongBits(link.getToNode().getCoord().getY()));
+            hash += linkHash;
+        }
+        return Tools.mix64(hash);
+    }
+
+    private static long hashString(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L; // FNV-1a
+        }
+        return Tools.mix64(hash);
+    }
+
+    /**
+     * Open addressing hash map from long keys to non-negative int values (-1 marks an empty slot), without boxing.
+     */
+    private static class LongIntMap {
+        private long[] keys = new long[1024];
+        private int[] values = newValues(1024);
+        private int size = 0;
+
+        private static int[] newValues(int capacity) {
+            int[] values = new int[capacity];
+            Arrays.fill(values, -1);
+            return values;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private int get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = (int) Tools.mix64(key) & mask; values[slot] >= 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return -1;
+        }
+
+        private void put(long key, int value) {
+            if (2 * (size + 1) > keys.length) {
+                long[] oldKeys = keys;
+                int[] oldValues = values;
+                keys = new long[oldKeys.length * 2];
+                values = newValues(oldKeys.length * 2);
+                size = 0;
+                for (int slot = 0; slot < oldKeys.length; slot++) {
+                    if (oldValues[slot] >= 0) {
+                        put(oldKeys[slot], oldValues[slot]);
+                    }
+                }
+            }
+            int mask = keys.length - 1;
+            int slot = (int) Tools.mix64(key) & mask;
+            while (values[slot] >= 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (values[slot] < 0) {
+                size++;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.matsim.utils;
+
+import org.matsim.api.core.v01.network.Network;
+import picocli.CommandLine;
+
+/**
+ * Command line options for the {@link SnappingCache}. Use as {@code @CommandLine.Mixin}.
+ */
+public class SnappingCacheOptions {
+    @CommandLine.Option(names = "--snapping-cache", description = "cache the snapped coordinates in a file next to " +
+            "the network and reuse them in the next runs. The coordinates are quantized to --snapping-resolution", defaultValue = "false")
+    private boolean enabled;
+
+    @CommandLine.Option(names = "--snapping-resolution", description = "resolution of the snapping cache [m]", defaultValue = "1.0")
+    private double resolution = 1.0;
+
+    /**
+     * @param network     the (filtered) network the coordinates are snapped to
+     * @param networkFile the file the network is read from
+     * @param filter      name of the filter applied to the network
+     */
+    public SnappingCache getCache(Network network, String networkFile, String filter) {
+        if (!enabled) {
+            return new SnappingCache(network, null, filter, resolution);
+        }
+        return new SnappingCache(network, SnappingCache.getCacheFile(networkFile, filter), filter, resolution);
+    }
+}
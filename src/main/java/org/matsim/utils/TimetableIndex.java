@@ -0,0 +1,136 @@
+package org.matsim.utils;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Arrival and departure times of a station, grouped by route. The times of each group and direction are stored as a
+ * sorted array, and the nearest time is found by binary search. If two different times are equally near, the one
+ * that appears first in the timetable file is returned (i.e. the same result as a linear scan over the file).
+ */
+public class TimetableIndex {
+    public static final String OTHERS = "others";
+    public static final String ALL_ROUTES = "all";
+
+    public enum Type {ARRIVAL, DEPARTURE}
+
+    private final List<String> groups;
+    private final double[][] times; // per group and type: distinct times in ascending order
+    private final int[][] firstAppearances; // per group and type: row in the timetable where the time first appears
+
+    private TimetableIndex(List<String> groups, double[][] times, int[][] firstAppearances) {
+        this.groups = groups;
+        this.times = times;
+        this.firstAppearances = firstAppearances;
+    }
+
+    /**
+     * Reads the timetable csv file (columns: ..., route, time, ..., type). Each of the listed routes forms its own
+     * group, all the other routes are pooled into the group {@value #OTHERS}. If the routes only contain
+     * {@value #ALL_ROUTES}, every route in the timetable becomes its own group (in the order of first appearance).
+     */
+    public static TimetableIndex read(Path timetable, List<String> routes) throws IOException {
+        boolean allRoutes = routes.size() == 1 && routes.get(0).equals(ALL_ROUTES);
+        Map<String, List<double[]>> entriesPerGroup = new LinkedHashMap<>(); // entry: time, type, row
+        if (!allRoutes) {
+            routes.forEach(route -> entriesPerGroup.put(route, new ArrayList<>()));
+        }
+
+        try (CSVParser parser = new CSVParser(Files.newBufferedReader(timetable), CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+            int typeColumn = Tools.getColumnIndex(parser, "type");
+            int row = 0;
+            for (CSVRecord record : parser) {
+                String route = record.get(1);
+                String group = allRoutes || entriesPerGroup.containsKey(route) ? route : OTHERS;
+                Type type = record.get(typeColumn).equals("departure") ? Type.DEPARTURE : Type.ARRIVAL;
+                double time = Double.parseDouble(record.get(2));
+                entriesPerGroup.computeIfAbsent(group, g -> new ArrayList<>()).add(new double[]{time, type.ordinal(), row});
+                row++;
+            }
+        }
+
+        if (entriesPerGroup.isEmpty()) {
+            throw new IllegalArgumentException("The timetable " + timetable + " is empty");
+        }
+        List<String> groups = new ArrayList<>(entriesPerGroup.keySet());
+        double[][] times = new double[groups.size() * Type.values().length][];
+        int[][] firstAppearances = new int[times.length][];
+        for (int g = 0; g < groups.size(); g++) {
+            List<double[]> entries = entriesPerGroup.get(groups.get(g));
+            if (entries.isEmpty()) {
+                throw new IllegalArgumentException("Route " + groups.get(g) + " does not exist in the timetable " + timetable);
+            }
+            for (Type type : Type.values()) {
+                // Stable sort by time, so that the first entry of equal times is the one that appears first in the file
+                double[][] sorted = entries.stream()
+                        .filter(entry -> entry[1] == type.ordinal())
+                        .sorted(Comparator.comparingDouble(entry -> entry[0]))
+                        .toArray(double[][]::new);
+                int distinct = 0;
+                double[] groupTimes = new double[sorted.length];
+                int[] groupFirstAppearances = new int[sorted.length];
+                for (double[] entry : sorted) {
+                    if (distinct > 0 && groupTimes[distinct - 1] == entry[0]) {
+                        continue;
+                    }
+                    groupTimes[distinct] = entry[0];
+                    groupFirstAppearances[distinct] = (int) entry[2];
+                    distinct++;
+                }
+                times[index(g, type)] = Arrays.copyOf(groupTimes, distinct);
+                firstAppearances[index(g, type)] = Arrays.copyOf(groupFirstAppearances, distinct);
+            }
+        }
+        return new TimetableIndex(groups, times, firstAppearances);
+    }
+
+    public List<String> getGroups() {
+        return Collections.unmodifiableList(groups);
+    }
+
+    /**
+     * Chooses the group uniformly based on the random number in [0, 1) and returns its nearest time.
+     */
+    public double getNearestTime(double time, double randomNumber, Type type) {
+        int group = Math.min((int) (randomNumber * groups.size()), groups.size() - 1);
+        return getNearestTime(time, group, type);
+    }
+
+    public double getNearestTime(double time, int group, Type type) {
+        double[] groupTimes = times[index(group, type)];
+        if (groupTimes.length == 0) {
+            throw new IllegalStateException("There is no " + type + " time for the group " + groups.get(group));
+        }
+
+        int insertionPoint = Arrays.binarySearch(groupTimes, time);
+        if (insertionPoint >= 0) {
+            return groupTimes[insertionPoint];
+        }
+        int higher = -insertionPoint - 1;
+        int lower = higher - 1;
+        if (lower < 0) {
+            return groupTimes[higher];
+        }
+        if (higher == groupTimes.length) {
+            return groupTimes[lower];
+        }
+
+        double lowerDifference = Math.abs(time - groupTimes[lower]);
+        double higherDifference = Math.abs(time - groupTimes[higher]);
+        if (lowerDifference == higherDifference) {
+            int[] groupFirstAppearances = firstAppearances[index(group, type)];
+            return groupFirstAppearances[lower] < groupFirstAppearances[higher] ? groupTimes[lower] : groupTimes[higher];
+        }
+        return lowerDifference < higherDifference ? groupTimes[lower] : groupTimes[higher];
+    }
+
+    private static int index(int group, Type type) {
+        return group * Type.values().length + type.ordinal();
+    }
+}
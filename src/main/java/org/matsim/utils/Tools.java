@@ -1,11 +1,19 @@
 package org.matsim.utils;
 
+import org.apache.commons.csv.CSVParser;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
 import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.algorithms.MultimodalNetworkCleaner;
 import org.matsim.core.network.algorithms.NetworkCleaner;
+import org.matsim.core.population.algorithms.PersonAlgorithm;
+import org.matsim.core.population.io.StreamingPopulationReader;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.utils.objectattributes.attributable.AttributesUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -16,6 +24,7 @@ import java.nio.file.StandardCopyOption;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Predicate;
 
 public class Tools {
     public static void downloadFile(String fileUrl, String savePath) throws IOException {
@@ -24,21 +33,130 @@ public class Tools {
     }
 
     public static void removeLinksFromNetwork(Network network, List<Link> linksToRemove) {
+        // Only the end nodes of the removed links can become empty
+        Set<Node> candidateNodes = new HashSet<>();
         for (Link link : linksToRemove) {
             network.removeLink(link.getId());
+            candidateNodes.add(link.getFromNode());
+            candidateNodes.add(link.getToNode());
         }
 
         // Remove empty nodes
-        Set<Node> nodesToRemove = new HashSet<>();
-        for (Node node : network.getNodes().values()) {
+        for (Node node : candidateNodes) {
             if (node.getInLinks().isEmpty() && node.getOutLinks().isEmpty()) {
-                nodesToRemove.add(node);
+                network.removeNode(node.getId());
             }
         }
-        for (Node node : nodesToRemove) {
-            network.removeNode(node.getId());
+
+    }
+
+    /**
+     * Builds a new network with the links accepted by the filter and their nodes (in one pass, instead of removing
+     * the other links from the network). Nodes and links are copied with their attributes; the nodes without any
+     * accepted link are left out.
+     */
+    public static Network filterNetwork(Network network, Predicate<Link> linkFilter) {
+        Network filteredNetwork = NetworkUtils.createNetwork();
+        filteredNetwork.setName(network.getName());
+        filteredNetwork.setCapacityPeriod(network.getCapacityPeriod());
+        filteredNetwork.setEffectiveCellSize(network.getEffectiveCellSize());
+        filteredNetwork.setEffectiveLaneWidth(network.getEffectiveLaneWidth());
+        AttributesUtils.copyAttributesFromTo(network, filteredNetwork);
+
+        NetworkFactory factory = filteredNetwork.getFactory();
+        for (Link link : network.getLinks().values()) {
+            if (!linkFilter.test(link)) {
+                continue;
+            }
+            Node fromNode = copyNode(link.getFromNode(), filteredNetwork);
+            Node toNode = copyNode(link.getToNode(), filteredNetwork);
+            Link copy = factory.createLink(link.getId(), fromNode, toNode);
+            copy.setLength(link.getLength());
+            copy.setFreespeed(link.getFreespeed());
+            copy.setCapacity(link.getCapacity());
+            copy.setNumberOfLanes(link.getNumberOfLanes());
+            copy.setAllowedModes(link.getAllowedModes());
+            AttributesUtils.copyAttributesFromTo(link, copy);
+            filteredNetwork.addLink(copy);
+        }
+        return filteredNetwork;
+    }
+
+    private static Node copyNode(Node node, Network filteredNetwork) {
+        Node copy = filteredNetwork.getNodes().get(node.getId());
+        if (copy == null) {
+            copy = filteredNetwork.getFactory().createNode(node.getId(), node.getCoord());
+            AttributesUtils.copyAttributesFromTo(node, copy);
+            filteredNetwork.addNode(copy);
+        }
+        return copy;
+    }
+
+    /**
+     * Reads the plans file person by person. Each person is passed to the algorithm as soon as it is parsed and is not
+     * kept afterwards, so the memory use does not depend on the size of the population.
+     */
+    public static void readPersons(String plansFile, PersonAlgorithm algorithm) {
+        StreamingPopulationReader reader = new StreamingPopulationReader(ScenarioUtils.createScenario(ConfigUtils.createConfig()));
+        reader.addAlgorithm(algorithm);
+        reader.readFile(plansFile);
+    }
+
+    /**
+     * Resolves the index of a column once, so that the records can be accessed by index instead of by name.
+     */
+    public static int getColumnIndex(CSVParser parser, String column) {
+        Integer index = parser.getHeaderMap().get(column);
+        if (index == null) {
+            throw new IllegalArgumentException("Column " + column + " does not exist in the header " + parser.getHeaderNames());
+        }
+        return index;
+    }
+
+    /**
+     * Parses a time in the format HH:MM:SS into seconds. The hours are taken modulo 24.
+     */
+    public static int parseTimeOfDay(CharSequence hms) {
+        int[] fields = new int[3];
+        int field = 0;
+        boolean digitRead = false;
+        for (int i = 0; i < hms.length(); i++) {
+            char c = hms.charAt(i);
+            if (c >= '0' && c <= '9') {
+                fields[field] = fields[field] * 10 + (c - '0');
+                digitRead = true;
+            } else if (c == ':' && digitRead && field < 2) {
+                field++;
+                digitRead = false;
+            } else {
+                throw new IllegalArgumentException("Cannot parse time " + hms + ". The format should be HH:MM:SS");
+            }
         }
+        if (field != 2 || !digitRead) {
+            throw new IllegalArgumentException("Cannot parse time " + hms + ". The format should be HH:MM:SS");
+        }
+        return (fields[0] % 24) * 3600 + fields[1] * 60 + fields[2];
+    }
+
+    /**
+     * Deterministic pseudo random number in [0, 1) for the key (e.g. a person id) and the seed. Unlike drawing from a
+     * shared {@link java.util.Random}, the value does not depend on the order in which the keys are processed.
+     */
+    public static double stableRandom(long seed, String key) {
+        long hash = mix64(seed);
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L; // FNV-1a
+        }
+        return (mix64(hash) >>> 11) * 0x1.0p-53;
+    }
 
+    /**
+     * Finalizer of SplitMix64, spreads the bits of the input over the whole long.
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
 
 }
@@ -0,0 +1,182 @@
+package org.matsim.utils;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.dvrp.path.VrpPaths;
+import org.matsim.core.router.util.TravelTime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shortest travel times between one root link (e.g. the link of a train station) and all the other links of the
+ * network, computed with a single Dijkstra run. The tree is either built forward (from the root link to the other
+ * links) or backward (from the other links to the root link). The travel time of a link pair is the same as
+ * {@code VrpPaths.calcAndCreatePath(fromLink, toLink, ...).getTravelTime()} with a time-as-disutility router.
+ * <p>
+ * The link travel times are evaluated once at the given time, so the tree is only exact for time-independent travel
+ * times, e.g. {@link org.matsim.contrib.dvrp.trafficmonitoring.QSimFreeSpeedTravelTime}.
+ */
+public class TravelTimeTree {
+    public enum Direction {FROM_ROOT, TO_ROOT}
+
+    private final Link rootLink;
+    private final Direction direction;
+    private final TravelTime travelTime;
+    private final double time;
+    private final double[] nodeTravelTimes; // indexed by node id index, infinite if not reachable
+    private final Link[] nodeLinks; // link of the tree to (FROM_ROOT) or from (TO_ROOT) the node, null for the root node
+
+    public TravelTimeTree(Network network, Link rootLink, Direction direction, TravelTime travelTime, double time) {
+        this.rootLink = rootLink;
+        this.direction = direction;
+        this.travelTime = travelTime;
+        this.time = time;
+        this.nodeTravelTimes = new double[Id.getNumberOfIds(Node.class)];
+        Arrays.fill(nodeTravelTimes, Double.POSITIVE_INFINITY);
+        this.nodeLinks = new Link[nodeTravelTimes.length];
+
+        Node rootNode = direction == Direction.FROM_ROOT ? rootLink.getToNode() : rootLink.getFromNode();
+        calculate(network.getNodes().get(rootNode.getId()));
+    }
+
+    public Link getRootLink() {
+        return rootLink;
+    }
+
+    /**
+     * @return travel time from the root link to the link (FROM_ROOT) or from the link to the root link (TO_ROOT)
+     */
+    public double getTravelTime(Link link) {
+        if (link.getId().equals(rootLink.getId())) {
+            return 0;
+        }
+
+        Link lastLink = direction == Direction.FROM_ROOT ? link : rootLink;
+        Node treeNode = direction == Direction.FROM_ROOT ? link.getFromNode() : link.getToNode();
+        int nodeIndex = treeNode.getId().index();
+        double pathTravelTime = nodeIndex < nodeTravelTimes.length ? nodeTravelTimes[nodeIndex] : Double.POSITIVE_INFINITY;
+        if (pathTravelTime == Double.POSITIVE_INFINITY) {
+            throw new IllegalStateException("Link " + link.getId() + " is not connected to the root link " + rootLink.getId());
+        }
+        // Same decomposition as in VrpPaths: moving over the first node, the path in between, and the last link
+        return VrpPaths.NODE_TRANSITION_TIME + pathTravelTime + VrpPaths.getLastLinkTT(travelTime, lastLink, time);
+    }
+
+    /**
+     * @return links of the shortest path from the root link to the link (FROM_ROOT) or from the link to the root link
+     * (TO_ROOT), including the first and the last link, as in the path of {@code VrpPaths.calcAndCreatePath}
+     */
+    public List<Link> getPath(Link link) {
+        if (link.getId().equals(rootLink.getId())) {
+            return List.of(rootLink);
+        }
+        getTravelTime(link); // checks that the link is connected
+
+        List<Link> path = new ArrayList<>();
+        path.add(link);
+        Node node = direction == Direction.FROM_ROOT ? link.getFromNode() : link.getToNode();
+        for (Link treeLink = nodeLinks[node.getId().index()]; treeLink != null; treeLink = nodeLinks[node.getId().index()]) {
+            path.add(treeLink);
+            node = direction == Direction.FROM_ROOT ? treeLink.getFromNode() : treeLink.getToNode();
+        }
+        path.add(rootLink);
+        if (direction == Direction.FROM_ROOT) {
+            Collections.reverse(path);
+        }
+        return path;
+    }
+
+    private void calculate(Node rootNode) {
+        NodeHeap heap = new NodeHeap();
+        nodeTravelTimes[rootNode.getId().index()] = 0;
+        heap.add(rootNode, 0);
+
+        while (!heap.isEmpty()) {
+            double nodeTravelTime = heap.peekCost();
+            Node node = heap.poll();
+            if (nodeTravelTime > nodeTravelTimes[node.getId().index()]) {
+                continue; // outdated heap entry
+            }
+
+            for (Link link : direction == Direction.FROM_ROOT ? node.getOutLinks().values() : node.getInLinks().values()) {
+                Node nextNode = direction == Direction.FROM_ROOT ? link.getToNode() : link.getFromNode();
+                double nextTravelTime = nodeTravelTime + travelTime.getLinkTravelTime(link, time, null, null);
+                if (nextTravelTime < nodeTravelTimes[nextNode.getId().index()]) {
+                    nodeTravelTimes[nextNode.getId().index()] = nextTravelTime;
+                    nodeLinks[nextNode.getId().index()] = link;
+                    heap.add(nextNode, nextTravelTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * Binary min-heap on primitive costs. Nodes are not updated in place, outdated entries are skipped when polled.
+     */
+    private static class NodeHeap {
+        private Node[] nodes = new Node[1024];
+        private double[] costs = new double[1024];
+        private int size = 0;
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private double peekCost() {
+            return costs[0];
+        }
+
+        private void add(Node node, double cost) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                costs = Arrays.copyOf(costs, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (costs[parent] <= cost) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                costs[i] = costs[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            costs[i] = cost;
+        }
+
+        private Node poll() {
+            Node first = nodes[0];
+            size--;
+            Node lastNode = nodes[size];
+            double lastCost = costs[size];
+            nodes[size] = null;
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && costs[child + 1] < costs[child]) {
+                    child++;
+                }
+                if (costs[child] >= lastCost) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                costs[i] = costs[child];
+                i = child;
+            }
+            if (size > 0) {
+                nodes[i] = lastNode;
+                costs[i] = lastCost;
+            }
+            return first;
+        }
+    }
+}
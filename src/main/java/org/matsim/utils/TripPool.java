@@ -0,0 +1,372 @@
+package org.matsim.utils;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.DefaultAnalysisMainModeIdentifier;
+import org.matsim.core.router.MainModeIdentifier;
+import org.matsim.core.router.TripStructureUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Index of the trips of a plans file for the manual sampling. The trips are bucketed by main mode and departure hour.
+ * Each trip has a stable random key in [0, 1) (from the seed, the person id and the index of the trip in the plan),
+ * and the trips of a bucket are sorted by their key.
+ * <p>
+ * A sample with a share per mode contains all trips of the mode whose key is smaller than the share. The samples are
+ * reproducible, and a sample with a smaller share is contained in every sample with a larger share of the same mode.
+ * <p>
+ * The pool is built once from the plans file ({@link Builder}) and saved in a compact binary file. When the pool is
+ * opened, only the header (the offset and size of each bucket) is read. A sample reads the front of the buckets of the
+ * requested hours and the ids of the links of the sampled trips, so the time is proportional to the size of the
+ * sample and not to the size of the pool. The header records the plans file (name and sha256) and the seed, and a pool
+ * of another plans file or seed is rejected.
+ */
+public final class TripPool implements Closeable {
+    public static final String EXTENSION = ".trip-pool.bin";
+
+    private static final int MAGIC_NUMBER = 0x5452504c; // "TRPL"
+    private static final int VERSION = 2;
+    private static final double HOUR = 3600;
+    private static final int RECORD_BYTES = 24; // key, departure time, from link, to link
+    private static final int CHUNK_RECORDS = 1024;
+
+    private final FileChannel channel;
+    private final long seed;
+    private final String source;
+    private final String sourceChecksum;
+    private final Map<String, Bucket[]> bucketsPerMode;
+    private final long linkTableOffset;
+    private final int numberOfLinks;
+    private final Map<Integer, Id<Link>> linkIds = new HashMap<>();
+
+    private TripPool(FileChannel channel, long seed, String source, String sourceChecksum,
+                     Map<String, Bucket[]> bucketsPerMode, long linkTableOffset, int numberOfLinks) {
+        this.channel = channel;
+        this.seed = seed;
+        this.source = source;
+        this.sourceChecksum = sourceChecksum;
+        this.bucketsPerMode = bucketsPerMode;
+        this.linkTableOffset = linkTableOffset;
+        this.numberOfLinks = numberOfLinks;
+    }
+
+    public interface TripConsumer {
+        void accept(double departureTime, Id<Link> fromLinkId, Id<Link> toLinkId, String mode);
+    }
+
+    /**
+     * Builds the pool from the selected plans of the plans file (streamed) and writes it to the file.
+     *
+     * @param sourceChecksum sha256 of the plans file
+     */
+    public static void build(String plansFile, String sourceChecksum, long seed, Path file) throws IOException {
+        Builder builder = new Builder(seed);
+        Tools.readPersons(plansFile, builder::addPerson);
+        builder.write(file, Path.of(plansFile).getFileName().toString(), sourceChecksum);
+    }
+
+    /**
+     * Opens the pool file and reads its header.
+     *
+     * @param sourceChecksum sha256 of the plans file the pool must be built from
+     * @param seed           seed the pool must be built with
+     */
+    public static TripPool open(Path file, String sourceChecksum, long seed) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            if (in.readInt() != MAGIC_NUMBER) {
+                throw new IllegalArgumentException(file + " is not a trip pool file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException(file + " has the unsupported version " + version + ". Please delete it to rebuild it.");
+            }
+            long poolSeed = in.readLong();
+            String source = in.readUTF();
+            String poolSourceChecksum = in.readUTF();
+            if (poolSeed != seed || !poolSourceChecksum.equalsIgnoreCase(sourceChecksum)) {
+                throw new IllegalArgumentException(file + " is built from " + source + " (sha256 " + poolSourceChecksum +
+                        ") with the seed " + poolSeed + ", but the plans file has the sha256 " + sourceChecksum +
+                        " and the seed is " + seed + ". Please delete the trip pool or choose another path.");
+            }
+            int numberOfModes = in.readInt();
+            Map<String, Bucket[]> bucketsPerMode = new LinkedHashMap<>();
+            for (int m = 0; m < numberOfModes; m++) {
+                String mode = in.readUTF();
+                Bucket[] buckets = new Bucket[in.readInt()];
+                for (int hour = 0; hour < buckets.length; hour++) {
+                    buckets[hour] = new Bucket(in.readLong(), in.readInt());
+                }
+                bucketsPerMode.put(mode, buckets);
+            }
+            long linkTableOffset = in.readLong();
+            int numberOfLinks = in.readInt();
+            return new TripPool(channel, poolSeed, source, poolSourceChecksum, bucketsPerMode, linkTableOffset, numberOfLinks);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return name of the plans file the pool is built from
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public String getSourceChecksum() {
+        return sourceChecksum;
+    }
+
+    public Set<String> getModes() {
+        return Collections.unmodifiableSet(bucketsPerMode.keySet());
+    }
+
+    /**
+     * @return number of trips of the mode in the pool
+     */
+    public int size(String mode) {
+        int size = 0;
+        for (Bucket bucket : bucketsPerMode.getOrDefault(mode, new Bucket[0])) {
+            size += bucket.size();
+        }
+        return size;
+    }
+
+    /**
+     * Passes the trips of the sample to the consumer, ordered by departure hour, then by mode (in the order of the map)
+     * and then by key.
+     *
+     * @param shares    share of the trips of each mode in [0, 1]; modes that are not in the pool are ignored
+     * @param startTime earliest departure time (inclusive)
+     * @param endTime   latest departure time (inclusive)
+     * @return number of trips in the sample
+     */
+    public int sample(Map<String, Double> shares, double startTime, double endTime, TripConsumer consumer) throws IOException {
+        int maxHour = 0;
+        for (String mode : shares.keySet()) {
+            maxHour = Math.max(maxHour, bucketsPerMode.getOrDefault(mode, new Bucket[0]).length - 1);
+        }
+        int firstHour = Math.max(0, (int) (startTime / HOUR));
+        int lastHour = (int) Math.min(maxHour, Math.floor(endTime / HOUR));
+
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_RECORDS * RECORD_BYTES);
+        int counter = 0;
+        for (int hour = firstHour; hour <= lastHour; hour++) {
+            for (Map.Entry<String, Double> share : shares.entrySet()) {
+                Bucket[] buckets = bucketsPerMode.get(share.getKey());
+                if (buckets == null || hour >= buckets.length) {
+                    continue;
+                }
+                Bucket bucket = buckets[hour];
+                // Read the records in chunks until the first key that is not smaller than the share
+                boolean done = false;
+                for (int first = 0; first < bucket.size() && !done; first += CHUNK_RECORDS) {
+                    int records = Math.min(CHUNK_RECORDS, bucket.size() - first);
+                    buffer.clear().limit(records * RECORD_BYTES);
+                    readFully(buffer, bucket.offset() + (long) first * RECORD_BYTES);
+                    buffer.flip();
+                    for (int i = 0; i < records; i++) {
+                        double key = buffer.getDouble();
+                        double departureTime = buffer.getDouble();
+                        int fromLink = buffer.getInt();
+                        int toLink = buffer.getInt();
+                        if (key >= share.getValue()) {
+                            done = true;
+                            break;
+                        }
+                        if (departureTime < startTime || departureTime > endTime) {
+                            continue;
+                        }
+                        consumer.accept(departureTime, getLinkId(fromLink), getLinkId(toLink), share.getKey());
+                        counter++;
+                    }
+                }
+            }
+        }
+        return counter;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return id of the link with the index, read from the link table of the file (once)
+     */
+    private Id<Link> getLinkId(int index) throws IOException {
+        if (index < 0 || index >= numberOfLinks) {
+            throw new IllegalStateException("Invalid link index " + index + " in the trip pool");
+        }
+        Id<Link> linkId = linkIds.get(index);
+        if (linkId == null) {
+            ByteBuffer entry = ByteBuffer.allocate(12);
+            readFully(entry, linkTableOffset + 12L * index);
+            entry.flip();
+            ByteBuffer name = ByteBuffer.allocate(entry.getInt(8));
+            readFully(name, entry.getLong(0));
+            linkId = Id.createLinkId(new String(name.array(), StandardCharsets.UTF_8));
+            linkIds.put(index, linkId);
+        }
+        return linkId;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of the trip pool file");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Collects the trips person by person. The samples of the pool do not depend on the order of the persons.
+     */
+    public static class Builder {
+        private final long seed;
+        private final MainModeIdentifier mainModeIdentifier = new DefaultAnalysisMainModeIdentifier();
+        private final List<Id<Link>> linkIds = new ArrayList<>();
+        private final Map<Id<Link>, Integer> linkIndices = new HashMap<>();
+        private final Map<String, List<List<Trip>>> tripsPerMode = new TreeMap<>();
+
+        public Builder(long seed) {
+            this.seed = seed;
+        }
+
+        public void addPerson(Person person) {
+            List<TripStructureUtils.Trip> trips = TripStructureUtils.getTrips(person.getSelectedPlan());
+            for (int i = 0; i < trips.size(); i++) {
+                TripStructureUtils.Trip trip = trips.get(i);
+                String mode = mainModeIdentifier.identifyMainMode(trip.getTripElements());
+                double departureTime = trip.getOriginActivity().getEndTime().orElseThrow(RuntimeException::new);
+                int hour = Math.max(0, (int) (departureTime / HOUR));
+                List<List<Trip>> buckets = tripsPerMode.computeIfAbsent(mode, m -> new ArrayList<>());
+                while (buckets.size() <= hour) {
+                    buckets.add(new ArrayList<>());
+                }
+                buckets.get(hour).add(new Trip(Tools.stableRandom(seed, person.getId() + "#" + i), departureTime,
+                        getLinkIndex(trip.getOriginActivity().getLinkId()), getLinkIndex(trip.getDestinationActivity().getLinkId())));
+            }
+        }
+
+        /**
+         * Writes the pool file: the header (seed, source, offset and size of each bucket, offset of the link table),
+         * the fixed-size trip records of all buckets, and the link table (offset and length of each link id) with the
+         * link ids.
+         *
+         * @param source         name of the plans file
+         * @param sourceChecksum sha256 of the plans file
+         */
+        public void write(Path file, String source, String sourceChecksum) throws IOException {
+            // The trips are sorted by key. The departure time and the links break ties, so that the order is fully defined
+            Comparator<Trip> order = Comparator.comparingDouble(Trip::key).thenComparingDouble(Trip::departureTime)
+                    .thenComparing(trip -> linkIds.get(trip.fromLink())).thenComparing(trip -> linkIds.get(trip.toLink()));
+            tripsPerMode.values().forEach(buckets -> buckets.forEach(trips -> trips.sort(order)));
+
+            // The header has a fixed length for the given modes and buckets, so the offsets are computed in advance
+            long headerLength = writeHeader(new DataOutputStream(OutputStream.nullOutputStream()), source, sourceChecksum, 0);
+            long linkTableOffset = headerLength + (long) RECORD_BYTES *
+                    tripsPerMode.values().stream().flatMap(List::stream).mapToLong(List::size).sum();
+            List<byte[]> linkNames = linkIds.stream().map(id -> id.toString().getBytes(StandardCharsets.UTF_8)).toList();
+
+            Path temporaryFile = file.resolveSibling(file.getFileName() + ".part");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile), 1 << 16))) {
+                writeHeader(out, source, sourceChecksum, linkTableOffset);
+                for (List<List<Trip>> buckets : tripsPerMode.values()) {
+                    for (List<Trip> trips : buckets) {
+                        for (Trip trip : trips) {
+                            out.writeDouble(trip.key());
+                            out.writeDouble(trip.departureTime());
+                            out.writeInt(trip.fromLink());
+                            out.writeInt(trip.toLink());
+                        }
+                    }
+                }
+                long nameOffset = linkTableOffset + 12L * linkNames.size();
+                for (byte[] name : linkNames) {
+                    out.writeLong(nameOffset);
+                    out.writeInt(name.length);
+                    nameOffset += name.length;
+                }
+                for (byte[] name : linkNames) {
+                    out.write(name);
+                }
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * @return length of the header
+         */
+        private long writeHeader(DataOutputStream out, String source, String sourceChecksum, long linkTableOffset) throws IOException {
+            out.writeInt(MAGIC_NUMBER);
+            out.writeInt(VERSION);
+            out.writeLong(seed);
+            out.writeUTF(source);
+            out.writeUTF(sourceChecksum);
+            out.writeInt(tripsPerMode.size());
+            // The length of the header does not depend on the offsets
+            long headerLength = out.size() + tripsPerMode.keySet().stream()
+                    .mapToLong(mode -> 2 + modifiedUtf8Length(mode) + 4 + 12L * tripsPerMode.get(mode).size()).sum() + 12;
+            long offset = headerLength;
+            for (Map.Entry<String, List<List<Trip>>> entry : tripsPerMode.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (List<Trip> trips : entry.getValue()) {
+                    out.writeLong(offset);
+                    out.writeInt(trips.size());
+                    offset += (long) RECORD_BYTES * trips.size();
+                }
+            }
+            out.writeLong(linkTableOffset);
+            out.writeInt(linkIds.size());
+            out.flush();
+            return headerLength;
+        }
+
+        private int getLinkIndex(Id<Link> linkId) {
+            return linkIndices.computeIfAbsent(linkId, id -> {
+                linkIds.add(id);
+                return linkIds.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * @return number of bytes of the string in {@link DataOutput#writeUTF} (without the length)
+     */
+    private static int modifiedUtf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF ? 2 : 3);
+        }
+        return length;
+    }
+
+    private record Trip(double key, double departureTime, int fromLink, int toLink) {
+    }
+
+    private record Bucket(long offset, int size) {
+    }
+}
@@ -0,0 +1,85 @@
+package org.matsim.modules;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.drt.schedule.DrtDriveTask;
+import org.matsim.contrib.drt.schedule.DrtStayTask;
+import org.matsim.contrib.drt.schedule.DrtStopTask;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+import org.matsim.contrib.dvrp.schedule.Task;
+import org.matsim.contrib.dvrp.vrpagent.TaskEndedEvent;
+import org.matsim.contrib.dvrp.vrpagent.TaskStartedEvent;
+import org.matsim.core.config.groups.ControlerConfigGroup;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.network.NetworkUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class DrtStoppingTaskCollectorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public final void testStoppingTasksOfLastIterationAreWritten() throws IOException {
+        Network network = NetworkUtils.createNetwork();
+        Node node0 = NetworkUtils.createAndAddNode(network, Id.createNodeId("0"), new Coord(0, 0));
+        Node node1 = NetworkUtils.createAndAddNode(network, Id.createNodeId("1"), new Coord(100, 0));
+        NetworkUtils.createAndAddLink(network, Id.createLinkId("l1"), node0, node1, 100, 10, 600, 1);
+        NetworkUtils.createAndAddLink(network, Id.createLinkId("l2"), node1, node0, 100, 10, 600, 1);
+
+        Path output = folder.getRoot().toPath();
+        OutputDirectoryHierarchy controlerIO = new OutputDirectoryHierarchy(output.toString(),
+                OutputDirectoryHierarchy.OverwriteFileSetting.overwriteExistingFiles, ControlerConfigGroup.CompressionType.none);
+        DrtStoppingTaskCollector collector = new DrtStoppingTaskCollector(network, controlerIO);
+        Path file = output.resolve(DrtStoppingTaskCollector.FILE_NAME);
+
+        // Not the last iteration: nothing is written
+        collector.notifyIterationStarts(new IterationStartsEvent(null, 0, false));
+        startTask(collector, 10, "drt", "v1", DrtStopTask.TYPE, 0, "l1");
+        endTask(collector, 20, "drt", "v1", DrtStopTask.TYPE, 0, "l1");
+        collector.notifyIterationEnds(new IterationEndsEvent(null, 0, false));
+        Assert.assertFalse(Files.exists(file));
+
+        // Last iteration: vehicles with the same id in two modes, a drive task (not written) and an unfinished task
+        collector.reset(1);
+        collector.notifyIterationStarts(new IterationStartsEvent(null, 1, true));
+        startTask(collector, 100, "drt", "v1", DrtStopTask.TYPE, 0, "l1");
+        startTask(collector, 150, "taxi", "v1", DrtStayTask.TYPE, 0, "l2");
+        endTask(collector, 200, "drt", "v1", DrtStopTask.TYPE, 0, "l1");
+        startTask(collector, 200, "drt", "v1", DrtDriveTask.TYPE, 1, "l1");
+        endTask(collector, 300, "taxi", "v1", DrtStayTask.TYPE, 0, "l2");
+        endTask(collector, 350, "drt", "v1", DrtDriveTask.TYPE, 1, "l2");
+        startTask(collector, 350, "drt", "v1", DrtStayTask.TYPE, 2, "l2");
+        collector.notifyIterationEnds(new IterationEndsEvent(null, 1, true));
+
+        Assert.assertEquals(List.of(
+                "mode;vehicle_id;task_index;task_type;link_id;x;y;start_time;end_time",
+                "drt;v1;0;STOP;l1;100.0;0.0;100.0;200.0",
+                "taxi;v1;0;STAY;l2;0.0;0.0;150.0;300.0",
+                "drt;v1;2;STAY;l2;0.0;0.0;350.0;"), Files.readAllLines(file));
+    }
+
+    private static void startTask(DrtStoppingTaskCollector collector, double time, String mode, String vehicleId,
+                                  Task.TaskType taskType, int taskIndex, String linkId) {
+        collector.handleEvent(new TaskStartedEvent(time, mode, Id.create(vehicleId, DvrpVehicle.class),
+                Id.createPersonId(vehicleId), taskType, taskIndex, Id.createLinkId(linkId)));
+    }
+
+    private static void endTask(DrtStoppingTaskCollector collector, double time, String mode, String vehicleId,
+                                Task.TaskType taskType, int taskIndex, String linkId) {
+        collector.handleEvent(new TaskEndedEvent(time, mode, Id.create(vehicleId, DvrpVehicle.class),
+                Id.createPersonId(vehicleId), taskType, taskIndex, Id.createLinkId(linkId)));
+    }
+}
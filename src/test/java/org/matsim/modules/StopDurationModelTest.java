@@ -0,0 +1,41 @@
+package org.matsim.modules;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.contrib.drt.passenger.AcceptedDrtRequest;
+
+import java.util.Collections;
+import java.util.List;
+
+public class StopDurationModelTest {
+
+    @Test
+    public final void testIncrementsAddUpToStopDuration() {
+        List<StopDurationModel> models = List.of(
+                new StopDurationModel.Linear(60),
+                new StopDurationModel.FixedPlusPerPassenger(30, 20),
+                new StopDurationModel.CappedBatch(30, 20, 2, 100));
+        for (StopDurationModel model : models) {
+            double sum = 0;
+            for (int passengers = 0; passengers < 10; passengers++) {
+                List<AcceptedDrtRequest> pickups = Collections.nCopies(passengers, null);
+                Assert.assertEquals(model.getDuration(passengers), model.calcDuration(null, List.of(), pickups), 1e-9);
+                Assert.assertEquals(model.getDuration(passengers), sum, 1e-9);
+                sum += model.getDuration(passengers + 1) - model.getDuration(passengers);
+            }
+            // first passenger of a new stop
+            Assert.assertEquals(model.getDuration(1), model.calcForPickup(null, null, null), 1e-9);
+            Assert.assertEquals(model.getDuration(1), model.calcForDropoff(null, null, null), 1e-9);
+        }
+    }
+
+    @Test
+    public final void testCappedBatch() {
+        StopDurationModel model = new StopDurationModel.CappedBatch(30, 20, 2, 100);
+        Assert.assertEquals(0, model.getDuration(0), 1e-9);
+        Assert.assertEquals(50, model.getDuration(1), 1e-9);
+        Assert.assertEquals(50, model.getDuration(2), 1e-9);
+        Assert.assertEquals(70, model.getDuration(3), 1e-9);
+        Assert.assertEquals(100, model.getDuration(10), 1e-9);
+    }
+}
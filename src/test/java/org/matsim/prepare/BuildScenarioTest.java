@@ -0,0 +1,158 @@
+package org.matsim.prepare;
+
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.Coordinate;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.utils.gis.PolygonFeatureFactory;
+import org.matsim.core.utils.gis.ShapeFileWriter;
+import org.matsim.source.NetworkCutter;
+import org.matsim.source.PrepareAllPossibleDrtTrips;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+public class BuildScenarioTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The network and the samples of the pipeline are the same as the ones of the separate commands
+     * (network cutter, trip extraction and nested random sampling).
+     */
+    @Test
+    public final void testSameScenarioAsSeparateCommands() {
+        Path root = folder.getRoot().toPath();
+        String networkFile = root.resolve("network.xml.gz").toString();
+        String plansFile = root.resolve("plans.xml.gz").toString();
+        String shpFile = root.resolve("service-area.shp").toString();
+        NetworkUtils.writeNetwork(createGridNetwork(), networkFile);
+        PopulationUtils.writePopulation(createPopulation(), plansFile);
+        writeServiceArea(shpFile);
+
+        // Separate commands
+        String cutNetworkFile = root.resolve("cut.network.xml.gz").toString();
+        String tripsFile = root.resolve("drt-trips.plans.xml.gz").toString();
+        Assert.assertEquals(0, new CommandLine(new NetworkCutter()).execute("--network", networkFile,
+                "--output", cutNetworkFile, "--shp", shpFile));
+        Assert.assertEquals(0, new CommandLine(new PrepareAllPossibleDrtTrips()).execute("--input", plansFile,
+                "--network", cutNetworkFile, "--output", tripsFile, "--shp", shpFile));
+
+        // Pipeline
+        Path output = root.resolve("scenario");
+        Assert.assertEquals(0, new CommandLine(new BuildScenario()).execute("--network", networkFile,
+                "--plans", plansFile, "--output", output.toString(), "--shp", shpFile, "--samples", "0.2", "0.5",
+                "--fleet-size-from", "5", "--fleet-size-to", "5", "--capacity", "4"));
+
+        Assert.assertEquals(NetworkUtils.readNetwork(cutNetworkFile).getLinks().keySet(),
+                NetworkUtils.readNetwork(output.resolve("drt.network.xml.gz").toString()).getLinks().keySet());
+
+        Population trips = PopulationUtils.readPopulation(tripsFile);
+        Assert.assertTrue(trips.getPersons().size() > 100);
+        RandomSampling.sampleDownPopulation(trips, 0.5, 4711);
+        Assert.assertEquals(getRequests(trips),
+                getRequests(PopulationUtils.readPopulation(output.resolve("plans/drt-50pct.plans.xml.gz").toString())));
+        RandomSampling.sampleDownPopulation(trips, 0.2 / 0.5, 4711);
+        Assert.assertEquals(getRequests(trips),
+                getRequests(PopulationUtils.readPopulation(output.resolve("plans/drt-20pct.plans.xml.gz").toString())));
+    }
+
+    private static List<String> getRequests(Population population) {
+        return population.getPersons().values().stream()
+                .map(person -> {
+                    List<PlanElement> planElements = person.getSelectedPlan().getPlanElements();
+                    Activity fromAct = (Activity) planElements.get(0);
+                    Activity toAct = (Activity) planElements.get(2);
+                    return person.getId() + "," + fromAct.getEndTime().seconds() + "," + fromAct.getLinkId() + "," + toAct.getLinkId();
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Grid of 20 x 20 nodes with 100 m spacing. The links of one row are motorways and the links of one column are
+     * too long for DRT trips, so the cut network and the snapping network differ.
+     */
+    private static Network createGridNetwork() {
+        Network network = NetworkUtils.createNetwork();
+        Node[][] nodes = new Node[20][20];
+        for (int x = 0; x < 20; x++) {
+            for (int y = 0; y < 20; y++) {
+                nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(100 * x, 100 * y));
+            }
+        }
+        for (int x = 0; x < 20; x++) {
+            for (int y = 0; y < 20; y++) {
+                if (x < 19) {
+                    addLinks(network, nodes[x][y], nodes[x + 1][y], y == 10 ? "motorway" : "residential", 100);
+                }
+                if (y < 19) {
+                    addLinks(network, nodes[x][y], nodes[x][y + 1], "residential", x == 7 ? 600 : 100);
+                }
+            }
+        }
+        return network;
+    }
+
+    private static void addLinks(Network network, Node fromNode, Node toNode, String type, double length) {
+        for (Node[] direction : new Node[][]{{fromNode, toNode}, {toNode, fromNode}}) {
+            Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(direction[0].getId() + "-" + direction[1].getId()),
+                    direction[0], direction[1], length, 10, 600, 1);
+            link.setAllowedModes(Set.of(TransportMode.car));
+            link.getAttributes().putAttribute("type", type);
+        }
+    }
+
+    /**
+     * Persons with two trips between random coordinates (inside and outside the service area) at random times.
+     */
+    private static Population createPopulation() {
+        Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+        PopulationFactory factory = population.getFactory();
+        Random random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            Plan plan = factory.createPlan();
+            Coord home = new Coord(random.nextDouble() * 1900, random.nextDouble() * 1900);
+            Coord work = new Coord(random.nextDouble() * 1900, random.nextDouble() * 1900);
+            Activity homeAct = factory.createActivityFromCoord("home", home);
+            homeAct.setEndTime(random.nextInt(86400));
+            plan.addActivity(homeAct);
+            plan.addLeg(factory.createLeg(TransportMode.car));
+            Activity workAct = factory.createActivityFromCoord("work", work);
+            workAct.setEndTime(random.nextInt(86400));
+            plan.addActivity(workAct);
+            plan.addLeg(factory.createLeg(TransportMode.car));
+            plan.addActivity(factory.createActivityFromCoord("home", home));
+
+            Person person = factory.createPerson(Id.createPersonId("person_" + i));
+            person.addPlan(plan);
+            person.setSelectedPlan(plan);
+            population.addPerson(person);
+        }
+        return population;
+    }
+
+    private static void writeServiceArea(String shpFile) {
+        PolygonFeatureFactory factory = new PolygonFeatureFactory.Builder()
+                .setCrs(DefaultGeographicCRS.WGS84)
+                .setName("service-area")
+                .create();
+        Coordinate[] ring = {new Coordinate(250, 250), new Coordinate(1650, 250), new Coordinate(1650, 1650),
+                new Coordinate(250, 1650), new Coordinate(250, 250)};
+        ShapeFileWriter.writeGeometries(List.of(factory.createPolygon(ring)), shpFile);
+    }
+}
@@ -0,0 +1,132 @@
+package org.matsim.utils;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.dvrp.trafficmonitoring.QSimFreeSpeedTravelTime;
+import org.matsim.contrib.zone.skims.DvrpTravelTimeMatrixParams;
+import org.matsim.contrib.zone.skims.FreeSpeedTravelTimeMatrix;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.network.NetworkUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class CachedTravelTimeMatrixTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public final void testNeighborsAreExactAndMatrixIsReused() throws IOException {
+        // A line of nodes 100 m apart, connected in both directions with 10 m/s
+        Network network = NetworkUtils.createNetwork();
+        int size = 30;
+        for (int i = 0; i < size; i++) {
+            NetworkUtils.createAndAddNode(network, Id.createNodeId("n" + i), new Coord(i * 100, 0));
+        }
+        for (int i = 0; i + 1 < size; i++) {
+            Node a = network.getNodes().get(Id.createNodeId("n" + i));
+            Node b = network.getNodes().get(Id.createNodeId("n" + (i + 1)));
+            NetworkUtils.createAndAddLink(network, Id.createLinkId(i + "f"), a, b, 100, 10, 1000, 1);
+            NetworkUtils.createAndAddLink(network, Id.createLinkId(i + "b"), b, a, 100, 10, 1000, 1);
+        }
+
+        ConfigGroup params = new ConfigGroup("travelTimeMatrix");
+        params.addParam("cellSize", "1000");
+        params.addParam("maxNeighborDistance", "500");
+
+        Path cacheDirectory = folder.getRoot().toPath();
+        CachedTravelTimeMatrix matrix = CachedTravelTimeMatrix.loadOrCreate(cacheDirectory, network, params, 1, 2);
+        double linkTravelTime = new QSimFreeSpeedTravelTime(1).getLinkTravelTime(
+                network.getLinks().get(Id.createLinkId("0f")), 0, null, null);
+
+        Node n3 = network.getNodes().get(Id.createNodeId("n3"));
+        for (int i = 0; i <= 8; i++) {
+            Node other = network.getNodes().get(Id.createNodeId("n" + i));
+            Assert.assertEquals(Math.round(Math.abs(i - 3) * linkTravelTime), matrix.getTravelTime(n3, other, 0));
+        }
+        // Beyond the neighbor distance, the travel time between the central nodes of the zones is returned
+        Node n25 = network.getNodes().get(Id.createNodeId("n25"));
+        Assert.assertTrue(matrix.getTravelTime(n3, n25, 0) > 0);
+
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            Assert.assertEquals(1, files.count());
+        }
+        CachedTravelTimeMatrix reloaded = CachedTravelTimeMatrix.loadOrCreate(cacheDirectory, network, params, 1, 2);
+        Assert.assertEquals(matrix.getTravelTime(n3, n25, 0), reloaded.getTravelTime(n3, n25, 0));
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            Assert.assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public final void testSameTravelTimesAsDvrpMatrix() throws IOException {
+        Network network = createGridNetwork(15, 4711);
+        DvrpTravelTimeMatrixParams params = new DvrpTravelTimeMatrixParams();
+        params.cellSize = 450;
+        params.maxNeighborDistance = 300;
+        params.maxNeighborTravelTime = 40;
+
+        FreeSpeedTravelTimeMatrix dvrpMatrix = FreeSpeedTravelTimeMatrix.createFreeSpeedMatrix(network, params, 2, 1);
+        CachedTravelTimeMatrix matrix = CachedTravelTimeMatrix.loadOrCreate(folder.getRoot().toPath(), network, params, 1, 2);
+        for (Node fromNode : network.getNodes().values()) {
+            for (Node toNode : network.getNodes().values()) {
+                Assert.assertEquals(fromNode.getId() + " -> " + toNode.getId(), dvrpMatrix.getTravelTime(fromNode, toNode, 0),
+                        matrix.getTravelTime(fromNode, toNode, 0));
+            }
+        }
+    }
+
+    @Test
+    public final void testNodesOfOtherNetworksAreRejected() throws IOException {
+        Network network = createGridNetwork(3, 4711);
+        CachedTravelTimeMatrix matrix = CachedTravelTimeMatrix.loadOrCreate(folder.getRoot().toPath(), network,
+                new DvrpTravelTimeMatrixParams(), 1, 1);
+        Node node = network.getNodes().get(Id.createNodeId("0_0"));
+        Node otherNode = NetworkUtils.createNode(Id.createNodeId("not-in-the-network"), new Coord(0, 0));
+        Assert.assertThrows(IllegalArgumentException.class, () -> matrix.getTravelTime(node, otherNode, 0));
+        Assert.assertThrows(IllegalArgumentException.class, () -> matrix.getTravelTime(otherNode, node, 0));
+    }
+
+    /**
+     * Grid with links of different lengths and speeds in both directions.
+     */
+    private static Network createGridNetwork(int size, long seed) {
+        Random random = new Random(seed);
+        double[] speeds = {8.33, 13.89, 16.67};
+        Network network = NetworkUtils.createNetwork();
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y),
+                        new Coord(100 * x + random.nextInt(40), 100 * y + random.nextInt(40)));
+            }
+        }
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                Node node = network.getNodes().get(Id.createNodeId(x + "_" + y));
+                Node[] neighbors = {network.getNodes().get(Id.createNodeId((x + 1) + "_" + y)),
+                        network.getNodes().get(Id.createNodeId(x + "_" + (y + 1)))};
+                for (Node neighbor : neighbors) {
+                    if (neighbor == null) {
+                        continue;
+                    }
+                    double length = NetworkUtils.getEuclideanDistance(node.getCoord(), neighbor.getCoord()) * (1 + random.nextDouble());
+                    NetworkUtils.createAndAddLink(network, Id.createLinkId(node.getId() + "-" + neighbor.getId()), node, neighbor,
+                            length, speeds[random.nextInt(speeds.length)], 1000, 1);
+                    NetworkUtils.createAndAddLink(network, Id.createLinkId(neighbor.getId() + "-" + node.getId()), neighbor, node,
+                            length, speeds[random.nextInt(speeds.length)], 1000, 1);
+                }
+            }
+        }
+        return network;
+    }
+}
@@ -0,0 +1,76 @@
+package org.matsim.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class DemandWeightedPlacementTest {
+
+    @Test
+    public final void testVehiclesProportionalToDemand() {
+        // Three zones of 1 km with 6, 3 and 1 trips
+        Network network = NetworkUtils.createNetwork();
+        List<Link> links = new ArrayList<>();
+        for (int zone = 0; zone < 3; zone++) {
+            Node from = NetworkUtils.createAndAddNode(network, Id.createNodeId("from_" + zone), new Coord(zone * 1000 + 100, 500));
+            Node to = NetworkUtils.createAndAddNode(network, Id.createNodeId("to_" + zone), new Coord(zone * 1000 + 500, 500));
+            links.add(NetworkUtils.createAndAddLink(network, Id.createLinkId(zone), from, to, 400, 10, 600, 1));
+        }
+        List<Coord> origins = new ArrayList<>();
+        int[] trips = {6, 3, 1};
+        for (int zone = 0; zone < 3; zone++) {
+            for (int i = 0; i < trips[zone]; i++) {
+                origins.add(new Coord(zone * 1000 + 10 * i, 10 * i));
+            }
+        }
+
+        DemandWeightedPlacement placement = new DemandWeightedPlacement(links, origins, 1000);
+        Assert.assertEquals(3, placement.getNumberOfZones());
+        Assert.assertArrayEquals(new int[]{6, 3, 1}, placement.allocate(10));
+        Assert.assertArrayEquals(new int[]{3, 2, 0}, placement.allocate(5)); // quotas 3, 1.5, 0.5: tie goes to more demand
+        Assert.assertEquals(4, Arrays.stream(placement.allocate(4)).sum());
+
+        List<Link> startLinks = placement.getStartLinks(10);
+        Assert.assertEquals(10, startLinks.size());
+        Assert.assertEquals(6, startLinks.stream().filter(link -> link == links.get(0)).count());
+        Assert.assertEquals(1, startLinks.stream().filter(link -> link == links.get(2)).count());
+    }
+
+    @Test
+    public final void testSmallerFleetsArePrefixes() {
+        // One zone of 1 km per link, with random origins and more demand in the first zones
+        Network network = NetworkUtils.createNetwork();
+        List<Link> links = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            double x = (i % 10) * 1000;
+            double y = (i / 10) * 1000;
+            Node from = NetworkUtils.createAndAddNode(network, Id.createNodeId("from_" + i), new Coord(x + 100, y + 500));
+            Node to = NetworkUtils.createAndAddNode(network, Id.createNodeId("to_" + i), new Coord(x + 900, y + 500));
+            links.add(NetworkUtils.createAndAddLink(network, Id.createLinkId(i), from, to, 800, 10, 600, 1));
+        }
+        Random random = new Random(4711);
+        List<Coord> origins = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            double x = 10000 * random.nextDouble() * random.nextDouble();
+            origins.add(new Coord(x, 5000 * random.nextDouble()));
+        }
+
+        DemandWeightedPlacement placement = new DemandWeightedPlacement(links, origins, 1000);
+        List<Link> largestFleet = placement.getStartLinks(500);
+        for (int fleetSize = 0; fleetSize < 500; fleetSize += 37) {
+            Assert.assertEquals(largestFleet.subList(0, fleetSize), placement.getStartLinks(fleetSize));
+            int[] vehiclesPerZone = placement.allocate(fleetSize);
+            Assert.assertEquals(fleetSize, Arrays.stream(vehiclesPerZone).sum());
+        }
+    }
+}
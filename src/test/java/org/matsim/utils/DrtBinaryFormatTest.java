@@ -0,0 +1,123 @@
+package org.matsim.utils;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.contrib.dvrp.fleet.*;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class DrtBinaryFormatTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public final void testDemandRoundTrip() throws IOException {
+        Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+        PopulationFactory factory = population.getFactory();
+        for (int i = 0; i < 50; i++) {
+            Activity fromAct = factory.createActivityFromLinkId("dummy", Id.createLinkId("link-" + i % 7));
+            if (i % 10 != 0) {
+                fromAct.setEndTime(1000.5 * i);
+            }
+            Plan plan = factory.createPlan();
+            plan.addActivity(fromAct);
+            plan.addLeg(factory.createLeg(TransportMode.drt));
+            plan.addActivity(factory.createActivityFromLinkId("home", Id.createLinkId("link-" + i)));
+            Person person = factory.createPerson(Id.createPersonId("drt_person_" + i));
+            person.addPlan(plan);
+            population.addPerson(person);
+        }
+
+        Path file = folder.getRoot().toPath().resolve("test.plans.bin");
+        DrtBinaryFormat.writeDemand(population, file);
+        Population readPopulation = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+        DrtBinaryFormat.readDemand(file, readPopulation);
+
+        Assert.assertEquals(population.getPersons().size(), readPopulation.getPersons().size());
+        for (Person person : population.getPersons().values()) {
+            Plan plan = person.getSelectedPlan();
+            Plan readPlan = readPopulation.getPersons().get(person.getId()).getSelectedPlan();
+            Activity fromAct = (Activity) plan.getPlanElements().get(0);
+            Activity readFromAct = (Activity) readPlan.getPlanElements().get(0);
+            Activity readToAct = (Activity) readPlan.getPlanElements().get(2);
+            Assert.assertEquals(fromAct.getType(), readFromAct.getType());
+            Assert.assertEquals(fromAct.getLinkId(), readFromAct.getLinkId());
+            Assert.assertEquals(fromAct.getEndTime(), readFromAct.getEndTime());
+            Assert.assertEquals(TransportMode.drt, ((Leg) readPlan.getPlanElements().get(1)).getMode());
+            Assert.assertEquals(((Activity) plan.getPlanElements().get(2)).getLinkId(), readToAct.getLinkId());
+            Assert.assertEquals("home", readToAct.getType());
+        }
+    }
+
+    @Test
+    public final void testFleetRoundTrip() throws IOException {
+        FleetSpecification fleet = new FleetSpecificationImpl();
+        for (int i = 0; i < 20; i++) {
+            fleet.addVehicleSpecification(ImmutableDvrpVehicleSpecification.newBuilder()
+                    .id(Id.create("drt_" + i, DvrpVehicle.class))
+                    .startLinkId(Id.createLinkId("link-" + i % 3))
+                    .capacity(8)
+                    .serviceBeginTime(i * 60)
+                    .serviceEndTime(86400)
+                    .build());
+        }
+
+        Path file = folder.getRoot().toPath().resolve("fleet.bin");
+        DrtBinaryFormat.writeFleet(fleet, file);
+        FleetSpecification readFleet = DrtBinaryFormat.readFleet(file);
+
+        Assert.assertEquals(fleet.getVehicleSpecifications().size(), readFleet.getVehicleSpecifications().size());
+        for (DvrpVehicleSpecification vehicle : fleet.getVehicleSpecifications().values()) {
+            DvrpVehicleSpecification readVehicle = readFleet.getVehicleSpecifications().get(vehicle.getId());
+            Assert.assertEquals(vehicle.getStartLinkId(), readVehicle.getStartLinkId());
+            Assert.assertEquals(vehicle.getCapacity(), readVehicle.getCapacity());
+            Assert.assertEquals(vehicle.getServiceBeginTime(), readVehicle.getServiceBeginTime(), 0);
+            Assert.assertEquals(vehicle.getServiceEndTime(), readVehicle.getServiceEndTime(), 0);
+        }
+    }
+
+    @Test
+    public final void testSourceFileIsRecorded() throws IOException {
+        FleetSpecification fleet = new FleetSpecificationImpl();
+        fleet.addVehicleSpecification(ImmutableDvrpVehicleSpecification.newBuilder()
+                .id(Id.create("drt_0", DvrpVehicle.class))
+                .startLinkId(Id.createLinkId("link-0"))
+                .capacity(8)
+                .serviceBeginTime(0)
+                .serviceEndTime(86400)
+                .build());
+        Path sourceFile = folder.getRoot().toPath().resolve("fleet.xml");
+        new FleetWriter(fleet.getVehicleSpecifications().values().stream()).write(sourceFile.toString());
+
+        Path file = folder.getRoot().toPath().resolve("fleet.bin");
+        DrtBinaryFormat.writeFleet(fleet, file, sourceFile);
+        Assert.assertTrue(DrtBinaryFormat.isConvertedFrom(file, sourceFile));
+        Assert.assertEquals(1, DrtBinaryFormat.readFleet(file).getVehicleSpecifications().size());
+
+        // Same size, other content
+        byte[] content = Files.readAllBytes(sourceFile);
+        content[content.length - 2] = (byte) (content[content.length - 2] == 'a' ? 'b' : 'a');
+        Files.write(sourceFile, content);
+        Assert.assertFalse(DrtBinaryFormat.isConvertedFrom(file, sourceFile));
+
+        // Without a source file
+        DrtBinaryFormat.writeFleet(fleet, file);
+        Assert.assertFalse(DrtBinaryFormat.isConvertedFrom(file, sourceFile));
+    }
+
+    @Test
+    public final void testBinaryFileName() {
+        Assert.assertEquals("berlin-drt.plans.bin", DrtBinaryFormat.getBinaryFileName("berlin-drt.plans.xml.gz"));
+        Assert.assertEquals("100-8_seater-drt-vehicles.bin", DrtBinaryFormat.getBinaryFileName("100-8_seater-drt-vehicles.xml"));
+    }
+}
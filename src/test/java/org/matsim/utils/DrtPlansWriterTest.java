@@ -0,0 +1,48 @@
+package org.matsim.utils;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.core.population.PopulationUtils;
+
+import java.util.List;
+
+public class DrtPlansWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public final void testWrittenPlansCanBeRead() {
+        DrtRequestTable requests = new DrtRequestTable(1);
+        for (int i = 0; i < 100; i++) {
+            requests.add(3600 + i, Id.createLinkId("from-" + i), Id.createLinkId("to-" + i),
+                    i % 2 == 0 ? TransportMode.drt : TransportMode.pt);
+        }
+        requests.add(7200, Id.createLinkId("-27392297#1"), Id.createLinkId("a&b"));
+        Assert.assertEquals(101, requests.size());
+
+        String output = folder.getRoot().toPath().resolve("drt.plans.xml.gz").toString();
+        DrtPlansWriter.write(requests, "drt_person_", output);
+
+        Population population = PopulationUtils.readPopulation(output);
+        Assert.assertEquals(101, population.getPersons().size());
+        for (int i = 0; i < requests.size(); i++) {
+            Person person = population.getPersons().get(Id.createPersonId("drt_person_" + i));
+            List<PlanElement> planElements = person.getSelectedPlan().getPlanElements();
+            Assert.assertEquals(3, planElements.size());
+            Activity fromAct = (Activity) planElements.get(0);
+            Activity toAct = (Activity) planElements.get(2);
+            Assert.assertEquals(DrtPlansWriter.ACTIVITY_TYPE, fromAct.getType());
+            Assert.assertEquals(requests.getDepartureTime(i), fromAct.getEndTime().seconds(), 0);
+            Assert.assertEquals(requests.getFromLinkId(i), fromAct.getLinkId());
+            Assert.assertEquals(requests.getMode(i), ((Leg) planElements.get(1)).getMode());
+            Assert.assertEquals(requests.getToLinkId(i), toAct.getLinkId());
+            Assert.assertTrue(toAct.getEndTime().isUndefined());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.matsim.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public final void testPercentilesWithinPrecision() {
+        Random random = new Random(4711);
+        long[] values = new long[100000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20); // 1 to ~5e8, spread over many magnitudes
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        Assert.assertEquals(values.length, histogram.getCount());
+        Assert.assertEquals(values[values.length - 1], histogram.getMax());
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9, 100}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            Assert.assertTrue(percentile + ": " + actual + " < " + expected, actual >= expected);
+            Assert.assertTrue(percentile + ": " + actual + " >> " + expected, actual <= expected * 1.016 + 1);
+        }
+    }
+
+    @Test
+    public final void testBucketBoundaries() {
+        for (long value : new long[]{0, 1, 127, 128, 129, 255, 256, 1000, 1L << 40, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.getBucket(value);
+            Assert.assertTrue(LatencyHistogram.getHighestValue(bucket) >= value);
+            if (bucket > 0) {
+                Assert.assertTrue(LatencyHistogram.getHighestValue(bucket - 1) < value);
+            }
+        }
+    }
+}
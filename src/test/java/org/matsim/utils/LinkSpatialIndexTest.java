@@ -0,0 +1,64 @@
+package org.matsim.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.CoordUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class LinkSpatialIndexTest {
+
+    @Test
+    public final void testSameResultAsLinearScan() {
+        Random random = new Random(4711);
+        Network network = NetworkUtils.createNetwork();
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            // Coordinates on a coarse grid, so that there are many equidistant candidates
+            Coord coord = new Coord(random.nextInt(40) * 50, random.nextInt(40) * 50);
+            nodes.add(NetworkUtils.createAndAddNode(network, Id.createNodeId(i), coord));
+        }
+
+        // Several links per to-node, in random order
+        List<Link> candidates = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Node from = nodes.get(random.nextInt(nodes.size()));
+            Node to = nodes.get(random.nextInt(nodes.size()));
+            candidates.add(NetworkUtils.createAndAddLink(network, Id.createLinkId(i), from, to, 100, 10, 1000, 1));
+        }
+
+        LinkSpatialIndex index = new LinkSpatialIndex(candidates);
+        for (int i = 0; i < 5000; i++) {
+            Coord coord = i % 2 == 0 ?
+                    new Coord(random.nextInt(80) * 25, random.nextInt(80) * 25) :
+                    new Coord(random.nextDouble() * 2200 - 100, random.nextDouble() * 2200 - 100);
+            Assert.assertSame(getNearestLinkByLinearScan(coord, candidates), index.getNearestLink(coord));
+        }
+    }
+
+    @Test
+    public final void testEmptyIndex() {
+        Assert.assertNull(new LinkSpatialIndex(new ArrayList<>()).getNearestLink(new Coord(0, 0)));
+    }
+
+    private static Link getNearestLinkByLinearScan(Coord coord, List<Link> possibleLinks) {
+        double minDistance = Double.MAX_VALUE;
+        Link nearestLink = null;
+        for (Link link : possibleLinks) {
+            double distance = CoordUtils.calcEuclideanDistance(coord, link.getToNode().getCoord());
+            if (distance < minDistance) {
+                minDistance = distance;
+                nearestLink = link;
+            }
+        }
+        return nearestLink;
+    }
+}
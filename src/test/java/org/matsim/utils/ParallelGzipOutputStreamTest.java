@@ -0,0 +1,54 @@
+package org.matsim.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class ParallelGzipOutputStreamTest {
+
+    @Test
+    public final void testConcatenatedMembersAreReadAsOneStream() throws IOException {
+        byte[] data = new byte[100000];
+        Random random = new Random(4711);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4)); // compressible, like xml
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, 3, 1, 4096)) {
+            // Mix single bytes and chunks that cross the block boundaries
+            int position = 0;
+            while (position < data.length) {
+                if (position % 3 == 0) {
+                    out.write(data[position++]);
+                } else {
+                    int length = Math.min(1 + random.nextInt(10000), data.length - position);
+                    out.write(data, position, length);
+                    position += length;
+                }
+                if (position % 7 == 0) {
+                    out.flush();
+                }
+            }
+        }
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            Assert.assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    public final void testEmptyOutput() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(compressed, 2, 6).close();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            Assert.assertEquals(0, in.readAllBytes().length);
+        }
+    }
+}
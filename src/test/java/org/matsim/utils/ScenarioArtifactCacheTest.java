@@ -0,0 +1,130 @@
+package org.matsim.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+public class ScenarioArtifactCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public final void testFetchFromMirrorAndReuse() throws IOException {
+        Path mirror = folder.newFolder("mirror").toPath();
+        Path mirroredFile = mirror.resolve("matsim/scenarios/test/test.plans.xml");
+        Files.createDirectories(mirroredFile.getParent());
+        Files.writeString(mirroredFile, "<population/>");
+
+        String url = ScenarioArtifactCache.SVN_ROOT + "matsim/scenarios/test/test.plans.xml";
+        Path cacheDirectory = folder.newFolder("cache").toPath();
+        Path cachedFile = new ScenarioArtifactCache(cacheDirectory, mirror).fetch(url);
+        Assert.assertEquals("test.plans.xml", cachedFile.getFileName().toString());
+        Assert.assertEquals("<population/>", Files.readString(cachedFile));
+
+        // The second run must not touch the mirror (or the remote server) at all
+        Files.delete(mirroredFile);
+        Assert.assertEquals(cachedFile, new ScenarioArtifactCache(cacheDirectory, mirror).fetch(url));
+    }
+
+    @Test
+    public final void testResumePartialCopy() throws IOException, NoSuchAlgorithmException {
+        Path mirror = folder.newFolder("mirror").toPath();
+        Files.writeString(mirror.resolve("network.xml"), "<network>0123456789</network>");
+
+        // Simulate an interrupted copy from a previous run
+        String url = ScenarioArtifactCache.SVN_ROOT + "network.xml";
+        Path cacheDirectory = folder.newFolder("cache").toPath();
+        String urlHash = sha256(url);
+        Files.createDirectories(cacheDirectory.resolve("downloads"));
+        Files.writeString(cacheDirectory.resolve("downloads").resolve(urlHash + ".part"), "<network>01234");
+
+        Path cachedFile = new ScenarioArtifactCache(cacheDirectory, mirror).fetch(url);
+        Assert.assertEquals("<network>0123456789</network>", Files.readString(cachedFile));
+    }
+
+    @Test
+    public final void testCorruptCachedFileIsFetchedAgain() throws IOException {
+        Path mirror = folder.newFolder("mirror").toPath();
+        Files.writeString(mirror.resolve("config.xml"), "<config>abc</config>");
+        String url = ScenarioArtifactCache.SVN_ROOT + "config.xml";
+        Path cacheDirectory = folder.newFolder("cache").toPath();
+        Path cachedFile = new ScenarioArtifactCache(cacheDirectory, mirror).fetch(url);
+
+        // Same size, different content
+        Files.writeString(cachedFile, "<config>xyz</config>");
+        Assert.assertEquals("<config>abc</config>", Files.readString(new ScenarioArtifactCache(cacheDirectory, mirror).fetch(url)));
+
+        // A wrong expected checksum is rejected
+        Assert.assertThrows(IOException.class, () -> new ScenarioArtifactCache(cacheDirectory, mirror).fetch(url, "0".repeat(64)));
+    }
+
+    @Test
+    public final void testPartialCopyOfChangedSourceIsRestarted() throws IOException, NoSuchAlgorithmException {
+        Path mirror = folder.newFolder("mirror").toPath();
+        Files.writeString(mirror.resolve("network.xml"), "<network>0123456789</network>");
+        String url = ScenarioArtifactCache.SVN_ROOT + "network.xml";
+        Path cacheDirectory = folder.newFolder("cache").toPath();
+        Files.createDirectories(cacheDirectory.resolve("downloads"));
+        Files.writeString(cacheDirectory.resolve("downloads").resolve(sha256(url) + ".part"), "<network>abcde");
+
+        Path cachedFile = new ScenarioArtifactCache(cacheDirectory, mirror).fetch(url);
+        Assert.assertEquals("<network>0123456789</network>", Files.readString(cachedFile));
+    }
+
+    @Test
+    public final void testDownloadOfChangedFileIsRestarted() throws IOException, NoSuchAlgorithmException {
+        byte[] content = "<population>0123456789</population>".getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/plans.xml", exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            boolean partial = range != null && "\"v2\"".equals(exchange.getRequestHeaders().getFirst("If-Range"));
+            int start = partial ? Integer.parseInt(range.substring("bytes=".length(), range.length() - 1)) : 0;
+            exchange.getResponseHeaders().add("ETag", "\"v2\"");
+            if (partial) {
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (content.length - 1) + "/" + content.length);
+            }
+            exchange.sendResponseHeaders(partial ? 206 : 200, content.length - start);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content, start, content.length - start);
+            }
+        });
+        server.start();
+        try {
+            String url = "http://localhost:" + server.getAddress().getPort() + "/plans.xml";
+            Path cacheDirectory = folder.newFolder("cache").toPath();
+            Path downloads = Files.createDirectories(cacheDirectory.resolve("downloads"));
+
+            // Interrupted download of an older version of the file: the server sends the whole file again
+            Files.writeString(downloads.resolve(sha256(url) + ".part"), "<population>abcde");
+            Files.writeString(downloads.resolve(sha256(url) + ".validator"), "\"v1\"");
+            Assert.assertArrayEquals(content, Files.readAllBytes(new ScenarioArtifactCache(cacheDirectory, null).fetch(url)));
+
+            // Interrupted download of the current version: resumed
+            Path otherCacheDirectory = folder.newFolder("other-cache").toPath();
+            Path otherDownloads = Files.createDirectories(otherCacheDirectory.resolve("downloads"));
+            Files.write(otherDownloads.resolve(sha256(url) + ".part"), Arrays.copyOf(content, 17));
+            Files.writeString(otherDownloads.resolve(sha256(url) + ".validator"), "\"v2\"");
+            Assert.assertArrayEquals(content, Files.readAllBytes(new ScenarioArtifactCache(otherCacheDirectory, null).fetch(url)));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static String sha256(String text) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,114 @@
+package org.matsim.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.geotools.MGC;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class ServiceAreaTest {
+
+    @Test
+    public final void testSameResultAsWithin() {
+        Geometry geometry = createGeometry();
+        ServiceArea serviceArea = new ServiceArea(geometry);
+        Random random = new Random(4711);
+        for (int i = 0; i < 5000; i++) {
+            // Coordinates on a coarse grid, so that many of them are on the boundary
+            Coord coord = i % 2 == 0 ?
+                    new Coord(random.nextInt(24) * 50 - 50, random.nextInt(24) * 50 - 50) :
+                    new Coord(random.nextDouble() * 1200 - 100, random.nextDouble() * 1200 - 100);
+            Assert.assertEquals(isWithin(coord, geometry), serviceArea.contains(coord));
+        }
+    }
+
+    @Test
+    public final void testInsideOutsideAndBoundary() {
+        ServiceArea serviceArea = new ServiceArea(createGeometry());
+        Assert.assertTrue(serviceArea.contains(new Coord(50, 50)));
+        Assert.assertTrue(serviceArea.contains(new Coord(300, 800)));
+        Assert.assertFalse(serviceArea.contains(new Coord(800, 800))); // outside of the L shape
+        Assert.assertFalse(serviceArea.contains(new Coord(150, 150))); // in the hole
+        Assert.assertFalse(serviceArea.contains(new Coord(-10, 500)));
+
+        // The boundary (exterior, hole and vertices) is not inside
+        Assert.assertFalse(serviceArea.contains(new Coord(0, 500)));
+        Assert.assertFalse(serviceArea.contains(new Coord(700, 400)));
+        Assert.assertFalse(serviceArea.contains(new Coord(400, 400)));
+        Assert.assertFalse(serviceArea.contains(new Coord(150, 100)));
+        Assert.assertFalse(serviceArea.contains(new Coord(1000, 0)));
+    }
+
+    /**
+     * The results for the nodes (also tested in parallel) and the links are the same as for their coordinates, also
+     * when they are read from the caches in the second pass.
+     */
+    @Test
+    public final void testNodesAndLinks() {
+        Geometry geometry = createGeometry();
+        Random random = new Random(4711);
+        Network network = NetworkUtils.createNetwork();
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Coord coord = new Coord(random.nextInt(24) * 50 - 50, random.nextInt(24) * 50 - 50);
+            nodes.add(NetworkUtils.createAndAddNode(network, Id.createNodeId(i), coord));
+        }
+        List<Link> links = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Node from = nodes.get(random.nextInt(nodes.size()));
+            Node to = nodes.get(random.nextInt(nodes.size()));
+            links.add(NetworkUtils.createAndAddLink(network, Id.createLinkId(i), from, to, 100, 10, 1000, 1));
+        }
+
+        ServiceArea serviceArea = new ServiceArea(geometry);
+        Set<Id<Node>> containedNodes = new HashSet<>();
+        for (Node node : nodes) {
+            if (isWithin(node.getCoord(), geometry)) {
+                containedNodes.add(node.getId());
+            }
+        }
+        Assert.assertEquals(containedNodes, serviceArea.getContainedNodes(nodes));
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (Node node : nodes) {
+                Assert.assertEquals(isWithin(node.getCoord(), geometry), serviceArea.contains(node));
+            }
+            for (Link link : links) {
+                boolean expected = isWithin(link.getFromNode().getCoord(), geometry) && isWithin(link.getToNode().getCoord(), geometry);
+                Assert.assertEquals(expected, serviceArea.contains(link));
+            }
+        }
+        Assert.assertEquals(containedNodes, serviceArea.getContainedNodes(nodes));
+    }
+
+    private static boolean isWithin(Coord coord, Geometry geometry) {
+        return MGC.coord2Point(coord).within(geometry);
+    }
+
+    /**
+     * L shaped polygon (concave) of 1000 x 1000 with a square hole of 100 x 100.
+     */
+    private static Geometry createGeometry() {
+        GeometryFactory factory = new GeometryFactory();
+        LinearRing shell = factory.createLinearRing(new Coordinate[]{new Coordinate(0, 0), new Coordinate(1000, 0),
+                new Coordinate(1000, 400), new Coordinate(400, 400), new Coordinate(400, 1000), new Coordinate(0, 1000),
+                new Coordinate(0, 0)});
+        LinearRing hole = factory.createLinearRing(new Coordinate[]{new Coordinate(100, 100), new Coordinate(200, 100),
+                new Coordinate(200, 200), new Coordinate(100, 200), new Coordinate(100, 100)});
+        return factory.createPolygon(shell, new LinearRing[]{hole});
+    }
+}
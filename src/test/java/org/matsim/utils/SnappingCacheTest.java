@@ -0,0 +1,80 @@
+package org.matsim.utils;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class SnappingCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public final void testCachedLinksAreReusedAndInvalidated() throws IOException {
+        Network network = createGridNetwork();
+        Path file = folder.getRoot().toPath().resolve("network" + SnappingCache.EXTENSION);
+        Random random = new Random(4711);
+        Coord[] coords = new Coord[500];
+        for (int i = 0; i < coords.length; i++) {
+            coords[i] = new Coord(random.nextDouble() * 1000, random.nextDouble() * 1000);
+        }
+
+        SnappingCache snappingCache = new SnappingCache(network, file, "test", 1.0);
+        String[] snappedLinks = new String[coords.length];
+        for (int i = 0; i < coords.length; i++) {
+            snappedLinks[i] = snappingCache.getNearestLink(coords[i]).getId().toString();
+            Coord center = new Coord(Math.floor(coords[i].getX()) + 0.5, Math.floor(coords[i].getY()) + 0.5);
+            Assert.assertEquals(NetworkUtils.getNearestLink(network, center).getId().toString(), snappedLinks[i]);
+        }
+        snappingCache.save();
+        Assert.assertTrue(Files.exists(file));
+
+        // Read from the file: all coordinates are known
+        SnappingCache readCache = new SnappingCache(network, file, "test", 1.0);
+        for (int i = 0; i < coords.length; i++) {
+            Assert.assertEquals(snappedLinks[i], readCache.getNearestLink(coords[i]).getId().toString());
+        }
+        Assert.assertEquals(0, readCache.getMisses());
+
+        // Another filter or another network does not use the cached links
+        SnappingCache otherFilter = new SnappingCache(network, file, "other", 1.0);
+        otherFilter.getNearestLink(coords[0]);
+        Assert.assertEquals(1, otherFilter.getMisses());
+        network.removeLink(Id.createLinkId("0_0-x"));
+        SnappingCache otherNetwork = new SnappingCache(network, file, "test", 1.0);
+        otherNetwork.getNearestLink(coords[0]);
+        Assert.assertEquals(1, otherNetwork.getMisses());
+    }
+
+    private static Network createGridNetwork() {
+        Network network = NetworkUtils.createNetwork();
+        Node[][] nodes = new Node[11][11];
+        for (int x = 0; x <= 10; x++) {
+            for (int y = 0; y <= 10; y++) {
+                nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(100 * x, 100 * y));
+            }
+        }
+        for (int x = 0; x <= 10; x++) {
+            for (int y = 0; y <= 10; y++) {
+                if (x < 10) {
+                    NetworkUtils.createAndAddLink(network, Id.createLinkId(x + "_" + y + "-x"), nodes[x][y], nodes[x + 1][y], 100, 10, 600, 1);
+                }
+                if (y < 10) {
+                    NetworkUtils.createAndAddLink(network, Id.createLinkId(x + "_" + y + "-y"), nodes[x][y], nodes[x][y + 1], 100, 10, 600, 1);
+                }
+            }
+        }
+        return network;
+    }
+}
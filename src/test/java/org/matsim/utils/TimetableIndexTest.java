@@ -0,0 +1,135 @@
+package org.matsim.utils;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TimetableIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public final void testNearestTime() throws IOException {
+        Path file = writeTimetable(
+                "S1,3600,arrival",
+                "S1,3900,departure",
+                "S1,7200,arrival",
+                "S1,7500,departure",
+                "S1,7200,arrival");
+        TimetableIndex index = TimetableIndex.read(file, List.of("S1"));
+        Assert.assertEquals(List.of("S1"), index.getGroups());
+
+        // Exact time, nearer lower and nearer higher time
+        Assert.assertEquals(3600, index.getNearestTime(3600, 0, TimetableIndex.Type.ARRIVAL), 0);
+        Assert.assertEquals(3600, index.getNearestTime(5000, 0, TimetableIndex.Type.ARRIVAL), 0);
+        Assert.assertEquals(7200, index.getNearestTime(5500, 0, TimetableIndex.Type.ARRIVAL), 0);
+        Assert.assertEquals(7500, index.getNearestTime(7000, 0, TimetableIndex.Type.DEPARTURE), 0);
+
+        // Before the first and after the last time
+        Assert.assertEquals(3600, index.getNearestTime(0, 0, TimetableIndex.Type.ARRIVAL), 0);
+        Assert.assertEquals(7200, index.getNearestTime(86400, 0, TimetableIndex.Type.ARRIVAL), 0);
+        Assert.assertEquals(3900, index.getNearestTime(-100, 0, TimetableIndex.Type.DEPARTURE), 0);
+        Assert.assertEquals(7500, index.getNearestTime(7501, 0, TimetableIndex.Type.DEPARTURE), 0);
+    }
+
+    @Test
+    public final void testEquallyNearTimesInOrderOfTheFile() throws IOException {
+        TimetableIndex lowerFirst = TimetableIndex.read(writeTimetable("S1,100,arrival", "S1,200,arrival"), List.of("S1"));
+        Assert.assertEquals(100, lowerFirst.getNearestTime(150, 0, TimetableIndex.Type.ARRIVAL), 0);
+        TimetableIndex higherFirst = TimetableIndex.read(writeTimetable("S1,200,arrival", "S1,100,arrival"), List.of("S1"));
+        Assert.assertEquals(200, higherFirst.getNearestTime(150, 0, TimetableIndex.Type.ARRIVAL), 0);
+    }
+
+    @Test
+    public final void testGroups() throws IOException {
+        Path file = writeTimetable(
+                "RE1,1000,arrival",
+                "S1,2000,arrival",
+                "S2,3000,arrival",
+                "RE1,1000,departure",
+                "S1,2000,departure",
+                "S2,3000,departure");
+
+        // The routes that are not listed are pooled
+        TimetableIndex index = TimetableIndex.read(file, List.of("RE1"));
+        Assert.assertEquals(List.of("RE1", TimetableIndex.OTHERS), index.getGroups());
+        Assert.assertEquals(1000, index.getNearestTime(2900, 0, TimetableIndex.Type.ARRIVAL), 0);
+        Assert.assertEquals(3000, index.getNearestTime(2900, 1, TimetableIndex.Type.ARRIVAL), 0);
+
+        // Each route is a group, chosen uniformly by the random number
+        TimetableIndex allRoutes = TimetableIndex.read(file, List.of(TimetableIndex.ALL_ROUTES));
+        Assert.assertEquals(List.of("RE1", "S1", "S2"), allRoutes.getGroups());
+        Assert.assertEquals(1000, allRoutes.getNearestTime(0, 0.0, TimetableIndex.Type.DEPARTURE), 0);
+        Assert.assertEquals(2000, allRoutes.getNearestTime(0, 0.5, TimetableIndex.Type.DEPARTURE), 0);
+        Assert.assertEquals(3000, allRoutes.getNearestTime(0, 0.999, TimetableIndex.Type.DEPARTURE), 0);
+        Assert.assertEquals(3000, allRoutes.getNearestTime(0, 1.0, TimetableIndex.Type.DEPARTURE), 0);
+    }
+
+    @Test
+    public final void testMissingTimes() throws IOException {
+        Path file = writeTimetable("S1,3600,arrival", "S2,3600,departure");
+
+        // Unknown route
+        Assert.assertThrows(IllegalArgumentException.class, () -> TimetableIndex.read(file, List.of("S3")));
+
+        // Group without departures
+        TimetableIndex index = TimetableIndex.read(file, List.of("S1"));
+        Assert.assertThrows(IllegalStateException.class, () -> index.getNearestTime(3600, 0, TimetableIndex.Type.DEPARTURE));
+
+        // Empty timetable
+        Path emptyFile = writeTimetable();
+        Assert.assertThrows(IllegalArgumentException.class, () -> TimetableIndex.read(emptyFile, List.of(TimetableIndex.ALL_ROUTES)));
+        Assert.assertThrows(IllegalArgumentException.class, () -> TimetableIndex.read(emptyFile, List.of("S1")));
+    }
+
+    /**
+     * Same result as the linear scan over the timetable (the first of the equally near times in the file).
+     */
+    @Test
+    public final void testSameTimesAsLinearScan() throws IOException {
+        Random random = new Random(4711);
+        String[] rows = new String[500];
+        List<double[]> entries = new ArrayList<>(); // time, type
+        for (int i = 0; i < rows.length; i++) {
+            double time = 60 * random.nextInt(1440);
+            boolean departure = random.nextBoolean();
+            rows[i] = "S1," + time + "," + (departure ? "departure" : "arrival");
+            entries.add(new double[]{time, departure ? 1 : 0});
+        }
+        TimetableIndex index = TimetableIndex.read(writeTimetable(rows), List.of("S1"));
+
+        for (int i = 0; i < 1000; i++) {
+            double time = 30 * random.nextInt(3000) - 1000;
+            for (TimetableIndex.Type type : TimetableIndex.Type.values()) {
+                double nearestTime = Double.NaN;
+                for (double[] entry : entries) {
+                    if (entry[1] == (type == TimetableIndex.Type.DEPARTURE ? 1 : 0) &&
+                            (Double.isNaN(nearestTime) || Math.abs(entry[0] - time) < Math.abs(nearestTime - time))) {
+                        nearestTime = entry[0];
+                    }
+                }
+                Assert.assertEquals(nearestTime, index.getNearestTime(time, 0, type), 0);
+            }
+        }
+    }
+
+    private Path writeTimetable(String... rows) throws IOException {
+        Path file = folder.newFile().toPath();
+        List<String> lines = new ArrayList<>();
+        lines.add("station,route,time,type");
+        for (String row : rows) {
+            lines.add("Hbf," + row);
+        }
+        Files.write(file, lines);
+        return file;
+    }
+}
@@ -0,0 +1,95 @@
+package org.matsim.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.List;
+import java.util.Random;
+
+public class ToolsTest {
+
+    @Test
+    public final void testFilterNetworkKeepsAcceptedLinksAndTheirNodes() {
+        Network network = NetworkUtils.createNetwork();
+        Node a = NetworkUtils.createAndAddNode(network, Id.createNodeId("a"), new Coord(0, 0));
+        Node b = NetworkUtils.createAndAddNode(network, Id.createNodeId("b"), new Coord(100, 0));
+        Node c = NetworkUtils.createAndAddNode(network, Id.createNodeId("c"), new Coord(200, 0));
+        Link ab = NetworkUtils.createAndAddLink(network, Id.createLinkId("ab"), a, b, 100, 10, 600, 2);
+        NetworkUtils.createAndAddLink(network, Id.createLinkId("bc"), b, c, 100, 10, 600, 1);
+        ab.getAttributes().putAttribute("type", "residential");
+
+        Network filtered = Tools.filterNetwork(network, link -> !link.getId().toString().equals("bc"));
+        Assert.assertEquals(List.of(Id.createLinkId("ab")), List.copyOf(filtered.getLinks().keySet()));
+        Assert.assertEquals(2, filtered.getNodes().size());
+        Assert.assertFalse(filtered.getNodes().containsKey(Id.createNodeId("c")));
+
+        Link copy = filtered.getLinks().get(Id.createLinkId("ab"));
+        Assert.assertNotSame(ab, copy);
+        Assert.assertEquals(2, copy.getNumberOfLanes(), 0);
+        Assert.assertEquals(600, copy.getCapacity(), 0);
+        Assert.assertEquals("residential", copy.getAttributes().getAttribute("type"));
+        Assert.assertEquals(2, network.getLinks().size()); // the input network is unchanged
+    }
+
+    @Test
+    public final void testRemoveLinksFromNetworkRemovesEmptyNodes() {
+        Network network = NetworkUtils.createNetwork();
+        Node a = NetworkUtils.createAndAddNode(network, Id.createNodeId("a"), new Coord(0, 0));
+        Node b = NetworkUtils.createAndAddNode(network, Id.createNodeId("b"), new Coord(100, 0));
+        Node c = NetworkUtils.createAndAddNode(network, Id.createNodeId("c"), new Coord(200, 0));
+        NetworkUtils.createAndAddLink(network, Id.createLinkId("ab"), a, b, 100, 10, 600, 1);
+        Link bc = NetworkUtils.createAndAddLink(network, Id.createLinkId("bc"), b, c, 100, 10, 600, 1);
+
+        Tools.removeLinksFromNetwork(network, List.of(bc));
+        Assert.assertEquals(1, network.getLinks().size());
+        Assert.assertEquals(2, network.getNodes().size());
+        Assert.assertTrue(network.getNodes().containsKey(Id.createNodeId("b")));
+    }
+
+    @Test
+    public final void testParseTimeOfDay() {
+        Assert.assertEquals(0, Tools.parseTimeOfDay("00:00:00"));
+        Assert.assertEquals(8 * 3600 + 5 * 60 + 9, Tools.parseTimeOfDay("08:05:09"));
+        Assert.assertEquals(8 * 3600 + 5 * 60 + 9, Tools.parseTimeOfDay("8:5:9"));
+        Assert.assertEquals(23 * 3600 + 59 * 60 + 59, Tools.parseTimeOfDay("23:59:59"));
+
+        // The hours are taken modulo 24
+        Assert.assertEquals(0, Tools.parseTimeOfDay("24:00:00"));
+        Assert.assertEquals(3600 + 30 * 60, Tools.parseTimeOfDay("25:30:00"));
+        Assert.assertEquals(3600 + 30 * 60, Tools.parseTimeOfDay("49:30:00"));
+    }
+
+    @Test
+    public final void testParseTimeOfDayRejectsOtherFormats() {
+        for (String hms : new String[]{"", "12:30", "::", "12::00", ":30:00", "12:30:", "1:2:3:4", "12:3a:00",
+                "-1:00:00", "12:30:00 ", " 12:30:00", "12.30.00"}) {
+            Assert.assertThrows(hms, IllegalArgumentException.class, () -> Tools.parseTimeOfDay(hms));
+        }
+    }
+
+    /**
+     * Same result as the former parsing of the trip times with split(":") and Integer.parseInt.
+     */
+    @Test
+    public final void testParseTimeOfDaySameAsSplit() {
+        Random random = new Random(4711);
+        for (int i = 0; i < 10000; i++) {
+            int hours = random.nextInt(48);
+            int minutes = random.nextInt(60);
+            int seconds = random.nextInt(60);
+            String hms = random.nextBoolean() ?
+                    String.format("%02d:%02d:%02d", hours, minutes, seconds) :
+                    hours + ":" + minutes + ":" + seconds;
+
+            String[] fields = hms.split(":");
+            int expected = (Integer.parseInt(fields[0]) % 24) * 3600 + Integer.parseInt(fields[1]) * 60 + Integer.parseInt(fields[2]);
+            Assert.assertEquals(hms, expected, Tools.parseTimeOfDay(hms));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.matsim.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.dvrp.path.VrpPathWithTravelData;
+import org.matsim.contrib.dvrp.path.VrpPaths;
+import org.matsim.contrib.dvrp.router.TimeAsTravelDisutility;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.speedy.SpeedyDijkstraFactory;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelTime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TravelTimeTreeTest {
+
+    /**
+     * Free speed travel times (not rounded to time steps, so the shortest paths are unique)
+     */
+    private static final TravelTime TRAVEL_TIME = (link, time, person, vehicle) -> link.getLength() / link.getFreespeed(time);
+
+    @Test
+    public final void testSameArrivalTimesAndPathsAsVrpPaths() {
+        Network network = createGridNetwork();
+        LeastCostPathCalculator router = new SpeedyDijkstraFactory().createPathCalculator(network,
+                new TimeAsTravelDisutility(TRAVEL_TIME), TRAVEL_TIME);
+        Link rootLink = network.getLinks().get(Id.createLinkId("4_5-5_5"));
+
+        for (double departureTime : new double[]{0, 3600.5, 8 * 3600, 30 * 3600}) {
+            TravelTimeTree fromRoot = new TravelTimeTree(network, rootLink, TravelTimeTree.Direction.FROM_ROOT, TRAVEL_TIME, departureTime);
+            TravelTimeTree toRoot = new TravelTimeTree(network, rootLink, TravelTimeTree.Direction.TO_ROOT, TRAVEL_TIME, departureTime);
+            for (Link link : network.getLinks().values()) {
+                VrpPathWithTravelData pathFromRoot = VrpPaths.calcAndCreatePath(rootLink, link, departureTime, router, TRAVEL_TIME);
+                Assert.assertEquals(pathFromRoot.getArrivalTime(), departureTime + fromRoot.getTravelTime(link), 1e-6);
+                Assert.assertEquals(getLinks(pathFromRoot), fromRoot.getPath(link));
+
+                VrpPathWithTravelData pathToRoot = VrpPaths.calcAndCreatePath(link, rootLink, departureTime, router, TRAVEL_TIME);
+                Assert.assertEquals(pathToRoot.getArrivalTime(), departureTime + toRoot.getTravelTime(link), 1e-6);
+                Assert.assertEquals(getLinks(pathToRoot), toRoot.getPath(link));
+            }
+        }
+    }
+
+    @Test
+    public final void testRootLink() {
+        Network network = createGridNetwork();
+        Link rootLink = network.getLinks().get(Id.createLinkId("0_0-1_0"));
+        TravelTimeTree tree = new TravelTimeTree(network, rootLink, TravelTimeTree.Direction.FROM_ROOT, TRAVEL_TIME, 0);
+        Assert.assertEquals(0, tree.getTravelTime(rootLink), 0);
+        Assert.assertEquals(List.of(rootLink), tree.getPath(rootLink));
+    }
+
+    @Test
+    public final void testUnconnectedLinkIsRejected() {
+        Network network = createGridNetwork();
+        Node node = NetworkUtils.createAndAddNode(network, Id.createNodeId("isolated"), new Coord(5000, 5000));
+        Node otherNode = NetworkUtils.createAndAddNode(network, Id.createNodeId("isolated-2"), new Coord(5100, 5000));
+        Link isolatedLink = NetworkUtils.createAndAddLink(network, Id.createLinkId("isolated"), node, otherNode, 100, 10, 600, 1);
+        Link rootLink = network.getLinks().get(Id.createLinkId("0_0-1_0"));
+        TravelTimeTree tree = new TravelTimeTree(network, rootLink, TravelTimeTree.Direction.TO_ROOT, TRAVEL_TIME, 0);
+        Assert.assertThrows(IllegalStateException.class, () -> tree.getTravelTime(isolatedLink));
+        Assert.assertThrows(IllegalStateException.class, () -> tree.getPath(isolatedLink));
+    }
+
+    private static List<Link> getLinks(VrpPathWithTravelData path) {
+        List<Link> links = new ArrayList<>();
+        for (int i = 0; i < path.getLinkCount(); i++) {
+            links.add(path.getLink(i));
+        }
+        return links;
+    }
+
+    /**
+     * Grid of 10 x 10 nodes with links in both directions. The lengths and the speeds are random (also between the
+     * two directions), so the trees from and to the root link differ.
+     */
+    private static Network createGridNetwork() {
+        Network network = NetworkUtils.createNetwork();
+        Random random = new Random(4711);
+        Node[][] nodes = new Node[10][10];
+        for (int x = 0; x < 10; x++) {
+            for (int y = 0; y < 10; y++) {
+                nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(100 * x, 100 * y));
+            }
+        }
+        for (int x = 0; x < 10; x++) {
+            for (int y = 0; y < 10; y++) {
+                if (x < 9) {
+                    addLink(network, nodes[x][y], nodes[x + 1][y], random);
+                    addLink(network, nodes[x + 1][y], nodes[x][y], random);
+                }
+                if (y < 9) {
+                    addLink(network, nodes[x][y], nodes[x][y + 1], random);
+                    addLink(network, nodes[x][y + 1], nodes[x][y], random);
+                }
+            }
+        }
+        return network;
+    }
+
+    private static void addLink(Network network, Node fromNode, Node toNode, Random random) {
+        NetworkUtils.createAndAddLink(network, Id.createLinkId(fromNode.getId() + "-" + toNode.getId()), fromNode, toNode,
+                100 + 50 * random.nextDouble(), 5 + 10 * random.nextDouble(), 600, 1);
+    }
+}
@@ -0,0 +1,89 @@
+package org.matsim.utils;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+public class TripPoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String CHECKSUM = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    @Test
+    public final void testSamplesAreNestedAndWithinTimeWindow() throws IOException {
+        TripPool tripPool = createTripPool(folder.getRoot().toPath().resolve("test" + TripPool.EXTENSION));
+        Assert.assertEquals(1000, tripPool.size(TransportMode.car));
+        Assert.assertEquals(1000, tripPool.size(TransportMode.pt));
+
+        List<String> smallSample = sample(tripPool, 0.1, 0.3, 0, Double.POSITIVE_INFINITY);
+        List<String> largeSample = sample(tripPool, 0.2, 0.5, 0, Double.POSITIVE_INFINITY);
+        Assert.assertTrue(new HashSet<>(largeSample).containsAll(smallSample));
+        Assert.assertEquals(sample(tripPool, 0.2, 0.5, 0, Double.POSITIVE_INFINITY), largeSample);
+        Assert.assertTrue(smallSample.size() > 300 && smallSample.size() < 500);
+
+        List<String> windowSample = sample(tripPool, 1, 1, 5000, 8000);
+        Assert.assertEquals(31 + 30, windowSample.size()); // car at 5000, 5100, ..., 8000 and pt at 5050, ..., 7950
+        Assert.assertTrue(sample(tripPool, 0, 0, 0, Double.POSITIVE_INFINITY).isEmpty());
+        tripPool.close();
+    }
+
+    @Test
+    public final void testPoolOfOtherSourceOrSeedIsRejected() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("test" + TripPool.EXTENSION);
+        createTripPool(file).close();
+
+        try (TripPool tripPool = TripPool.open(file, CHECKSUM, 4711)) {
+            Assert.assertEquals(4711, tripPool.getSeed());
+            Assert.assertEquals("test.plans.xml.gz", tripPool.getSource());
+            Assert.assertEquals(Set.of(TransportMode.car, TransportMode.pt), tripPool.getModes());
+        }
+        Assert.assertThrows(IllegalArgumentException.class, () -> TripPool.open(file, "f" + CHECKSUM.substring(1), 4711));
+        Assert.assertThrows(IllegalArgumentException.class, () -> TripPool.open(file, CHECKSUM, 4712));
+    }
+
+    private static TripPool createTripPool(Path file) throws IOException {
+        Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+        PopulationFactory factory = population.getFactory();
+        TripPool.Builder builder = new TripPool.Builder(4711);
+        for (int i = 0; i < 1000; i++) {
+            Plan plan = factory.createPlan();
+            Activity home = factory.createActivityFromLinkId("home", Id.createLinkId("home-" + i));
+            home.setEndTime(100 * i);
+            plan.addActivity(home);
+            plan.addLeg(factory.createLeg(TransportMode.car));
+            Activity work = factory.createActivityFromLinkId("work", Id.createLinkId("work-" + i % 10));
+            work.setEndTime(100 * i + 50);
+            plan.addActivity(work);
+            plan.addLeg(factory.createLeg(TransportMode.pt));
+            plan.addActivity(factory.createActivityFromLinkId("home", Id.createLinkId("home-" + i)));
+            Person person = factory.createPerson(Id.createPersonId("person_" + i));
+            person.addPlan(plan);
+            builder.addPerson(person);
+        }
+        builder.write(file, "test.plans.xml.gz", CHECKSUM);
+        return TripPool.open(file, CHECKSUM, 4711);
+    }
+
+    private static List<String> sample(TripPool tripPool, double carShare, double ptShare, double startTime,
+                                       double endTime) throws IOException {
+        Map<String, Double> shares = new LinkedHashMap<>();
+        shares.put(TransportMode.car, carShare);
+        shares.put(TransportMode.pt, ptShare);
+        List<String> trips = new ArrayList<>();
+        tripPool.sample(shares, startTime, endTime,
+                (departureTime, fromLinkId, toLinkId, mode) -> trips.add(departureTime + " " + fromLinkId + " " + toLinkId + " " + mode));
+        return trips;
+    }
+}